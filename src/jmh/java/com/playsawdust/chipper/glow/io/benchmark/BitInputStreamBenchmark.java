@@ -0,0 +1,86 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.playsawdust.chipper.glow.io.ArrayDataSlice;
+import com.playsawdust.chipper.glow.io.BitInputStream;
+import com.playsawdust.chipper.glow.io.BitOrder;
+
+/**
+ * Reads a megabyte of bits at a time through BitInputStream, at various widths and in both bit orders. Scores are per
+ * megabyte, so they show throughput rather than the cost of a single call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BitInputStreamBenchmark {
+	private static final int SIZE = 1024 * 1024;
+	
+	@Param({ "1", "3", "8", "13", "24", "32" })
+	public int width;
+	
+	@Param({ "MSB_FIRST", "LSB_FIRST" })
+	public BitOrder order;
+	
+	private byte[] data;
+	private int count;
+	
+	@Setup
+	public void setup() {
+		data = new byte[SIZE];
+		new Random(1234).nextBytes(data);
+		count = (SIZE * 8) / width;
+	}
+	
+	@Benchmark
+	public int readBitsFromStream() throws IOException {
+		BitInputStream in = new BitInputStream(new ByteArrayInputStream(data), order);
+		int result = 0;
+		for(int i=0; i<count; i++) {
+			result ^= in.readBits(width);
+		}
+		return result;
+	}
+	
+	@Benchmark
+	public int readBitsFromSlice() throws IOException {
+		BitInputStream in = new BitInputStream(new ArrayDataSlice(data), order);
+		int result = 0;
+		for(int i=0; i<count; i++) {
+			result ^= in.readBits(width);
+		}
+		return result;
+	}
+	
+	@Benchmark
+	public int peekAndSkip() throws IOException {
+		BitInputStream in = new BitInputStream(new ArrayDataSlice(data), order);
+		int result = 0;
+		for(int i=0; i<count; i++) {
+			result ^= in.peekBits(width);
+			in.skipBits(width);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.benchmark;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.playsawdust.chipper.glow.io.ArrayDataSlice;
+import com.playsawdust.chipper.glow.io.DataSlice;
+import com.playsawdust.chipper.glow.io.FileDataSlice;
+import com.playsawdust.chipper.glow.io.LightweightDataSlice;
+
+/**
+ * Single-value, bulk, and random reads against each DataSlice backend. Every benchmark reads a fixed amount of data
+ * per invocation, so scores are per byte or per value and can be compared across backends directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DataSliceBenchmark {
+	private static final int SIZE = 16 * 1024 * 1024;
+	/** How much each sequential benchmark reads per invocation */
+	private static final int WINDOW = 64 * 1024;
+	private static final int RANDOM_READS = 4096;
+	
+	@Param({ "array", "file", "lightweight1", "lightweight4", "lightweight16" })
+	public String backend;
+	
+	private Path path;
+	private RandomAccessFile file;
+	private DataSlice slice;
+	private long[] randomOffsets;
+	private int[] intScratch;
+	private double[] doubleScratch;
+	private long windowStart = 0L;
+	
+	@Setup
+	public void setup() throws IOException {
+		byte[] data = new byte[SIZE];
+		new Random(1234).nextBytes(data);
+		
+		switch(backend) {
+			case "array":
+				slice = new ArrayDataSlice(data);
+				break;
+			case "file":
+				path = Files.createTempFile("glow-bench", ".bin");
+				Files.write(path, data);
+				file = new RandomAccessFile(path.toFile(), "r");
+				slice = new FileDataSlice(file);
+				break;
+			default:
+				//Each level trims a little off both ends, so every level has to add its own offset
+				int depth = Integer.parseInt(backend.substring("lightweight".length()));
+				slice = new ArrayDataSlice(data);
+				for(int i=0; i<depth; i++) {
+					slice = new LightweightDataSlice(slice, 16, slice.length()-32);
+				}
+				break;
+		}
+		slice.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+		
+		Random random = new Random(5678);
+		randomOffsets = new long[RANDOM_READS];
+		for(int i=0; i<RANDOM_READS; i++) {
+			randomOffsets[i] = (long) (random.nextDouble() * (slice.length()-Long.BYTES));
+		}
+		intScratch = new int[WINDOW / Integer.BYTES];
+		doubleScratch = new double[WINDOW / Double.BYTES];
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		if (file!=null) file.close();
+		if (path!=null) Files.deleteIfExists(path);
+	}
+	
+	/**
+	 * Moves on to the next window, so that sequential benchmarks walk through the whole slice over time rather than
+	 * rereading the same bytes.
+	 */
+	private void nextWindow() throws IOException {
+		windowStart += WINDOW;
+		if (windowStart+WINDOW > slice.length()) windowStart = 0L;
+		slice.seek(windowStart);
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(WINDOW)
+	public void sequentialRead(Blackhole blackhole) throws IOException {
+		nextWindow();
+		for(int i=0; i<WINDOW; i++) {
+			blackhole.consume(slice.read());
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(WINDOW / Integer.BYTES)
+	public void sequentialReadI32s(Blackhole blackhole) throws IOException {
+		nextWindow();
+		for(int i=0; i<WINDOW / Integer.BYTES; i++) {
+			blackhole.consume(slice.readI32s());
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(WINDOW / Double.BYTES)
+	public void sequentialReadF64s(Blackhole blackhole) throws IOException {
+		nextWindow();
+		for(int i=0; i<WINDOW / Double.BYTES; i++) {
+			blackhole.consume(slice.readF64s());
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(WINDOW / Integer.BYTES)
+	public int[] bulkReadI32s() throws IOException {
+		nextWindow();
+		slice.readI32s(intScratch, 0, intScratch.length);
+		return intScratch;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(WINDOW / Double.BYTES)
+	public double[] bulkReadF64s() throws IOException {
+		nextWindow();
+		slice.readF64s(doubleScratch, 0, doubleScratch.length);
+		return doubleScratch;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(RANDOM_READS)
+	public void randomRead(Blackhole blackhole) throws IOException {
+		for(long offset : randomOffsets) {
+			blackhole.consume(slice.read(offset));
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(RANDOM_READS)
+	public void randomReadI32s(Blackhole blackhole) throws IOException {
+		for(long offset : randomOffsets) {
+			slice.seek(offset);
+			blackhole.consume(slice.readI32s());
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(RANDOM_READS)
+	public void randomReadF64s(Blackhole blackhole) throws IOException {
+		for(long offset : randomOffsets) {
+			slice.seek(offset);
+			blackhole.consume(slice.readF64s());
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(WINDOW)
+	public DataSlice copy() throws IOException {
+		nextWindow();
+		return slice.copy(windowStart, WINDOW);
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.playsawdust.chipper.glow.io.DataSlice;
+import com.playsawdust.chipper.glow.io.riff.ListRiffChunk;
+import com.playsawdust.chipper.glow.io.riff.RiffChunk;
+import com.playsawdust.chipper.glow.io.riff.RiffInputStream;
+import com.playsawdust.chipper.glow.io.riff.StreamingRiffChunk;
+
+/**
+ * Walks every chunk header of a synthetic RIFF file, through ListRiffChunk over a memory-mapped file and through
+ * RiffInputStream over a plain file stream. Chunk bodies aren't read, so this measures the cost of parsing the tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RiffParseBenchmark {
+	@Param({ "1", "100", "1000" })
+	public int megabytes;
+	
+	private Path path;
+	private DataSlice mapped;
+	
+	@Setup
+	public void setup() throws IOException {
+		path = Files.createTempFile("glow-bench", ".riff");
+		SyntheticRiff.write(path, megabytes * 1024L * 1024L);
+		mapped = DataSlice.map(path);
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		mapped.close();
+		Files.deleteIfExists(path);
+	}
+	
+	@Benchmark
+	public int listRiffChunkEager() throws IOException {
+		return count(ListRiffChunk.parse(mapped, false));
+	}
+	
+	@Benchmark
+	public int listRiffChunkLazy() throws IOException {
+		return count(ListRiffChunk.parse(mapped, true));
+	}
+	
+	@Benchmark
+	public int riffInputStream() throws IOException {
+		RiffInputStream in = new RiffInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024));
+		try {
+			return count(in);
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static int count(ListRiffChunk list) {
+		int result = 1;
+		for(RiffChunk child : list) {
+			if (child instanceof ListRiffChunk) {
+				result += count((ListRiffChunk) child);
+			} else {
+				result++;
+			}
+		}
+		return result;
+	}
+	
+	private static int count(RiffInputStream in) throws IOException {
+		int result = 0;
+		StreamingRiffChunk chunk;
+		while((chunk = in.nextChunk())!=null) {
+			result++;
+			if (chunk.isList()) result += count(chunk.openList());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import com.playsawdust.chipper.glow.io.DataSink;
+import com.playsawdust.chipper.glow.io.FileChannelDataSink;
+import com.playsawdust.chipper.glow.io.riff.RiffOutputStream;
+
+/**
+ * Writes synthetic RIFF files for the parsing benchmarks. The tree is shaped roughly like a real asset file: a RIFF
+ * list holding LIST chunks, each of which holds a mix of small metadata chunks and larger payload chunks.
+ */
+final class SyntheticRiff {
+	private SyntheticRiff() {}
+	
+	static void write(Path path, long targetSize) throws IOException {
+		Random random = new Random(1234);
+		byte[] payload = new byte[256 * 1024];
+		random.nextBytes(payload);
+		
+		RiffOutputStream out = new RiffOutputStream(FileChannelDataSink.create(path));
+		out.setRf64Enabled(false);
+		DataSink sink = out.getSink();
+		out.beginList("RIFF", "GLOW");
+		int list = 0;
+		while(sink.position() < targetSize) {
+			out.beginList("LIST", (list++ % 2==0) ? "MESH" : "TEXR");
+			for(int i=0; i<16 && sink.position() < targetSize; i++) {
+				out.writeChunk("name", new byte[1 + random.nextInt(31)]);
+				out.beginChunk("data");
+				out.write(payload, 0, 1 + random.nextInt(payload.length-1));
+				out.endChunk();
+			}
+			out.endList();
+		}
+		out.endList();
+		out.close();
+	}
+}
@@ -0,0 +1,24 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+/**
+ * Describes how a DataSlice is expected to be read, so that implementations can tune caching and read-ahead. Hints
+ * are advisory only; an implementation may ignore them entirely.
+ * @see DataSlice#setAccessHint(AccessHint)
+ */
+public enum AccessHint {
+	/** No particular access pattern is expected. This is the default. */
+	NORMAL,
+	/** Data will be read mostly front to back, so reading ahead is likely to pay off. */
+	SEQUENTIAL,
+	/** Data will be read in no particular order, so reading ahead is likely to be wasted. */
+	RANDOM;
+}
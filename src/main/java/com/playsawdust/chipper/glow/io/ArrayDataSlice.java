@@ -10,9 +10,20 @@
 package com.playsawdust.chipper.glow.io;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Optional;
 
 public class ArrayDataSlice implements DataSlice {
+	private static final VarHandle SHORT_BE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle SHORT_LE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	
 	protected byte[] data;
 	protected int baseOffset;
 	protected int length;
@@ -38,18 +49,110 @@ public class ArrayDataSlice implements DataSlice {
 	@Override
 	public int read() {
 		if (pointer>=length) throw new ArrayIndexOutOfBoundsException();
-		int value = data[baseOffset+pointer];
+		int value = data[baseOffset+pointer] & 0xFF;
 		pointer++;
 		return value;
 	}
 	
 	@Override
 	public int read(long offset) {
-		if (offset<0) throw new ArrayIndexOutOfBoundsException();
-		if (baseOffset+offset>=length) throw new ArrayIndexOutOfBoundsException();
-		return data[baseOffset + (int) offset];
+		if (offset<0 || offset>=length) throw new ArrayIndexOutOfBoundsException();
+		return data[baseOffset + (int) offset] & 0xFF;
 	}
-
+	
+	@Override
+	public short readI16s() {
+		int index = advance(Short.BYTES);
+		if (byteOrder==ByteOrder.BIG_ENDIAN) {
+			return (short) SHORT_BE.get(data, index);
+		} else {
+			return (short) SHORT_LE.get(data, index);
+		}
+	}
+	
+	@Override
+	public int readI16u() {
+		return readI16s() & 0xFFFF;
+	}
+	
+	@Override
+	public int readI32s() {
+		int index = advance(Integer.BYTES);
+		if (byteOrder==ByteOrder.BIG_ENDIAN) {
+			return (int) INT_BE.get(data, index);
+		} else {
+			return (int) INT_LE.get(data, index);
+		}
+	}
+	
+	@Override
+	public long readI64s() {
+		int index = advance(Long.BYTES);
+		if (byteOrder==ByteOrder.BIG_ENDIAN) {
+			return (long) LONG_BE.get(data, index);
+		} else {
+			return (long) LONG_LE.get(data, index);
+		}
+	}
+	
+	@Override
+	public void read(long offset, byte[] destination, int start, int len) {
+		if (offset<0 || len<0 || offset+len>length) throw new ArrayIndexOutOfBoundsException();
+		System.arraycopy(data, baseOffset + (int) offset, destination, start, len);
+	}
+	
+	@Override
+	public void copy(byte[] destination, int start, int len) {
+		read(pointer, destination, start, len);
+		pointer += len;
+	}
+	
+	@Override
+	public void readI16s(short[] destination, int start, int len) {
+		view(len, Short.BYTES).asShortBuffer().get(destination, start, len);
+	}
+	
+	@Override
+	public void readI32s(int[] destination, int start, int len) {
+		view(len, Integer.BYTES).asIntBuffer().get(destination, start, len);
+	}
+	
+	@Override
+	public void readI64s(long[] destination, int start, int len) {
+		view(len, Long.BYTES).asLongBuffer().get(destination, start, len);
+	}
+	
+	@Override
+	public void readF32s(float[] destination, int start, int len) {
+		view(len, Float.BYTES).asFloatBuffer().get(destination, start, len);
+	}
+	
+	@Override
+	public void readF64s(double[] destination, int start, int len) {
+		view(len, Double.BYTES).asDoubleBuffer().get(destination, start, len);
+	}
+	
+	/**
+	 * Advances the read pointer past a value of the given size, and returns the index in the array where the value
+	 * begins.
+	 */
+	private int advance(int bytes) {
+		if (pointer+bytes>length) throw new ArrayIndexOutOfBoundsException();
+		int index = baseOffset+pointer;
+		pointer += bytes;
+		return index;
+	}
+	
+	/**
+	 * Advances the read pointer past {@code elements} values of the given size, and returns a ByteBuffer, in this
+	 * slice's ByteOrder, wrapping the bytes that were skipped over.
+	 */
+	private ByteBuffer view(int elements, int elementSize) {
+		if (elements<0 || (long) elements*elementSize > length-pointer) throw new ArrayIndexOutOfBoundsException();
+		int bytes = elements*elementSize;
+		return ByteBuffer.wrap(data, advance(bytes), bytes).order(byteOrder);
+	}
+	
 	@Override
 	public long position() {
 		return pointer;
@@ -62,7 +165,7 @@ public class ArrayDataSlice implements DataSlice {
 
 	@Override
 	public DataSlice slice(long offset, long length) {
-		if (offset<0 || offset > this.baseOffset+this.length) throw new ArrayIndexOutOfBoundsException();
+		if (offset<0 || offset > this.length) throw new ArrayIndexOutOfBoundsException();
 		if (length<0 || offset+length > this.length) throw new ArrayIndexOutOfBoundsException();
 		
 		ArrayDataSlice result = new ArrayDataSlice(data, (int) (this.baseOffset+offset), (int) length);
@@ -71,6 +174,21 @@ public class ArrayDataSlice implements DataSlice {
 		return result;
 	}
 
+	@Override
+	public Optional<ByteBuffer> tryAsByteBuffer(long offset, long length) {
+		if (offset<0 || length<0 || offset+length>this.length) throw new ArrayIndexOutOfBoundsException();
+		ByteBuffer view = ByteBuffer.wrap(data, baseOffset + (int) offset, (int) length).slice();
+		return Optional.of(view.asReadOnlyBuffer().order(byteOrder));
+	}
+	
+	@Override
+	public DataSlice duplicate() {
+		ArrayDataSlice result = new ArrayDataSlice(data, baseOffset, length);
+		result.pointer = pointer;
+		result.byteOrder = byteOrder;
+		return result;
+	}
+	
 	@Override
 	public ByteOrder getByteOrder() {
 		return byteOrder;
@@ -9,49 +9,283 @@
 
 package com.playsawdust.chipper.glow.io;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 
+/**
+ * Reads values of arbitrary bit width from an InputStream or a DataSlice.
+ *
+ * <p>Bits are pulled into a 64-bit reservoir a byte at a time, from a buffer which is refilled in bulk, so reading,
+ * peeking at, or skipping up to 32 bits at once takes constant time. Bits can be read in either {@link BitOrder}.
+ *
+ * <p>A BitInputStream over a DataSlice uses positioned reads only, so it never moves the slice's read pointer, and it
+ * can {@link #seekBit(long) seek} to any bit in the slice.
+ */
 public class BitInputStream {
+	private static final int BUFFER_SIZE = 8192;
+	
 	protected final InputStream in;
-	protected int value = 0;
-	protected int bitIndex = 0;
+	protected final DataSlice data;
+	protected final BitOrder order;
+	
+	/** Buffered bits, starting at bit 63 for MSB_FIRST, or at bit 0 for LSB_FIRST. Unused bits are always zero. */
+	protected long reservoir = 0L;
+	/** The number of valid bits in the reservoir */
+	protected int available = 0;
+	
+	protected final byte[] buffer = new byte[BUFFER_SIZE];
+	protected int bufferPos = 0;
+	protected int bufferLimit = 0;
+	/** The offset in the source of buffer[0] */
+	protected long bufferStart = 0L;
+	protected boolean endOfSource = false;
 	
 	public BitInputStream(InputStream in) {
+		this(in, BitOrder.MSB_FIRST);
+	}
+	
+	public BitInputStream(InputStream in, BitOrder order) {
 		this.in = in;
+		this.data = null;
+		this.order = order;
+	}
+	
+	/**
+	 * Creates a BitInputStream which starts reading at the DataSlice's current position.
+	 */
+	public BitInputStream(DataSlice data) {
+		this(data, BitOrder.MSB_FIRST);
+	}
+	
+	/**
+	 * Creates a BitInputStream which starts reading at the DataSlice's current position.
+	 */
+	public BitInputStream(DataSlice data, BitOrder order) {
+		this.in = null;
+		this.data = data;
+		this.order = order;
+		this.bufferStart = data.position();
+	}
+	
+	public BitOrder getBitOrder() {
+		return order;
 	}
 	
-	/** Reads in a single bit from the stream, starting from the highest bit of the first byte */
+	/** Reads in a single bit from the stream */
 	public boolean readBit() throws IOException {
-		if (bitIndex>=8) {
-			value = in.read();
-			bitIndex = 0;
-		}
-			
-		boolean result = (value & 0x80) != 0;
-		value <<= 1;
-		bitIndex++;
-		
-		return result;
+		return readBits(1)!=0;
 	}
 	
-	/** Reads a number of bits in, in big-endian order */
+	/**
+	 * Reads a value up to 32 bits wide. In MSB_FIRST order the first bit read is the highest bit of the result; in
+	 * LSB_FIRST order it's the lowest.
+	 * @throws EOFException if fewer than {@code count} bits are left
+	 */
 	public int readBits(int count) throws IOException {
-		int result = 0;
-		for(int i=0; i<count; i++) {
-			result <<= 1;
-			if (readBit()) result |= 1;
+		int result = peekBits(count);
+		if (available<count) throw new EOFException();
+		consume(count);
+		return result;
+	}
+	
+	/**
+	 * Returns the next {@code count} bits, up to 32, without consuming them. Bits past the end of the stream read as
+	 * zero.
+	 */
+	public int peekBits(int count) throws IOException {
+		if (count<0 || count>32) throw new IllegalArgumentException("Can't read "+count+" bits at once");
+		if (count==0) return 0;
+		if (available<count) refill();
+		
+		if (order==BitOrder.MSB_FIRST) {
+			return (int) (reservoir >>> (64-count));
+		} else {
+			return (int) (reservoir & ((1L << count) - 1));
+		}
+	}
+	
+	/**
+	 * Skips ahead by {@code count} bits.
+	 * @throws EOFException if fewer than {@code count} bits are left
+	 */
+	public void skipBits(long count) throws IOException {
+		if (count<0) throw new IllegalArgumentException();
+		if (count<=available) {
+			consume((int) count);
+			return;
 		}
 		
-		return result;
+		//Drop whatever's in the reservoir, then move past whole bytes without looking at them
+		count -= available;
+		reservoir = 0L;
+		available = 0;
+		skipBytes(count >>> 3);
+		int remainder = (int) (count & 7);
+		if (remainder>0) {
+			refill();
+			if (available<remainder) throw new EOFException();
+			consume(remainder);
+		}
 	}
 	
 	/** Aligns the stream back onto a byte boundary, discarding any remaining bits in the current byte */
 	public void align() {
-		bitIndex = 8;
+		consume(available & 7);
+	}
+	
+	/**
+	 * Reads whole bytes into the destination array. The stream must be on a byte boundary.
+	 * @throws IllegalStateException if the stream isn't byte-aligned
+	 * @throws EOFException if fewer than {@code len} bytes are left
+	 */
+	public void readFully(byte[] destination, int start, int len) throws IOException {
+		if ((available & 7)!=0) throw new IllegalStateException("Stream is not byte-aligned");
+		if (start<0 || len<0 || start+len>destination.length) throw new ArrayIndexOutOfBoundsException();
+		
+		//Bytes already in the reservoir come first
+		while(len>0 && available>0) {
+			destination[start++] = (byte) readBits(8);
+			len--;
+		}
+		while(len>0) {
+			if (bufferPos>=bufferLimit && !fillBuffer()) throw new EOFException();
+			int count = Math.min(len, bufferLimit-bufferPos);
+			System.arraycopy(buffer, bufferPos, destination, start, count);
+			bufferPos += count;
+			start += count;
+			len -= count;
+		}
+	}
+	
+	/**
+	 * Gets the number of bits read so far, or for a stream over a DataSlice, the offset in bits of the next bit from
+	 * the start of the slice.
+	 */
+	public long getBitPosition() {
+		return (bufferStart+bufferPos)*8 - available;
+	}
+	
+	/**
+	 * Moves to an arbitrary bit offset from the start of the underlying DataSlice.
+	 * @throws UnsupportedOperationException if this stream reads from an InputStream
+	 */
+	public void seekBit(long bitOffset) throws IOException {
+		if (data==null) throw new UnsupportedOperationException("Can't seek a BitInputStream over an InputStream");
+		if (bitOffset<0 || bitOffset>data.length()*8) throw new ArrayIndexOutOfBoundsException();
+		
+		long byteOffset = bitOffset >>> 3;
+		if (byteOffset>=bufferStart && byteOffset<=bufferStart+bufferLimit) {
+			//Still inside the buffer, so keep it
+			bufferPos = (int) (byteOffset-bufferStart);
+		} else {
+			bufferStart = byteOffset;
+			bufferPos = 0;
+			bufferLimit = 0;
+		}
+		endOfSource = false;
+		reservoir = 0L;
+		available = 0;
+		skipBits(bitOffset & 7);
 	}
 	
 	public void close() throws IOException {
-		in.close();
+		if (in!=null) {
+			in.close();
+		} else {
+			data.close();
+		}
+	}
+	
+	/** Drops {@code count} bits, which must already be in the reservoir, off the front of the reservoir */
+	private void consume(int count) {
+		if (count==0) return;
+		if (order==BitOrder.MSB_FIRST) {
+			reservoir = (count==64) ? 0L : reservoir << count;
+		} else {
+			reservoir = (count==64) ? 0L : reservoir >>> count;
+		}
+		available -= count;
+	}
+	
+	/**
+	 * Tops the reservoir up to at least 57 bits, or as far as it will go before the end of the source.
+	 */
+	private void refill() throws IOException {
+		while(available<=56) {
+			if (bufferPos>=bufferLimit && !fillBuffer()) return;
+			long b = buffer[bufferPos++] & 0xFFL;
+			if (order==BitOrder.MSB_FIRST) {
+				reservoir |= b << (56-available);
+			} else {
+				reservoir |= b << available;
+			}
+			available += 8;
+		}
+	}
+	
+	/**
+	 * Replaces the buffer's contents with the next chunk of the source.
+	 * @return false if the source has no more bytes
+	 */
+	private boolean fillBuffer() throws IOException {
+		if (endOfSource) return false;
+		bufferStart += bufferLimit;
+		bufferPos = 0;
+		bufferLimit = 0;
+		
+		if (in!=null) {
+			int read;
+			do {
+				read = in.read(buffer, 0, buffer.length);
+			} while(read==0);
+			if (read<0) {
+				endOfSource = true;
+				return false;
+			}
+			bufferLimit = read;
+		} else {
+			int count = (int) Math.min(buffer.length, data.length()-bufferStart);
+			if (count<=0) {
+				endOfSource = true;
+				return false;
+			}
+			data.read(bufferStart, buffer, 0, count);
+			bufferLimit = count;
+		}
+		return true;
+	}
+	
+	private void skipBytes(long count) throws IOException {
+		long inBuffer = Math.min(count, bufferLimit-bufferPos);
+		bufferPos += (int) inBuffer;
+		count -= inBuffer;
+		if (count==0) return;
+		
+		if (data!=null) {
+			long target = bufferStart+bufferLimit+count;
+			if (target>data.length()) throw new EOFException();
+			bufferStart = target;
+			bufferPos = 0;
+			bufferLimit = 0;
+			return;
+		}
+		
+		bufferStart += bufferLimit;
+		bufferPos = 0;
+		bufferLimit = 0;
+		while(count>0) {
+			long skipped = in.skip(count);
+			if (skipped<=0) {
+				//Not every stream can skip, so fall back on reading
+				if (in.read()<0) {
+					endOfSource = true;
+					throw new EOFException();
+				}
+				skipped = 1;
+			}
+			bufferStart += skipped;
+			count -= skipped;
+		}
 	}
 }
@@ -0,0 +1,23 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+/**
+ * The order in which the bits of each byte are read by a {@link BitInputStream}.
+ */
+public enum BitOrder {
+	/** Bits are read starting from the highest bit of each byte, and multi-bit values are big-endian. */
+	MSB_FIRST,
+	/**
+	 * Bits are read starting from the lowest bit of each byte, and the first bit read becomes the lowest bit of a
+	 * multi-bit value. This is the order used by DEFLATE, among others.
+	 */
+	LSB_FIRST;
+}
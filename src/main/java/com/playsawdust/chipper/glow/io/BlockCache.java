@@ -0,0 +1,408 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An LRU cache of fixed-size blocks from a single file, read with positional reads so that the file's own pointer is
+ * never disturbed. One BlockCache can be shared by any number of FileDataSlices, as long as they all point at the same
+ * file; the cache has no way of telling files apart. All methods are safe to call from multiple threads.
+ *
+ * <p>A FileDataSlice remembers the last block it used, so hit and miss counts measure block lookups rather than
+ * individual byte reads.
+ *
+ * <p>Blocks can also be {@link #prefetch(FileChannel, long, long, Executor) loaded ahead of time} on another thread.
+ * A lookup for a block which is still loading waits for that load instead of starting another one. The memory held by
+ * loads which haven't finished yet is bounded separately from the cache itself.
+ */
+public class BlockCache {
+	public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+	
+	protected final int blockShift;
+	protected final int blockSize;
+	protected final long memoryBudget;
+	protected final LinkedHashMap<Long, Block> blocks = new LinkedHashMap<>(16, 0.75f, true);
+	protected long residentBytes = 0L;
+	/** Blocks being loaded ahead of time, which aren't in the cache yet */
+	protected final HashMap<Long, PendingBlock> pending = new HashMap<>();
+	/** The prefetch budget held by loads ahead of time, including called-off loads which were already running */
+	protected long pendingBytes = 0L;
+	protected long prefetchBudget;
+	
+	protected long hits = 0L;
+	protected long misses = 0L;
+	protected long evictions = 0L;
+	protected long prefetched = 0L;
+	
+	/**
+	 * Creates a BlockCache with the default block size.
+	 * @param memoryBudget the maximum number of bytes of file data to hold in memory at once
+	 */
+	public BlockCache(long memoryBudget) {
+		this(DEFAULT_BLOCK_SIZE, memoryBudget);
+	}
+	
+	/**
+	 * Creates a BlockCache.
+	 * @param blockSize    the size of each block in bytes. Must be a power of two.
+	 * @param memoryBudget the maximum number of bytes of file data to hold in memory at once
+	 */
+	public BlockCache(int blockSize, long memoryBudget) {
+		if (blockSize<=0 || Integer.bitCount(blockSize)!=1) throw new IllegalArgumentException("Block size must be a power of two");
+		if (memoryBudget<blockSize) throw new IllegalArgumentException("Memory budget must hold at least one block");
+		this.blockShift = Integer.numberOfTrailingZeros(blockSize);
+		this.blockSize = blockSize;
+		this.memoryBudget = memoryBudget;
+		this.prefetchBudget = Math.max(memoryBudget/2, blockSize);
+	}
+	
+	public int getBlockSize() {
+		return blockSize;
+	}
+	
+	/**
+	 * Gets the block which contains the specified file offset, reading it from the channel if it isn't already cached.
+	 * The returned block may be shorter than the block size if it's the last block in the file.
+	 */
+	public Block getBlock(FileChannel channel, long offset) throws IOException {
+		long index = offset >>> blockShift;
+		FutureTask<Block> inFlight;
+		synchronized(this) {
+			Block cached = blocks.get(index);
+			if (cached!=null) {
+				hits++;
+				return cached;
+			}
+			PendingBlock loading = pending.get(index);
+			inFlight = (loading==null) ? null : loading.task;
+			if (inFlight!=null) {
+				hits++;
+			} else {
+				misses++;
+			}
+		}
+		
+		if (inFlight!=null) {
+			try {
+				return inFlight.get();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			} catch (ExecutionException | CancellationException ex) {
+				//The load ahead failed or was called off, so try again on this thread
+			}
+		}
+		
+		//Read outside the lock so that slow IO on one block doesn't stall hits on every other block
+		Block loaded = load(channel, index);
+		synchronized(this) {
+			Block raced = blocks.putIfAbsent(index, loaded);
+			if (raced!=null) return raced;
+			residentBytes += loaded.data.length;
+			evict();
+		}
+		return loaded;
+	}
+	
+	/**
+	 * Reads one byte through the cache. Returns -1 if the offset is past the end of the file.
+	 */
+	public int read(FileChannel channel, long offset) throws IOException {
+		Block block = getBlock(channel, offset);
+		return block.read(offset);
+	}
+	
+	/**
+	 * Reads a run of bytes through the cache, loading as many blocks as needed.
+	 * @throws EOFException if the run extends past the end of the file
+	 */
+	public void read(FileChannel channel, long offset, byte[] destination, int start, int len) throws IOException {
+		while(len>0) {
+			Block block = getBlock(channel, offset);
+			int blockOffset = (int) (offset - block.start);
+			int available = block.data.length - blockOffset;
+			if (available<=0) throw new EOFException();
+			int chunk = Math.min(len, available);
+			System.arraycopy(block.data, blockOffset, destination, start, chunk);
+			offset += chunk;
+			start += chunk;
+			len -= chunk;
+		}
+	}
+	
+	/**
+	 * Starts loading the blocks which cover the specified range of the file on the executor, skipping blocks which are
+	 * already cached or loading. Loading stops early once the prefetch budget is used up, and nothing past the end of
+	 * the file is read.
+	 * @return the number of blocks which started loading
+	 */
+	public int prefetch(FileChannel channel, long offset, long length, Executor executor) throws IOException {
+		long end = Math.min(offset+length, channel.size());
+		if (offset<0 || offset>=end) return 0;
+		
+		List<PendingBlock> started = new ArrayList<>();
+		synchronized(this) {
+			for(long index = offset >>> blockShift; index<=(end-1) >>> blockShift; index++) {
+				if (blocks.containsKey(index) || pending.containsKey(index)) continue;
+				if (pendingBytes+blockSize>prefetchBudget) break;
+				
+				PendingBlock loading = new PendingBlock(channel, index);
+				loading.task = new FutureTask<>(() -> loadAhead(loading));
+				pending.put(index, loading);
+				pendingBytes += blockSize;
+				started.add(loading);
+			}
+		}
+		
+		for(int i=0; i<started.size(); i++) {
+			try {
+				executor.execute(started.get(i).task);
+			} catch (RejectedExecutionException ex) {
+				//The executor is shutting down or full; give back the blocks that never got queued
+				synchronized(this) {
+					for(PendingBlock loading : started.subList(i, started.size())) cancel(loading);
+				}
+				return i;
+			}
+		}
+		return started.size();
+	}
+	
+	private Block loadAhead(PendingBlock loading) throws IOException {
+		synchronized(this) {
+			//Called off in the moment between the executor picking the task up and the task starting
+			if (loading.released) throw new CancellationException();
+			loading.started = true;
+		}
+		
+		Block loaded;
+		try {
+			loaded = load(loading.channel, loading.index);
+		} catch (IOException | RuntimeException ex) {
+			synchronized(this) {
+				finish(loading);
+			}
+			throw ex;
+		}
+		
+		//Swap the pending load for the finished block in one step, so no lookup can see neither
+		synchronized(this) {
+			finish(loading);
+			if (blocks.putIfAbsent(loading.index, loaded)==null) {
+				residentBytes += loaded.data.length;
+				prefetched++;
+				evict();
+			}
+		}
+		return loaded;
+	}
+	
+	/**
+	 * Removes a finished load ahead from the pending loads, unless it was called off and replaced already, and gives
+	 * back its share of the prefetch budget.
+	 */
+	private void finish(PendingBlock loading) {
+		pending.remove(loading.index, loading);
+		release(loading);
+	}
+	
+	/**
+	 * Calls off a load ahead. One which hasn't started gives back its share of the prefetch budget now; one which is
+	 * already running keeps holding it until it finishes.
+	 */
+	private void cancel(PendingBlock loading) {
+		pending.remove(loading.index, loading);
+		//Never interrupt a running load: interrupting a thread in the middle of a channel read closes the channel
+		loading.task.cancel(false);
+		if (!loading.started) release(loading);
+	}
+	
+	private void release(PendingBlock loading) {
+		if (loading.released) return;
+		loading.released = true;
+		pendingBytes -= blockSize;
+	}
+	
+	/**
+	 * Calls off every load ahead which hasn't started yet. Loads which are already running finish, but threads waiting
+	 * on a cancelled load read the block themselves instead.
+	 */
+	public synchronized void cancelPrefetch() {
+		for(PendingBlock loading : new ArrayList<>(pending.values())) cancel(loading);
+	}
+	
+	/**
+	 * Calls off the loads ahead which haven't started yet and which read from the specified channel, leaving loads for
+	 * any other FileDataSlice which shares this cache alone.
+	 */
+	public synchronized void cancelPrefetch(FileChannel channel) {
+		for(PendingBlock loading : new ArrayList<>(pending.values())) {
+			if (loading.channel==channel) cancel(loading);
+		}
+	}
+	
+	/**
+	 * Sets the most memory which loads ahead of time may hold before they finish and join the cache. The default is
+	 * half of the memory budget.
+	 */
+	public synchronized void setPrefetchBudget(long bytes) {
+		if (bytes<blockSize) throw new IllegalArgumentException("Prefetch budget must hold at least one block");
+		this.prefetchBudget = bytes;
+	}
+	
+	public synchronized long getPrefetchBudget() {
+		return prefetchBudget;
+	}
+	
+	/**
+	 * Gets the number of bytes reserved by loads ahead of time which haven't finished yet.
+	 */
+	public synchronized long getPendingBytes() {
+		return pendingBytes;
+	}
+	
+	/**
+	 * Discards every cached block, and calls off any loads ahead of time. Hit and miss counts are kept.
+	 */
+	public synchronized void clear() {
+		cancelPrefetch();
+		blocks.clear();
+		residentBytes = 0L;
+	}
+	
+	public synchronized long getHitCount() {
+		return hits;
+	}
+	
+	public synchronized long getMissCount() {
+		return misses;
+	}
+	
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+	
+	/**
+	 * Gets the number of blocks which have been loaded ahead of time and added to the cache.
+	 */
+	public synchronized long getPrefetchCount() {
+		return prefetched;
+	}
+	
+	/**
+	 * Gets the fraction of block lookups so far which were served from memory, or 0 if there have been none.
+	 */
+	public synchronized double getHitRate() {
+		long total = hits + misses;
+		return (total==0) ? 0.0 : hits / (double) total;
+	}
+	
+	/**
+	 * Gets the number of bytes of file data currently held by this cache.
+	 */
+	public synchronized long getResidentBytes() {
+		return residentBytes;
+	}
+	
+	protected Block load(FileChannel channel, long index) throws IOException {
+		long start = index << blockShift;
+		ByteBuffer buf = ByteBuffer.allocate(blockSize);
+		while(buf.hasRemaining()) {
+			int read = channel.read(buf, start + buf.position());
+			if (read<0) break;
+		}
+		byte[] data = buf.array();
+		if (buf.position()<blockSize) {
+			byte[] shortened = new byte[buf.position()];
+			System.arraycopy(data, 0, shortened, 0, shortened.length);
+			data = shortened;
+		}
+		return new Block(start, data);
+	}
+	
+	private void evict() {
+		Iterator<Map.Entry<Long, Block>> iterator = blocks.entrySet().iterator();
+		while(residentBytes>memoryBudget && iterator.hasNext()) {
+			Map.Entry<Long, Block> eldest = iterator.next();
+			residentBytes -= eldest.getValue().data.length;
+			iterator.remove();
+			evictions++;
+		}
+	}
+	
+	/**
+	 * One immutable block of file data. Holding on to a Block after it's been evicted is harmless; it just won't be
+	 * counted against the memory budget any more.
+	 */
+	public static final class Block {
+		private final long start;
+		private final byte[] data;
+		
+		Block(long start, byte[] data) {
+			this.start = start;
+			this.data = data;
+		}
+		
+		/** Gets the file offset of the first byte in this block */
+		public long start() {
+			return start;
+		}
+		
+		/** Gets the number of bytes in this block */
+		public int length() {
+			return data.length;
+		}
+		
+		/** Returns true if the specified file offset falls within this block */
+		public boolean contains(long offset) {
+			return offset>=start && offset-start<data.length;
+		}
+		
+		/** Reads the byte at the specified file offset, or returns -1 if it's past the end of this block */
+		public int read(long offset) {
+			long index = offset - start;
+			if (index<0 || index>=data.length) return -1;
+			return data[(int) index] & 0xFF;
+		}
+	}
+	
+	/**
+	 * A block being loaded ahead of time. Its share of the prefetch budget is given back exactly once, when the load
+	 * finishes or when it's called off before starting. The flags are guarded by the cache's lock.
+	 */
+	protected static final class PendingBlock {
+		protected final FileChannel channel;
+		protected final long index;
+		protected FutureTask<Block> task;
+		protected boolean started = false;
+		protected boolean released = false;
+		
+		protected PendingBlock(FileChannel channel, long index) {
+			this.channel = channel;
+			this.index = index;
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A DataSink which writes into a ByteBuffer, which may be a heap buffer or a direct buffer. Only absolute puts are
+ * used, so the original buffer's position, limit, and ByteOrder are never touched. The sink can't grow past the
+ * buffer's limit.
+ */
+public class ByteBufferDataSink implements DataSink {
+	/** A big-endian duplicate of the original buffer, so that its ByteOrder can't change underneath us */
+	protected final ByteBuffer buffer;
+	protected final int baseOffset;
+	protected final int capacity;
+	protected int length = 0;
+	protected long pointer = 0L;
+	protected ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+	
+	/**
+	 * Creates a ByteBufferDataSink over the bytes between the buffer's position and its limit.
+	 */
+	public ByteBufferDataSink(ByteBuffer buffer) {
+		if (buffer.isReadOnly()) throw new IllegalArgumentException("Buffer is read-only");
+		this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+		this.baseOffset = buffer.position();
+		this.capacity = buffer.remaining();
+	}
+	
+	@Override
+	public void seek(long offset) {
+		if (offset<0 || offset>capacity) throw new ArrayIndexOutOfBoundsException();
+		pointer = offset;
+	}
+	
+	@Override
+	public long position() {
+		return pointer;
+	}
+	
+	/**
+	 * Gets the number of bytes this sink can hold, which is fixed when it's created.
+	 */
+	public int capacity() {
+		return capacity;
+	}
+	
+	@Override
+	public long length() {
+		return length;
+	}
+	
+	@Override
+	public ByteOrder getByteOrder() {
+		return byteOrder;
+	}
+	
+	@Override
+	public void setByteOrder(ByteOrder order) {
+		this.byteOrder = order;
+	}
+	
+	/**
+	 * Checks that a value of the given size fits at the given offset, extends the length to cover it, and returns the
+	 * index in the buffer where it goes.
+	 */
+	private int claim(long offset, int bytes) {
+		if (offset<0 || bytes<0 || offset+bytes>capacity) throw new ArrayIndexOutOfBoundsException();
+		length = Math.max(length, (int) offset+bytes);
+		return baseOffset + (int) offset;
+	}
+	
+	@Override
+	public void write(long offset, byte[] source, int start, int len) {
+		buffer.put(claim(offset, len), source, start, len);
+	}
+	
+	@Override
+	public void write(long offset, ByteBuffer source) {
+		int len = source.remaining();
+		buffer.put(claim(offset, len), source, source.position(), len);
+		source.position(source.limit());
+	}
+	
+	@Override
+	public void writeI8(long offset, int value) {
+		buffer.put(claim(offset, 1), (byte) value);
+	}
+	
+	@Override
+	public void writeI16(long offset, short value) {
+		buffer.putShort(claim(offset, Short.BYTES), (byteOrder==ByteOrder.BIG_ENDIAN) ? value : Short.reverseBytes(value));
+	}
+	
+	@Override
+	public void writeI32(long offset, int value) {
+		buffer.putInt(claim(offset, Integer.BYTES), (byteOrder==ByteOrder.BIG_ENDIAN) ? value : Integer.reverseBytes(value));
+	}
+	
+	@Override
+	public void writeI64(long offset, long value) {
+		buffer.putLong(claim(offset, Long.BYTES), (byteOrder==ByteOrder.BIG_ENDIAN) ? value : Long.reverseBytes(value));
+	}
+	
+	@Override
+	public void write(int value) {
+		writeI8(pointer, value);
+		pointer++;
+	}
+	
+	@Override
+	public void writeI16(short value) {
+		writeI16(pointer, value);
+		pointer += Short.BYTES;
+	}
+	
+	@Override
+	public void writeI32(int value) {
+		writeI32(pointer, value);
+		pointer += Integer.BYTES;
+	}
+	
+	@Override
+	public void writeI64(long value) {
+		writeI64(pointer, value);
+		pointer += Long.BYTES;
+	}
+	
+	@Override
+	public void writeI16(short[] source, int start, int len) {
+		view(len, Short.BYTES).asShortBuffer().put(source, start, len);
+	}
+	
+	@Override
+	public void writeI32(int[] source, int start, int len) {
+		view(len, Integer.BYTES).asIntBuffer().put(source, start, len);
+	}
+	
+	@Override
+	public void writeI64(long[] source, int start, int len) {
+		view(len, Long.BYTES).asLongBuffer().put(source, start, len);
+	}
+	
+	@Override
+	public void writeF32(float[] source, int start, int len) {
+		view(len, Float.BYTES).asFloatBuffer().put(source, start, len);
+	}
+	
+	@Override
+	public void writeF64(double[] source, int start, int len) {
+		view(len, Double.BYTES).asDoubleBuffer().put(source, start, len);
+	}
+	
+	/**
+	 * Advances the write pointer past {@code elements} values of the given size, and returns a view, in this sink's
+	 * ByteOrder, of the bytes that were skipped over.
+	 */
+	private ByteBuffer view(int elements, int elementSize) {
+		if (elements<0 || (long) elements*elementSize > capacity-pointer) throw new ArrayIndexOutOfBoundsException();
+		int bytes = elements*elementSize;
+		int index = claim(pointer, bytes);
+		pointer += bytes;
+		return buffer.slice(index, bytes).order(byteOrder);
+	}
+	
+	/**
+	 * Gets a view of the bytes written so far, from the start of the sink up to its length, in this sink's ByteOrder.
+	 */
+	public ByteBuffer getWritten() {
+		return buffer.slice(baseOffset, length).order(byteOrder);
+	}
+	
+	@Override
+	public void close() {
+		// Do Nothing
+	}
+	
+}
@@ -0,0 +1,200 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Optional;
+
+/**
+ * A DataSlice backed by a ByteBuffer, which may be a heap buffer or a direct buffer. Only absolute gets are used, so
+ * the original buffer's position, limit, and ByteOrder are never touched.
+ */
+public class ByteBufferDataSlice implements DataSlice {
+	/** A big-endian duplicate of the original buffer, so that its ByteOrder can't change underneath us */
+	protected final ByteBuffer buffer;
+	protected final int baseOffset;
+	protected final int length;
+	protected int pointer = 0;
+	protected ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+	
+	/**
+	 * Creates a ByteBufferDataSlice over the bytes between the buffer's position and its limit.
+	 */
+	public ByteBufferDataSlice(ByteBuffer buffer) {
+		this(buffer.duplicate().order(ByteOrder.BIG_ENDIAN), buffer.position(), buffer.remaining());
+	}
+	
+	protected ByteBufferDataSlice(ByteBuffer buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.baseOffset = offset;
+		this.length = length;
+	}
+	
+	@Override
+	public void seek(long offset) {
+		if (offset<0 || offset>length) throw new ArrayIndexOutOfBoundsException();
+		pointer = (int) offset;
+	}
+	
+	@Override
+	public int read() {
+		int result = read(pointer);
+		pointer++;
+		return result;
+	}
+	
+	@Override
+	public int read(long offset) {
+		if (offset<0 || offset>=length) throw new ArrayIndexOutOfBoundsException();
+		return buffer.get(baseOffset + (int) offset) & 0xFF;
+	}
+	
+	@Override
+	public short readI16s() {
+		short result = buffer.getShort(advance(Short.BYTES));
+		return (byteOrder==ByteOrder.BIG_ENDIAN) ? result : Short.reverseBytes(result);
+	}
+	
+	@Override
+	public int readI16u() {
+		return readI16s() & 0xFFFF;
+	}
+	
+	@Override
+	public int readI32s() {
+		int result = buffer.getInt(advance(Integer.BYTES));
+		return (byteOrder==ByteOrder.BIG_ENDIAN) ? result : Integer.reverseBytes(result);
+	}
+	
+	@Override
+	public long readI64s() {
+		long result = buffer.getLong(advance(Long.BYTES));
+		return (byteOrder==ByteOrder.BIG_ENDIAN) ? result : Long.reverseBytes(result);
+	}
+	
+	@Override
+	public void read(long offset, byte[] destination, int start, int len) {
+		if (offset<0 || len<0 || offset+len>length) throw new ArrayIndexOutOfBoundsException();
+		buffer.get(baseOffset + (int) offset, destination, start, len);
+	}
+	
+	@Override
+	public void read(long offset, ByteBuffer destination) {
+		int len = destination.remaining();
+		if (offset<0 || offset+len>length) throw new ArrayIndexOutOfBoundsException();
+		destination.put(buffer.slice(baseOffset + (int) offset, len));
+	}
+	
+	@Override
+	public void copy(byte[] destination, int start, int len) {
+		read(pointer, destination, start, len);
+		pointer += len;
+	}
+	
+	@Override
+	public void readI16s(short[] destination, int start, int len) {
+		view(len, Short.BYTES).asShortBuffer().get(destination, start, len);
+	}
+	
+	@Override
+	public void readI32s(int[] destination, int start, int len) {
+		view(len, Integer.BYTES).asIntBuffer().get(destination, start, len);
+	}
+	
+	@Override
+	public void readI64s(long[] destination, int start, int len) {
+		view(len, Long.BYTES).asLongBuffer().get(destination, start, len);
+	}
+	
+	@Override
+	public void readF32s(float[] destination, int start, int len) {
+		view(len, Float.BYTES).asFloatBuffer().get(destination, start, len);
+	}
+	
+	@Override
+	public void readF64s(double[] destination, int start, int len) {
+		view(len, Double.BYTES).asDoubleBuffer().get(destination, start, len);
+	}
+	
+	/**
+	 * Advances the read pointer past a value of the given size, and returns the index in the buffer where the value
+	 * begins.
+	 */
+	private int advance(int bytes) {
+		if (pointer+bytes>length) throw new ArrayIndexOutOfBoundsException();
+		int index = baseOffset+pointer;
+		pointer += bytes;
+		return index;
+	}
+	
+	/**
+	 * Advances the read pointer past {@code elements} values of the given size, and returns a view, in this slice's
+	 * ByteOrder, of the bytes that were skipped over.
+	 */
+	private ByteBuffer view(int elements, int elementSize) {
+		if (elements<0 || (long) elements*elementSize > length-pointer) throw new ArrayIndexOutOfBoundsException();
+		int bytes = elements*elementSize;
+		return buffer.slice(advance(bytes), bytes).order(byteOrder);
+	}
+	
+	@Override
+	public long position() {
+		return pointer;
+	}
+	
+	@Override
+	public long length() {
+		return length;
+	}
+	
+	@Override
+	public DataSlice slice(long offset, long length) {
+		if (offset<0 || offset>this.length) throw new ArrayIndexOutOfBoundsException();
+		if (length<0 || offset+length>this.length) throw new ArrayIndexOutOfBoundsException();
+		
+		ByteBufferDataSlice result = new ByteBufferDataSlice(buffer, baseOffset + (int) offset, (int) length);
+		result.setByteOrder(byteOrder);
+		this.pointer += length;
+		return result;
+	}
+	
+	@Override
+	public Optional<ByteBuffer> tryAsByteBuffer(long offset, long length) {
+		if (offset<0 || length<0 || offset+length>this.length) throw new ArrayIndexOutOfBoundsException();
+		ByteBuffer view = buffer.slice(baseOffset + (int) offset, (int) length);
+		return Optional.of(view.asReadOnlyBuffer().order(byteOrder));
+	}
+	
+	@Override
+	public DataSlice duplicate() {
+		ByteBufferDataSlice result = new ByteBufferDataSlice(buffer, baseOffset, length);
+		result.pointer = pointer;
+		result.byteOrder = byteOrder;
+		return result;
+	}
+	
+	@Override
+	public ByteOrder getByteOrder() {
+		return byteOrder;
+	}
+	
+	@Override
+	public void setByteOrder(ByteOrder order) {
+		this.byteOrder = order;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		// Do Nothing
+	}
+	
+}
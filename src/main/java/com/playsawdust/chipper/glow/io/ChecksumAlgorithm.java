@@ -0,0 +1,293 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * The checksums and hashes which can be taken over a range of a DataSlice.
+ *
+ * <p>Bytes are fed to the checksum straight out of the slice's backing array or buffer wherever possible. For
+ * memory-mapped and other direct storage, that means the JDK's intrinsic {@code update(ByteBuffer)} runs over the
+ * mapping in place.
+ *
+ * <p>CRC32, CRC32C, and Adler32 are <em>combinable</em>: the checksum of two ranges end to end can be worked out from
+ * the checksum of each range and the length of the second. {@link #computeParallel} uses this to checksum pieces of a
+ * very large range on separate threads.
+ */
+public enum ChecksumAlgorithm {
+	CRC32 {
+		@Override
+		public Checksum create() {
+			return new CRC32();
+		}
+		
+		@Override
+		public long combine(long first, long second, long secondLength) {
+			return combineCrc(first, second, secondLength, CRC32_POLYNOMIAL);
+		}
+	},
+	/** CRC32 with the Castagnoli polynomial, which most modern CPUs can calculate with a single instruction */
+	CRC32C {
+		@Override
+		public Checksum create() {
+			return new CRC32C();
+		}
+		
+		@Override
+		public long combine(long first, long second, long secondLength) {
+			return combineCrc(first, second, secondLength, CRC32C_POLYNOMIAL);
+		}
+	},
+	ADLER32 {
+		@Override
+		public Checksum create() {
+			return new Adler32();
+		}
+		
+		@Override
+		public long combine(long first, long second, long secondLength) {
+			return combineAdler(first, second, secondLength);
+		}
+	},
+	/** The 64-bit xxHash, with a seed of zero. Not combinable, so {@link #computeParallel} hashes it on one thread. */
+	XXH64 {
+		@Override
+		public Checksum create() {
+			return new XXHash64();
+		}
+		
+		@Override
+		public boolean isCombinable() {
+			return false;
+		}
+	};
+	
+	/** Ranges smaller than this are never split up by {@link #computeParallel} */
+	public static final long DEFAULT_PARALLEL_CHUNK = 8L * 1024 * 1024;
+	
+	private static final int BLOCK_SIZE = 1 << 20;
+	/** Bit-reversed CRC polynomials, as used by the JDK's CRC32 and CRC32C */
+	private static final int CRC32_POLYNOMIAL = 0xEDB88320;
+	private static final int CRC32C_POLYNOMIAL = 0x82F63B78;
+	private static final int ADLER_BASE = 65521;
+	
+	/**
+	 * Creates a new, empty Checksum for this algorithm.
+	 */
+	public abstract Checksum create();
+	
+	/**
+	 * Returns true if {@link #combine(long, long, long)} is supported.
+	 */
+	public boolean isCombinable() {
+		return true;
+	}
+	
+	/**
+	 * Works out the checksum of two ranges end to end.
+	 * @param first the checksum of the first range
+	 * @param second the checksum of the second range
+	 * @param secondLength the length of the second range in bytes
+	 * @throws UnsupportedOperationException if this algorithm isn't combinable
+	 */
+	public long combine(long first, long second, long secondLength) {
+		throw new UnsupportedOperationException(name()+" checksums can't be combined");
+	}
+	
+	/**
+	 * Calculates the checksum of {@code length} bytes of a DataSlice, starting at {@code offset}. The slice's read
+	 * pointer isn't moved.
+	 */
+	public long compute(DataSlice data, long offset, long length) throws IOException {
+		Checksum checksum = create();
+		update(checksum, data, offset, length);
+		return checksum.getValue();
+	}
+	
+	/**
+	 * Calculates the checksum of {@code length} bytes of a DataSlice, splitting the range into pieces which are
+	 * checksummed in parallel on the specified pool and then combined. Non-combinable algorithms, and ranges too small
+	 * to be worth splitting, are calculated on the calling thread.
+	 * 
+	 * <p>The slice is only read with positioned reads, so it must be safe to read from several threads at once. A
+	 * FileDataSlice should be {@link FileDataSlice#asConcurrent() concurrent}.
+	 * @param chunkSize the size of each piece in bytes
+	 */
+	public long computeParallel(DataSlice data, long offset, long length, ForkJoinPool pool, long chunkSize) throws IOException {
+		if (offset<0 || length<0 || offset+length>data.length()) throw new ArrayIndexOutOfBoundsException();
+		if (chunkSize<=0) throw new IllegalArgumentException("Chunk size must be positive");
+		if (!isCombinable() || length<=chunkSize || pool.getParallelism()<2) return compute(data, offset, length);
+		
+		List<FutureTask<Long>> pieces = new ArrayList<>();
+		for(long start=offset; start<offset+length; start+=chunkSize) {
+			long pieceStart = start;
+			long pieceLength = Math.min(chunkSize, offset+length-start);
+			FutureTask<Long> piece = new FutureTask<>(() -> compute(data, pieceStart, pieceLength));
+			pieces.add(piece);
+			pool.execute(piece);
+		}
+		
+		long result = create().getValue();
+		long remaining = length;
+		try {
+			for(FutureTask<Long> piece : pieces) {
+				long pieceLength = Math.min(chunkSize, remaining);
+				result = combine(result, piece.get(), pieceLength);
+				remaining -= pieceLength;
+			}
+		} catch (InterruptedException ex) {
+			for(FutureTask<Long> piece : pieces) piece.cancel(false);
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while calculating checksum", ex);
+		} catch (ExecutionException ex) {
+			for(FutureTask<Long> piece : pieces) piece.cancel(false);
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IOException(cause);
+		}
+		return result;
+	}
+	
+	/**
+	 * Calculates the checksum of {@code length} bytes of a DataSlice on the common ForkJoinPool.
+	 * @see #computeParallel(DataSlice, long, long, ForkJoinPool, long)
+	 */
+	public long computeParallel(DataSlice data, long offset, long length) throws IOException {
+		return computeParallel(data, offset, length, ForkJoinPool.commonPool(), DEFAULT_PARALLEL_CHUNK);
+	}
+	
+	/**
+	 * Feeds {@code length} bytes of a DataSlice, starting at {@code offset}, into a Checksum of any kind. Array-backed
+	 * slices are passed over as arrays, and direct buffers are passed over as they are; only storage which can't be
+	 * exposed either way is copied out in blocks.
+	 */
+	public static void update(Checksum checksum, DataSlice data, long offset, long length) throws IOException {
+		if (offset<0 || length<0 || offset+length>data.length()) throw new ArrayIndexOutOfBoundsException();
+		
+		//Look through views to the slice that actually holds the bytes, unless a view changes what it passes on
+		while(data instanceof LightweightDataSlice && ((LightweightDataSlice) data).isFlattenable()) {
+			LightweightDataSlice view = (LightweightDataSlice) data;
+			offset += view.baseOffset;
+			data = view.underlying;
+		}
+		if (data instanceof ArrayDataSlice) {
+			ArrayDataSlice array = (ArrayDataSlice) data;
+			checksum.update(array.data, array.baseOffset + (int) offset, (int) length);
+			return;
+		}
+		if (data instanceof SegmentedDataSlice) {
+			SegmentedDataSlice segmented = (SegmentedDataSlice) data;
+			long position = segmented.baseOffset + offset;
+			while(length>0) {
+				int pageOffset = (int) (position & segmented.pageMask);
+				int count = (int) Math.min(length, segmented.pageSize-pageOffset);
+				checksum.update(segmented.pages[(int) (position >>> segmented.pageShift)], pageOffset, count);
+				position += count;
+				length -= count;
+			}
+			return;
+		}
+		
+		byte[] scratch = null;
+		while(length>0) {
+			int count = (int) Math.min(length, BLOCK_SIZE);
+			Optional<ByteBuffer> view = data.tryAsByteBuffer(offset, count);
+			if (view.isPresent() && (view.get().isDirect() || view.get().hasArray())) {
+				checksum.update(view.get());
+			} else {
+				//Read-only heap buffers would be copied out a few KiB at a time anyway, so copy in bigger blocks
+				if (scratch==null) scratch = new byte[count];
+				data.read(offset, scratch, 0, count);
+				checksum.update(scratch, 0, count);
+			}
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	/**
+	 * Combines two CRCs the way zlib's crc32_combine does: the first CRC is run through the effect of
+	 * {@code secondLength} zero bytes, by repeatedly squaring the matrix which advances the CRC by one zero bit, and
+	 * the second CRC is xor'd in.
+	 */
+	private static long combineCrc(long first, long second, long secondLength, int polynomial) {
+		if (secondLength<=0) return first;
+		
+		int[] even = new int[32];
+		int[] odd = new int[32];
+		odd[0] = polynomial;
+		int row = 1;
+		for(int i=1; i<32; i++) {
+			odd[i] = row;
+			row <<= 1;
+		}
+		square(even, odd); //2 zero bits
+		square(odd, even); //4 zero bits
+		
+		int crc = (int) first;
+		long len = secondLength;
+		do {
+			//The first squaring here gives the operator for one zero byte
+			square(even, odd);
+			if ((len & 1)!=0) crc = times(even, crc);
+			len >>>= 1;
+			if (len==0) break;
+			
+			square(odd, even);
+			if ((len & 1)!=0) crc = times(odd, crc);
+			len >>>= 1;
+		} while(len!=0);
+		
+		return (crc ^ (int) second) & 0xFFFFFFFFL;
+	}
+	
+	private static int times(int[] matrix, int vector) {
+		int sum = 0;
+		for(int i=0; vector!=0; i++, vector >>>= 1) {
+			if ((vector & 1)!=0) sum ^= matrix[i];
+		}
+		return sum;
+	}
+	
+	private static void square(int[] result, int[] matrix) {
+		for(int i=0; i<32; i++) {
+			result[i] = times(matrix, matrix[i]);
+		}
+	}
+	
+	private static long combineAdler(long first, long second, long secondLength) {
+		long remainder = secondLength % ADLER_BASE;
+		long sum1 = first & 0xFFFF;
+		long sum2 = (remainder * sum1) % ADLER_BASE;
+		sum1 += (second & 0xFFFF) + ADLER_BASE - 1;
+		sum2 += ((first >>> 16) & 0xFFFF) + ((second >>> 16) & 0xFFFF) + ADLER_BASE - remainder;
+		if (sum1>=ADLER_BASE) sum1 -= ADLER_BASE;
+		if (sum1>=ADLER_BASE) sum1 -= ADLER_BASE;
+		if (sum2>=(ADLER_BASE << 1)) sum2 -= (ADLER_BASE << 1);
+		if (sum2>=ADLER_BASE) sum2 -= ADLER_BASE;
+		return sum1 | (sum2 << 16);
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A DataSlice which joins several other DataSlices end to end, so that they read as one. No data is copied, and the
+ * segments can be any mix of files, arrays, and slices of either.
+ * 
+ * <p>Only positioned reads are made against the segments, so their read pointers are never moved. Reads which stay
+ * inside the segment the last read landed in skip the search for the right segment entirely.
+ */
+public class CompositeDataSlice implements DataSlice {
+	protected final DataSlice[] segments;
+	/** The offset where each segment starts, followed by the total length */
+	protected final long[] starts;
+	protected long pointer = 0L;
+	protected ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+	/** The segment the last read landed in */
+	protected int lastSegment = 0;
+	protected AccessHint accessHint = AccessHint.NORMAL;
+	
+	/**
+	 * Creates a CompositeDataSlice over the specified segments, in order. Each segment is read from start to end,
+	 * whatever its read pointer is. Empty segments are left out.
+	 */
+	public CompositeDataSlice(List<? extends DataSlice> segments) throws IOException {
+		List<DataSlice> nonEmpty = new ArrayList<>(segments.size());
+		List<Long> lengths = new ArrayList<>(segments.size());
+		for(DataSlice segment : segments) {
+			long length = segment.length();
+			if (length==0) continue;
+			nonEmpty.add(segment);
+			lengths.add(length);
+		}
+		
+		this.segments = nonEmpty.toArray(new DataSlice[0]);
+		this.starts = new long[this.segments.length+1];
+		for(int i=0; i<this.segments.length; i++) {
+			starts[i+1] = starts[i] + lengths.get(i);
+		}
+	}
+	
+	protected CompositeDataSlice(DataSlice[] segments, long[] starts) {
+		this.segments = segments;
+		this.starts = starts;
+	}
+	
+	/**
+	 * Gets the index of the segment which holds the specified offset, which must be inside this slice.
+	 */
+	protected int segmentFor(long offset) {
+		int segment = lastSegment;
+		if (offset>=starts[segment] && offset<starts[segment+1]) return segment;
+		
+		segment = Arrays.binarySearch(starts, 0, segments.length, offset);
+		if (segment<0) segment = -segment-2;
+		lastSegment = segment;
+		return segment;
+	}
+	
+	/**
+	 * Gets the number of segments this slice is made of.
+	 */
+	public int getSegmentCount() {
+		return segments.length;
+	}
+	
+	@Override
+	public void seek(long offset) {
+		if (offset<0 || offset>length()) throw new ArrayIndexOutOfBoundsException();
+		pointer = offset;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		int result = read(pointer);
+		pointer++;
+		return result;
+	}
+	
+	@Override
+	public int read(long offset) throws IOException {
+		if (offset<0 || offset>=length()) throw new ArrayIndexOutOfBoundsException();
+		int segment = segmentFor(offset);
+		return segments[segment].read(offset-starts[segment]);
+	}
+	
+	@Override
+	public void read(long offset, byte[] destination, int start, int len) throws IOException {
+		if (offset<0 || len<0 || offset+len>length()) throw new ArrayIndexOutOfBoundsException();
+		while(len>0) {
+			int segment = segmentFor(offset);
+			int count = (int) Math.min(len, starts[segment+1]-offset);
+			segments[segment].read(offset-starts[segment], destination, start, count);
+			offset += count;
+			start += count;
+			len -= count;
+		}
+	}
+	
+	@Override
+	public void read(long offset, ByteBuffer destination) throws IOException {
+		if (offset<0 || offset+destination.remaining()>length()) throw new ArrayIndexOutOfBoundsException();
+		int limit = destination.limit();
+		try {
+			while(destination.position()<limit) {
+				int segment = segmentFor(offset);
+				int count = (int) Math.min(limit-destination.position(), starts[segment+1]-offset);
+				destination.limit(destination.position()+count);
+				segments[segment].read(offset-starts[segment], destination);
+				offset += count;
+			}
+		} finally {
+			destination.limit(limit);
+		}
+	}
+	
+	@Override
+	public void copy(byte[] destination, int start, int len) throws IOException {
+		read(pointer, destination, start, len);
+		pointer += len;
+	}
+	
+	@Override
+	public long position() {
+		return pointer;
+	}
+	
+	@Override
+	public long length() {
+		return starts[segments.length];
+	}
+	
+	/**
+	 * Slices this DataSlice. A slice which falls inside one segment reads straight from that segment; one which spans
+	 * several is another CompositeDataSlice over just the parts it covers.
+	 */
+	@Override
+	public DataSlice slice(long offset, long length) {
+		if (offset<0 || length<0 || offset+length>length()) throw new ArrayIndexOutOfBoundsException();
+		DataSlice result;
+		if (length==0) {
+			result = new CompositeDataSlice(new DataSlice[0], new long[1]);
+		} else {
+			int first = segmentFor(offset);
+			int last = segmentFor(offset+length-1);
+			if (first==last) {
+				result = new LightweightDataSlice(segments[first], offset-starts[first], length);
+			} else {
+				DataSlice[] parts = new DataSlice[last-first+1];
+				long[] partStarts = new long[parts.length+1];
+				for(int i=0; i<parts.length; i++) {
+					int segment = first+i;
+					long from = Math.max(offset, starts[segment]);
+					long to = Math.min(offset+length, starts[segment+1]);
+					parts[i] = new LightweightDataSlice(segments[segment], from-starts[segment], to-from);
+					partStarts[i+1] = partStarts[i] + (to-from);
+				}
+				result = new CompositeDataSlice(parts, partStarts);
+			}
+		}
+		result.setByteOrder(byteOrder);
+		pointer += length;
+		return result;
+	}
+	
+	@Override
+	public Optional<ByteBuffer> tryAsByteBuffer(long offset, long length) throws IOException {
+		if (offset<0 || length<0 || offset+length>length()) throw new ArrayIndexOutOfBoundsException();
+		if (length==0) return Optional.of(ByteBuffer.allocate(0).order(byteOrder));
+		int segment = segmentFor(offset);
+		if (offset+length>starts[segment+1]) return Optional.empty();
+		return segments[segment].tryAsByteBuffer(offset-starts[segment], length).map(it -> it.order(byteOrder));
+	}
+	
+	@Override
+	public void prefetch(long offset, long length) throws IOException {
+		if (offset<0 || length<=0 || offset>=length()) return;
+		long end = Math.min(offset+length, length());
+		for(int segment = segmentFor(offset); segment<segments.length && starts[segment]<end; segment++) {
+			long from = Math.max(offset, starts[segment]);
+			long to = Math.min(end, starts[segment+1]);
+			segments[segment].prefetch(from-starts[segment], to-from);
+		}
+	}
+	
+	@Override
+	public void setAccessHint(AccessHint hint) {
+		this.accessHint = hint;
+		for(DataSlice segment : segments) segment.setAccessHint(hint);
+	}
+	
+	@Override
+	public AccessHint getAccessHint() {
+		return accessHint;
+	}
+	
+	@Override
+	public DataSlice duplicate() {
+		CompositeDataSlice result = new CompositeDataSlice(segments, starts);
+		result.pointer = pointer;
+		result.byteOrder = byteOrder;
+		return result;
+	}
+	
+	@Override
+	public ByteOrder getByteOrder() {
+		return byteOrder;
+	}
+	
+	@Override
+	public void setByteOrder(ByteOrder order) {
+		this.byteOrder = order;
+	}
+	
+	/**
+	 * Closes every segment. If any of them fail to close, the rest are still closed, and the first failure is thrown.
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException failure = null;
+		for(DataSlice segment : segments) {
+			try {
+				segment.close();
+			} catch (IOException ex) {
+				if (failure==null) {
+					failure = ex;
+				} else {
+					failure.addSuppressed(ex);
+				}
+			}
+		}
+		if (failure!=null) throw failure;
+	}
+	
+}
@@ -0,0 +1,378 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Optional;
+
+/**
+ * The write-side counterpart of {@link DataSlice}: a destination for bytes and primitive values, with a write pointer
+ * and a ByteOrder.
+ *
+ * <p>Every write can either go to an explicit offset, leaving the write pointer alone, or go to the write pointer and
+ * advance it. Writing past the current end of a sink grows it, if the sink can grow at all.
+ */
+public interface DataSink {
+	/**
+	 * Moves the write pointer to the specified offset. The offset may be past the current end of the sink; the sink
+	 * only grows once something is written there.
+	 */
+	void seek(long offset) throws IOException;
+	
+	/**
+	 * Advances the write pointer by the specified number of bytes.
+	 */
+	default void skip(long bytes) throws IOException {
+		seek(position()+bytes);
+	}
+	
+	/**
+	 * Gets the location of the write pointer relative to the start of this DataSink.
+	 */
+	long position();
+	
+	/**
+	 * Gets the number of bytes in this DataSink, which is one past the furthest byte written so far.
+	 */
+	long length() throws IOException;
+	
+	/**
+	 * Gets the ByteOrder used to write multi-byte values
+	 */
+	ByteOrder getByteOrder();
+	
+	/**
+	 * Sets the ByteOrder used to write multi-byte values. The default is BIG_ENDIAN.
+	 */
+	void setByteOrder(ByteOrder order);
+	
+	/**
+	 * Returns true if bytes which have already been written can be written over again. Sinks which feed a stream can
+	 * only be written front to back, and can't seek backwards.
+	 */
+	default boolean isSeekable() {
+		return true;
+	}
+	
+	/**
+	 * Writes bytes from the specified area of the source array at the specified offset. The write pointer is not
+	 * moved.
+	 * @param offset An offset in bytes from the beginning of this DataSink
+	 * @throws IOException if there was a problem writing the data.
+	 */
+	void write(long offset, byte[] source, int start, int len) throws IOException;
+	
+	/**
+	 * Writes the remaining bytes of the source buffer at the specified offset, advancing the buffer's position to its
+	 * limit. The write pointer is not moved.
+	 * @param offset An offset in bytes from the beginning of this DataSink
+	 * @throws IOException if there was a problem writing the data.
+	 */
+	public default void write(long offset, ByteBuffer source) throws IOException {
+		if (source.hasArray()) {
+			int len = source.remaining();
+			write(offset, source.array(), source.arrayOffset()+source.position(), len);
+			source.position(source.position()+len);
+		} else {
+			byte[] scratch = new byte[Math.min(source.remaining(), 1 << 20)];
+			while(source.hasRemaining()) {
+				int count = Math.min(scratch.length, source.remaining());
+				source.get(scratch, 0, count);
+				write(offset, scratch, 0, count);
+				offset += count;
+			}
+		}
+	}
+	
+	/**
+	 * Writes a single byte at the specified offset, without moving the write pointer.
+	 */
+	public default void writeI8(long offset, int value) throws IOException {
+		write(offset, new byte[] { (byte) value }, 0, 1);
+	}
+	
+	/**
+	 * Writes a short at the specified offset, without moving the write pointer.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void writeI16(long offset, short value) throws IOException {
+		ByteBuffer scratch = ByteBuffer.allocate(Short.BYTES).order(getByteOrder());
+		write(offset, scratch.putShort(0, value).array(), 0, Short.BYTES);
+	}
+	
+	/**
+	 * Writes an int at the specified offset, without moving the write pointer.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void writeI32(long offset, int value) throws IOException {
+		ByteBuffer scratch = ByteBuffer.allocate(Integer.BYTES).order(getByteOrder());
+		write(offset, scratch.putInt(0, value).array(), 0, Integer.BYTES);
+	}
+	
+	/**
+	 * Writes a long at the specified offset, without moving the write pointer.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void writeI64(long offset, long value) throws IOException {
+		ByteBuffer scratch = ByteBuffer.allocate(Long.BYTES).order(getByteOrder());
+		write(offset, scratch.putLong(0, value).array(), 0, Long.BYTES);
+	}
+	
+	/**
+	 * Writes a float at the specified offset, without moving the write pointer.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void writeF32(long offset, float value) throws IOException {
+		writeI32(offset, Float.floatToRawIntBits(value));
+	}
+	
+	/**
+	 * Writes a double at the specified offset, without moving the write pointer.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void writeF64(long offset, double value) throws IOException {
+		writeI64(offset, Double.doubleToRawLongBits(value));
+	}
+	
+	/**
+	 * Writes a single byte at the write pointer, and advances the pointer by one byte.
+	 */
+	public default void write(int value) throws IOException {
+		writeI8(position(), value);
+		skip(1);
+	}
+	
+	/**
+	 * Writes a boolean as a single byte, 1 for true or 0 for false, and advances the write pointer by one byte.
+	 */
+	public default void writeBoolean(boolean value) throws IOException {
+		write(value ? 1 : 0);
+	}
+	
+	/**
+	 * Writes a single byte at the write pointer, and advances the pointer by one byte.
+	 */
+	public default void writeI8(int value) throws IOException {
+		write(value);
+	}
+	
+	/**
+	 * Writes a short at the write pointer, and advances the pointer by two bytes.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void writeI16(short value) throws IOException {
+		writeI16(position(), value);
+		skip(Short.BYTES);
+	}
+	
+	/**
+	 * Writes an int at the write pointer, and advances the pointer by four bytes.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void writeI32(int value) throws IOException {
+		writeI32(position(), value);
+		skip(Integer.BYTES);
+	}
+	
+	/**
+	 * Writes a long at the write pointer, and advances the pointer by eight bytes.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void writeI64(long value) throws IOException {
+		writeI64(position(), value);
+		skip(Long.BYTES);
+	}
+	
+	/**
+	 * Writes a float at the write pointer, and advances the pointer by four bytes.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void writeF32(float value) throws IOException {
+		writeI32(Float.floatToRawIntBits(value));
+	}
+	
+	/**
+	 * Writes a double at the write pointer, and advances the pointer by eight bytes.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void writeF64(double value) throws IOException {
+		writeI64(Double.doubleToRawLongBits(value));
+	}
+	
+	/**
+	 * Writes the entire array at the write pointer, and advances the pointer past it.
+	 */
+	public default void write(byte[] source) throws IOException {
+		write(source, 0, source.length);
+	}
+	
+	/**
+	 * Writes {@code len} bytes from the specified area of the source array at the write pointer, and advances the
+	 * pointer past them.
+	 */
+	public default void write(byte[] source, int start, int len) throws IOException {
+		write(position(), source, start, len);
+		skip(len);
+	}
+	
+	/**
+	 * Writes the remaining bytes of the source buffer at the write pointer, and advances the pointer past them.
+	 */
+	public default void write(ByteBuffer source) throws IOException {
+		int len = source.remaining();
+		write(position(), source);
+		skip(len);
+	}
+	
+	/**
+	 * Writes {@code len} shorts from the specified area of the source array, advancing the write pointer by
+	 * {@code len*2} bytes.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void writeI16(short[] source, int start, int len) throws IOException {
+		ByteBuffer scratch = bulkScratch(len, Short.BYTES);
+		int chunk = scratch.capacity() / Short.BYTES;
+		for(int i=0; i<len; i+=chunk) {
+			int count = Math.min(chunk, len-i);
+			scratch.clear();
+			scratch.asShortBuffer().put(source, start+i, count);
+			write(scratch.array(), 0, count*Short.BYTES);
+		}
+	}
+	
+	/**
+	 * Writes {@code len} ints from the specified area of the source array, advancing the write pointer by
+	 * {@code len*4} bytes.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void writeI32(int[] source, int start, int len) throws IOException {
+		ByteBuffer scratch = bulkScratch(len, Integer.BYTES);
+		int chunk = scratch.capacity() / Integer.BYTES;
+		for(int i=0; i<len; i+=chunk) {
+			int count = Math.min(chunk, len-i);
+			scratch.clear();
+			scratch.asIntBuffer().put(source, start+i, count);
+			write(scratch.array(), 0, count*Integer.BYTES);
+		}
+	}
+	
+	/**
+	 * Writes {@code len} longs from the specified area of the source array, advancing the write pointer by
+	 * {@code len*8} bytes.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void writeI64(long[] source, int start, int len) throws IOException {
+		ByteBuffer scratch = bulkScratch(len, Long.BYTES);
+		int chunk = scratch.capacity() / Long.BYTES;
+		for(int i=0; i<len; i+=chunk) {
+			int count = Math.min(chunk, len-i);
+			scratch.clear();
+			scratch.asLongBuffer().put(source, start+i, count);
+			write(scratch.array(), 0, count*Long.BYTES);
+		}
+	}
+	
+	/**
+	 * Writes {@code len} floats from the specified area of the source array, advancing the write pointer by
+	 * {@code len*4} bytes.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void writeF32(float[] source, int start, int len) throws IOException {
+		ByteBuffer scratch = bulkScratch(len, Float.BYTES);
+		int chunk = scratch.capacity() / Float.BYTES;
+		for(int i=0; i<len; i+=chunk) {
+			int count = Math.min(chunk, len-i);
+			scratch.clear();
+			scratch.asFloatBuffer().put(source, start+i, count);
+			write(scratch.array(), 0, count*Float.BYTES);
+		}
+	}
+	
+	/**
+	 * Writes {@code len} doubles from the specified area of the source array, advancing the write pointer by
+	 * {@code len*8} bytes.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void writeF64(double[] source, int start, int len) throws IOException {
+		ByteBuffer scratch = bulkScratch(len, Double.BYTES);
+		int chunk = scratch.capacity() / Double.BYTES;
+		for(int i=0; i<len; i+=chunk) {
+			int count = Math.min(chunk, len-i);
+			scratch.clear();
+			scratch.asDoubleBuffer().put(source, start+i, count);
+			write(scratch.array(), 0, count*Double.BYTES);
+		}
+	}
+	
+	/**
+	 * Allocates a heap buffer, in this DataSink's ByteOrder, big enough to encode a bulk write in a handful of large
+	 * copies rather than one element at a time.
+	 */
+	private ByteBuffer bulkScratch(int elements, int elementSize) {
+		if (elements<0) throw new ArrayIndexOutOfBoundsException();
+		int capacity = (int) Math.min((long) elements * elementSize, 1 << 20);
+		return ByteBuffer.allocate(Math.max(capacity, elementSize)).order(getByteOrder());
+	}
+	
+	/**
+	 * Copies {@code length} bytes of a DataSlice, starting at {@code offset}, to the write pointer, and advances the
+	 * pointer past them. Neither the DataSlice's read pointer nor its contents are disturbed. Where the DataSlice can
+	 * expose its storage as a ByteBuffer, the bytes are copied straight out of it.
+	 * @throws IOException if there was a problem reading or writing the data.
+	 */
+	public default void transferFrom(DataSlice source, long offset, long length) throws IOException {
+		if (offset<0 || length<0 || offset+length>source.length()) throw new ArrayIndexOutOfBoundsException();
+		byte[] scratch = null;
+		while(length>0) {
+			int count = (int) Math.min(length, 1 << 20);
+			Optional<ByteBuffer> view = source.tryAsByteBuffer(offset, count);
+			if (view.isPresent()) {
+				write(view.get());
+			} else {
+				if (scratch==null) scratch = new byte[count];
+				source.read(offset, scratch, 0, count);
+				write(scratch, 0, count);
+			}
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	/**
+	 * Writes any buffered data out to the underlying storage. The default implementation does nothing.
+	 */
+	default void flush() throws IOException {
+		// Do Nothing
+	}
+	
+	/**
+	 * Flushes any buffered data, and closes the underlying file or channel
+	 */
+	void close() throws IOException;
+	
+	
+	/**
+	 * Creates a DataSink which writes into the bytes between the specified buffer's position and limit. The buffer's
+	 * position, limit, and ByteOrder are never modified.
+	 */
+	public static DataSink of(ByteBuffer buffer) {
+		return new ByteBufferDataSink(buffer);
+	}
+	
+	/**
+	 * Creates a buffered DataSink which writes to the specified FileChannel. Closing the sink closes the channel.
+	 */
+	public static DataSink of(FileChannel channel) throws IOException {
+		return new FileChannelDataSink(channel);
+	}
+}
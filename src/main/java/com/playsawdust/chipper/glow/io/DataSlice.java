@@ -11,7 +11,15 @@ package com.playsawdust.chipper.glow.io;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
 
 public interface DataSlice {
 	/**
@@ -154,11 +162,176 @@ public interface DataSlice {
 	 *                     data.
 	 */
 	public default void copy(byte[] destination, int start, int len) throws IOException {
+		read(position(), destination, start, len);
+		skip(len);
+	}
+	
+	/**
+	 * Reads data from the specified offset into the specified area in the destination array, without moving the read
+	 * pointer. Either all bytes requested will be read successfully or an IOException will be thrown.
+	 * @param offset       An offset in bytes from the beginning of this DataSlice
+	 * @param destination  the byte array to read data into
+	 * @param start        the first index in the byte array to write data into
+	 * @param len          the number of bytes to copy out of this DataSlice
+	 * @throws IOException if there was not enough data to fulfill the request, or if there was a problem reading the
+	 *                     data.
+	 */
+	public default void read(long offset, byte[] destination, int start, int len) throws IOException {
 		for(int i=0; i<len; i++) {
-			destination[start+i] = (byte) read();
+			destination[start+i] = (byte) read(offset+i);
+		}
+	}
+	
+	/**
+	 * Fills the remaining space in the destination buffer with data from the specified offset, without moving the
+	 * read pointer. The buffer's position is advanced by the number of bytes read. Either the buffer will be filled
+	 * or an IOException will be thrown.
+	 * @param offset      An offset in bytes from the beginning of this DataSlice
+	 * @param destination the buffer to read data into
+	 * @throws IOException if there was not enough data to fill the buffer, or if there was a problem reading the data.
+	 */
+	public default void read(long offset, ByteBuffer destination) throws IOException {
+		if (destination.hasArray()) {
+			int len = destination.remaining();
+			read(offset, destination.array(), destination.arrayOffset()+destination.position(), len);
+			destination.position(destination.position()+len);
+		} else {
+			byte[] scratch = new byte[Math.min(destination.remaining(), 1 << 20)];
+			while(destination.hasRemaining()) {
+				int count = Math.min(scratch.length, destination.remaining());
+				read(offset, scratch, 0, count);
+				destination.put(scratch, 0, count);
+				offset += count;
+			}
+		}
+	}
+	
+	/**
+	 * Reads {@code len} signed shorts into the specified area of the destination array, advancing the read pointer
+	 * by {@code len*2} bytes.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void readI16s(short[] destination, int start, int len) throws IOException {
+		ByteBuffer scratch = bulkScratch(len, Short.BYTES);
+		int chunk = scratch.capacity() / Short.BYTES;
+		for(int i=0; i<len; i+=chunk) {
+			int count = Math.min(chunk, len-i);
+			fillBulk(scratch, count*Short.BYTES).asShortBuffer().get(destination, start+i, count);
+		}
+	}
+	
+	/**
+	 * Reads {@code len} signed ints into the specified area of the destination array, advancing the read pointer by
+	 * {@code len*4} bytes.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void readI32s(int[] destination, int start, int len) throws IOException {
+		ByteBuffer scratch = bulkScratch(len, Integer.BYTES);
+		int chunk = scratch.capacity() / Integer.BYTES;
+		for(int i=0; i<len; i+=chunk) {
+			int count = Math.min(chunk, len-i);
+			fillBulk(scratch, count*Integer.BYTES).asIntBuffer().get(destination, start+i, count);
+		}
+	}
+	
+	/**
+	 * Reads {@code len} signed longs into the specified area of the destination array, advancing the read pointer by
+	 * {@code len*8} bytes.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void readI64s(long[] destination, int start, int len) throws IOException {
+		ByteBuffer scratch = bulkScratch(len, Long.BYTES);
+		int chunk = scratch.capacity() / Long.BYTES;
+		for(int i=0; i<len; i+=chunk) {
+			int count = Math.min(chunk, len-i);
+			fillBulk(scratch, count*Long.BYTES).asLongBuffer().get(destination, start+i, count);
+		}
+	}
+	
+	/**
+	 * Reads {@code len} floats into the specified area of the destination array, advancing the read pointer by
+	 * {@code len*4} bytes.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void readF32s(float[] destination, int start, int len) throws IOException {
+		ByteBuffer scratch = bulkScratch(len, Float.BYTES);
+		int chunk = scratch.capacity() / Float.BYTES;
+		for(int i=0; i<len; i+=chunk) {
+			int count = Math.min(chunk, len-i);
+			fillBulk(scratch, count*Float.BYTES).asFloatBuffer().get(destination, start+i, count);
+		}
+	}
+	
+	/**
+	 * Reads {@code len} doubles into the specified area of the destination array, advancing the read pointer by
+	 * {@code len*8} bytes.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void readF64s(double[] destination, int start, int len) throws IOException {
+		ByteBuffer scratch = bulkScratch(len, Double.BYTES);
+		int chunk = scratch.capacity() / Double.BYTES;
+		for(int i=0; i<len; i+=chunk) {
+			int count = Math.min(chunk, len-i);
+			fillBulk(scratch, count*Double.BYTES).asDoubleBuffer().get(destination, start+i, count);
 		}
 	}
 	
+	/**
+	 * Fills the remaining space in the destination buffer with signed ints, advancing the buffer's position and this
+	 * DataSlice's read pointer accordingly.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void readI32s(IntBuffer destination) throws IOException {
+		int len = destination.remaining();
+		if (destination.hasArray()) {
+			readI32s(destination.array(), destination.arrayOffset()+destination.position(), len);
+			destination.position(destination.position()+len);
+		} else {
+			ByteBuffer scratch = bulkScratch(len, Integer.BYTES);
+			int chunk = scratch.capacity() / Integer.BYTES;
+			for(int i=0; i<len; i+=chunk) {
+				int count = Math.min(chunk, len-i);
+				destination.put(fillBulk(scratch, count*Integer.BYTES).asIntBuffer());
+			}
+		}
+	}
+	
+	/**
+	 * Fills the remaining space in the destination buffer with floats, advancing the buffer's position and this
+	 * DataSlice's read pointer accordingly.
+	 * @see #setByteOrder(ByteOrder)
+	 */
+	public default void readF32s(FloatBuffer destination) throws IOException {
+		int len = destination.remaining();
+		if (destination.hasArray()) {
+			readF32s(destination.array(), destination.arrayOffset()+destination.position(), len);
+			destination.position(destination.position()+len);
+		} else {
+			ByteBuffer scratch = bulkScratch(len, Float.BYTES);
+			int chunk = scratch.capacity() / Float.BYTES;
+			for(int i=0; i<len; i+=chunk) {
+				int count = Math.min(chunk, len-i);
+				destination.put(fillBulk(scratch, count*Float.BYTES).asFloatBuffer());
+			}
+		}
+	}
+	
+	/**
+	 * Allocates a heap buffer, in this DataSlice's ByteOrder, big enough to decode a bulk read in a handful of large
+	 * copies rather than one element at a time.
+	 */
+	private ByteBuffer bulkScratch(int elements, int elementSize) {
+		if (elements<0) throw new ArrayIndexOutOfBoundsException();
+		int capacity = (int) Math.min((long) elements * elementSize, 1 << 20);
+		return ByteBuffer.allocate(Math.max(capacity, elementSize)).order(getByteOrder());
+	}
+	
+	private ByteBuffer fillBulk(ByteBuffer scratch, int bytes) throws IOException {
+		copy(scratch.array(), 0, bytes);
+		scratch.clear().limit(bytes);
+		return scratch;
+	}
+	
 	/**
 	 * Gets the location of the read pointer relative to the start of this DataSlice.
 	 */
@@ -197,6 +370,85 @@ public interface DataSlice {
 		return this.slice(position(), length);
 	}
 	
+	/**
+	 * Moves an existing window onto {@code length} bytes of this DataSlice starting at {@code offset}, instead of
+	 * creating a new slice. This is for loops which visit many small ranges one after another: one window can be
+	 * reused for all of them. Unlike {@link #slice(long, long)}, this DataSlice's read pointer isn't moved.
+	 * @param target the window to move, which may currently be looking at any slice
+	 * @return the target window
+	 * @see LightweightDataSlice#retarget(DataSlice, long, long)
+	 */
+	default LightweightDataSlice resliceInto(LightweightDataSlice target, long offset, long length) throws IOException {
+		return target.retarget(this, offset, length);
+	}
+	
+	/**
+	 * Creates a new DataSlice over exactly the same bytes as this one, with its own read pointer and ByteOrder. The
+	 * duplicate starts out with the same read pointer and ByteOrder as this DataSlice, but subsequent changes to either
+	 * slice will not affect the other.
+	 * 
+	 * <p>A DataSlice's read pointer is not thread-safe, so the usual way to read one set of bytes from several threads
+	 * is to give each thread its own duplicate. Array-backed and memory-mapped slices can always be read this way;
+	 * file-backed slices need to be in concurrent mode.
+	 * @return A DataSlice representing the same bytes as this DataSlice.
+	 * @see FileDataSlice#FileDataSlice(RandomAccessFile, BlockCache, boolean)
+	 */
+	default DataSlice duplicate() throws IOException {
+		LightweightDataSlice result = new LightweightDataSlice(this, 0L, length());
+		result.seek(position());
+		result.setByteOrder(getByteOrder());
+		return result;
+	}
+	
+	/**
+	 * Gets a read-only ByteBuffer which shares storage with the specified range of this DataSlice, if the backing
+	 * store allows it. No data is copied. The returned buffer has its position at zero, its limit at the end of the
+	 * range, and this DataSlice's current ByteOrder.
+	 * @param offset The offset into this DataSlice where the range begins
+	 * @param length The number of bytes in the range
+	 * @return A view of the range, or an empty Optional if one can't be created without copying.
+	 */
+	default Optional<ByteBuffer> tryAsByteBuffer(long offset, long length) throws IOException {
+		return Optional.empty();
+	}
+	
+	/**
+	 * Gets a read-only ByteBuffer which shares storage with this entire DataSlice, if the backing store allows it.
+	 * @see #tryAsByteBuffer(long, long)
+	 */
+	default Optional<ByteBuffer> tryAsByteBuffer() throws IOException {
+		return tryAsByteBuffer(0L, length());
+	}
+	
+	/**
+	 * Gets a read-only ByteBuffer containing the specified range of this DataSlice. If the backing store allows it,
+	 * this is a view sharing the same storage; otherwise the data is copied, in a single bulk read, into a new direct
+	 * buffer. Either way the returned buffer has its position at zero, its limit at the end of the range, and this
+	 * DataSlice's current ByteOrder.
+	 * @param offset The offset into this DataSlice where the range begins
+	 * @param length The number of bytes in the range
+	 * @throws IOException if the range is larger than a ByteBuffer can hold, or if there was a problem reading the data.
+	 */
+	default ByteBuffer asByteBuffer(long offset, long length) throws IOException {
+		Optional<ByteBuffer> view = tryAsByteBuffer(offset, length);
+		if (view.isPresent()) return view.get();
+		
+		if (length<0) throw new ArrayIndexOutOfBoundsException();
+		if (length>Integer.MAX_VALUE) throw new IOException("Range of "+length+" bytes is too large for a ByteBuffer");
+		ByteBuffer result = ByteBuffer.allocateDirect((int) length);
+		read(offset, result);
+		result.flip();
+		return result.asReadOnlyBuffer().order(getByteOrder());
+	}
+	
+	/**
+	 * Gets a read-only ByteBuffer containing this entire DataSlice.
+	 * @see #asByteBuffer(long, long)
+	 */
+	default ByteBuffer asByteBuffer() throws IOException {
+		return asByteBuffer(0L, length());
+	}
+	
 	/**
 	 * Copies a portion of this DataSlice out into a new DataSlice.
 	 * @param offset the start location of the copy
@@ -207,12 +459,64 @@ public interface DataSlice {
 	default DataSlice copy(long offset, int length) throws IOException {
 		if (length<0) throw new ArrayIndexOutOfBoundsException();
 		byte[] data = new byte[length];
-		for(int i=0; i<length; i++) {
-			data[i] = (byte) read(offset+i);
-		}
+		read(offset, data, 0, length);
 		return new ArrayDataSlice(data);
 	}
 	
+	/**
+	 * Finds the first occurrence of the pattern which starts at or after {@code from}, without moving the read pointer.
+	 * The slice is scanned in large blocks rather than a byte at a time.
+	 * @return the offset where the pattern begins, or -1 if it doesn't appear
+	 * @see PatternScanner
+	 */
+	default long indexOf(byte[] pattern, long from) throws IOException {
+		return new PatternScanner(pattern).indexOf(this, from);
+	}
+	
+	/**
+	 * Finds the first occurrence of a four-character tag, such as a RIFF chunk tag, which starts at or after
+	 * {@code from}. Tags shorter than four characters are padded with spaces.
+	 * @return the offset where the tag begins, or -1 if it doesn't appear
+	 */
+	default long indexOfTag(String tag, long from) throws IOException {
+		return PatternScanner.forTags(tag).indexOf(this, from);
+	}
+	
+	/**
+	 * Calculates a checksum or hash of {@code length} bytes of this DataSlice, starting at {@code offset}. The read
+	 * pointer isn't moved.
+	 * @see ChecksumAlgorithm#computeParallel(DataSlice, long, long)
+	 */
+	default long checksum(long offset, long length, ChecksumAlgorithm algorithm) throws IOException {
+		return algorithm.compute(this, offset, length);
+	}
+	
+	/**
+	 * Tells this DataSlice how it is likely to be read. This is purely advisory, and the default implementation does
+	 * nothing.
+	 */
+	default void setAccessHint(AccessHint hint) {
+		// Do Nothing
+	}
+	
+	/**
+	 * Gets the last hint passed to {@link #setAccessHint(AccessHint)}, or NORMAL if none was given or hints are not
+	 * supported.
+	 */
+	default AccessHint getAccessHint() {
+		return AccessHint.NORMAL;
+	}
+	
+	/**
+	 * Tells this DataSlice that the specified range will be read soon, so that it can be brought into memory ahead of
+	 * time. This is purely advisory, and the default implementation does nothing.
+	 * @param offset The offset into this DataSlice where the range begins
+	 * @param length The number of bytes in the range
+	 */
+	default void prefetch(long offset, long length) throws IOException {
+		// Do Nothing
+	}
+	
 	/**
 	 * Closes the underlying slice, file, or stream
 	 */
@@ -226,6 +530,14 @@ public interface DataSlice {
 		return new ArrayDataSlice(array, 0, array.length);
 	}
 	
+	/**
+	 * Creates a DataSlice backed by the remaining bytes of the specified ByteBuffer, which may be direct. The buffer's
+	 * position, limit, and ByteOrder are never modified, so it can still be used elsewhere.
+	 */
+	public static DataSlice of(ByteBuffer buffer) {
+		return new ByteBufferDataSlice(buffer);
+	}
+	
 	/**
 	 * Creates a DataSlice backed by the specified RandomAccessFile. Operations on the RandomAccessFile will require
 	 * the file to be open, but it is the responsibility of the caller to close it. We recommend using a
@@ -235,6 +547,46 @@ public interface DataSlice {
 		return new FileDataSlice(f);
 	}
 	
+	/**
+	 * Creates a DataSlice backed by the specified RandomAccessFile, which reads through the specified BlockCache. As
+	 * with {@link #of(RandomAccessFile)}, it is the responsibility of the caller to close the file.
+	 */
+	public static DataSlice of(RandomAccessFile f, BlockCache cache) throws IOException {
+		return new FileDataSlice(f, cache);
+	}
+	
+	/**
+	 * Creates a DataSlice which memory-maps the entire contents of the specified FileChannel. Closing the returned
+	 * slice, or any slice taken from it, will close the channel.
+	 */
+	public static DataSlice map(FileChannel channel) throws IOException {
+		return new MappedDataSlice(channel);
+	}
+	
+	/**
+	 * Opens the specified file for reading and memory-maps its entire contents. Closing the returned slice, or any
+	 * slice taken from it, will close the file.
+	 */
+	public static DataSlice map(Path path) throws IOException {
+		return MappedDataSlice.open(path);
+	}
+	
+	/**
+	 * Creates a DataSlice which reads the specified slices end to end, without copying them. Each slice is read in
+	 * full, whatever its read pointer is. Closing the returned slice closes all of them.
+	 */
+	public static DataSlice concat(DataSlice... slices) throws IOException {
+		return new CompositeDataSlice(Arrays.asList(slices));
+	}
+	
+	/**
+	 * Creates a DataSlice which reads the specified slices end to end, without copying them.
+	 * @see #concat(DataSlice...)
+	 */
+	public static DataSlice concat(List<? extends DataSlice> slices) throws IOException {
+		return new CompositeDataSlice(slices);
+	}
+	
 	
 	
 	
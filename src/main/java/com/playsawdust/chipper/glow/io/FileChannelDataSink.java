@@ -0,0 +1,217 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A DataSink which writes to a FileChannel through a write buffer. Small writes which follow on from one another are
+ * gathered up in the buffer, while writes at least as big as the buffer go straight to the channel. All writes are
+ * positional, so the channel's own position is never used.
+ */
+public class FileChannelDataSink implements DataSink {
+	public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+	
+	protected final FileChannel channel;
+	protected final ByteBuffer buffer;
+	/** The offset in the file of the first byte in the buffer */
+	protected long bufferStart = 0L;
+	protected long length;
+	protected long pointer = 0L;
+	protected ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+	
+	public FileChannelDataSink(FileChannel channel) throws IOException {
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+	
+	public FileChannelDataSink(FileChannel channel, int bufferSize) throws IOException {
+		if (bufferSize<Long.BYTES) throw new IllegalArgumentException("Buffer is too small");
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		this.length = channel.size();
+	}
+	
+	/**
+	 * Creates or truncates the specified file, and opens it for writing.
+	 */
+	public static FileChannelDataSink create(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			return new FileChannelDataSink(channel);
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+	
+	@Override
+	public void seek(long offset) {
+		if (offset<0) throw new ArrayIndexOutOfBoundsException();
+		pointer = offset;
+	}
+	
+	@Override
+	public long position() {
+		return pointer;
+	}
+	
+	@Override
+	public long length() {
+		return length;
+	}
+	
+	@Override
+	public ByteOrder getByteOrder() {
+		return byteOrder;
+	}
+	
+	@Override
+	public void setByteOrder(ByteOrder order) {
+		this.byteOrder = order;
+	}
+	
+	@Override
+	public void write(long offset, byte[] source, int start, int len) throws IOException {
+		if (offset<0 || len<0 || start<0 || start+len>source.length) throw new ArrayIndexOutOfBoundsException();
+		if (len>=buffer.capacity()) {
+			write(offset, ByteBuffer.wrap(source, start, len));
+			return;
+		}
+		int end = buffered(offset, len);
+		buffer.put(source, start, len);
+		buffer.position(end);
+	}
+	
+	@Override
+	public void write(long offset, ByteBuffer source) throws IOException {
+		if (offset<0) throw new ArrayIndexOutOfBoundsException();
+		int len = source.remaining();
+		if (len<buffer.capacity()) {
+			int end = buffered(offset, len);
+			buffer.put(source);
+			buffer.position(end);
+			return;
+		}
+		
+		//Large writes skip the buffer entirely
+		flush();
+		long position = offset;
+		while(source.hasRemaining()) {
+			position += channel.write(source, position);
+		}
+		length = Math.max(length, position);
+	}
+	
+	@Override
+	public void writeI8(long offset, int value) throws IOException {
+		if (offset<0) throw new ArrayIndexOutOfBoundsException();
+		int end = buffered(offset, 1);
+		buffer.put((byte) value);
+		buffer.position(end);
+	}
+	
+	@Override
+	public void writeI16(long offset, short value) throws IOException {
+		if (offset<0) throw new ArrayIndexOutOfBoundsException();
+		int end = buffered(offset, Short.BYTES);
+		buffer.putShort((byteOrder==ByteOrder.BIG_ENDIAN) ? value : Short.reverseBytes(value));
+		buffer.position(end);
+	}
+	
+	@Override
+	public void writeI32(long offset, int value) throws IOException {
+		if (offset<0) throw new ArrayIndexOutOfBoundsException();
+		int end = buffered(offset, Integer.BYTES);
+		buffer.putInt((byteOrder==ByteOrder.BIG_ENDIAN) ? value : Integer.reverseBytes(value));
+		buffer.position(end);
+	}
+	
+	@Override
+	public void writeI64(long offset, long value) throws IOException {
+		if (offset<0) throw new ArrayIndexOutOfBoundsException();
+		int end = buffered(offset, Long.BYTES);
+		buffer.putLong((byteOrder==ByteOrder.BIG_ENDIAN) ? value : Long.reverseBytes(value));
+		buffer.position(end);
+	}
+	
+	@Override
+	public void write(int value) throws IOException {
+		writeI8(pointer, value);
+		pointer++;
+	}
+	
+	@Override
+	public void writeI16(short value) throws IOException {
+		writeI16(pointer, value);
+		pointer += Short.BYTES;
+	}
+	
+	@Override
+	public void writeI32(int value) throws IOException {
+		writeI32(pointer, value);
+		pointer += Integer.BYTES;
+	}
+	
+	@Override
+	public void writeI64(long value) throws IOException {
+		writeI64(pointer, value);
+		pointer += Long.BYTES;
+	}
+	
+	/**
+	 * Gets the buffer ready to take {@code bytes} bytes at the specified offset, flushing first if the write can't be
+	 * gathered up with what's already buffered. The buffer is left positioned where the bytes go, and the return value
+	 * is where its position must be put back to once they're written, so that the buffer still ends at its furthest
+	 * byte.
+	 */
+	private int buffered(long offset, int bytes) throws IOException {
+		if (offset<bufferStart || offset>bufferStart+buffer.position() || offset+bytes>bufferStart+buffer.capacity()) {
+			flush();
+			bufferStart = offset;
+		}
+		int end = (int) Math.max(buffer.position(), offset+bytes-bufferStart);
+		buffer.position((int) (offset-bufferStart));
+		length = Math.max(length, bufferStart+end);
+		return end;
+	}
+	
+	/**
+	 * Writes the buffer out to the channel.
+	 */
+	@Override
+	public void flush() throws IOException {
+		buffer.flip();
+		long position = bufferStart;
+		while(buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		buffer.clear();
+		bufferStart = position;
+	}
+	
+	/**
+	 * Flushes the buffer and closes the channel.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+	
+}
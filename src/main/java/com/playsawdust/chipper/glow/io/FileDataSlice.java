@@ -9,17 +9,93 @@
 
 package com.playsawdust.chipper.glow.io;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class FileDataSlice implements DataSlice {
+	/** Number of block-to-block moves in a row, each starting where the last left off, that count as a sequential scan */
+	private static final int SEQUENTIAL_THRESHOLD = 2;
+	/** How much of the file uncached single-byte reads in concurrent mode read at once. Must be a power of two. */
+	private static final int WINDOW_SIZE = 8 * 1024;
+	
 	protected final RandomAccessFile file;
+	/**
+	 * The channel positional reads, and reads through the cache, go through. This is the file's own channel, except in
+	 * instrumented slices, which count reads with a wrapper around it.
+	 */
+	protected FileChannel channel;
+	protected final BlockCache cache;
+	protected final boolean concurrent;
+	/**
+	 * The most recent block fetched from the cache, kept so that runs of reads inside one block skip the lookup. In
+	 * concurrent mode without a cache, this is the window single-byte reads are served from instead. Blocks are
+	 * immutable, so it doesn't matter if several threads race to replace this.
+	 */
+	protected BlockCache.Block currentBlock;
 	protected long pointer = 0L;
 	protected ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
 	
+	protected AccessHint accessHint = AccessHint.NORMAL;
+	/** The executor blocks are loaded ahead on, or null if read-ahead is off */
+	protected Executor readAheadExecutor;
+	protected int readAheadBlocks;
+	/** The file offset just past the last block or run this slice read, for spotting sequential scans */
+	protected long lastReadEnd = -1L;
+	protected int sequentialRun = 0;
+	
 	public FileDataSlice(RandomAccessFile file) {
+		this(file, null, false);
+	}
+	
+	/**
+	 * Creates a FileDataSlice which reads through the specified cache instead of reading the file directly. The cache
+	 * may be shared with other FileDataSlices, as long as they point at the same file.
+	 * @param file  the file to read
+	 * @param cache the cache to read through, or null to read the file directly
+	 */
+	public FileDataSlice(RandomAccessFile file, BlockCache cache) {
+		this(file, cache, false);
+	}
+	
+	/**
+	 * Creates a FileDataSlice, optionally in concurrent mode. Normally, single-byte reads seek the RandomAccessFile
+	 * and read from its file pointer, which is cheap but means that only one thread may read the file at a time. In
+	 * concurrent mode, every read is a positional read against the file's channel, so slices of this DataSlice (and
+	 * duplicates of it) can be read from different threads at once. Each individual DataSlice still has its own read
+	 * pointer, so a single DataSlice should not be shared between threads; use {@link #duplicate()} instead.
+	 * 
+	 * <p>Without a BlockCache, single-byte reads in concurrent mode are served from a small window of the file, which
+	 * is read again whenever a read falls outside it. A BlockCache is still recommended for reads which jump around.
+	 * @param file       the file to read
+	 * @param cache      the cache to read through, or null to read the file directly
+	 * @param concurrent true to make this DataSlice safe to read from multiple threads
+	 */
+	public FileDataSlice(RandomAccessFile file, BlockCache cache, boolean concurrent) {
 		this.file = file;
+		this.channel = file.getChannel();
+		this.cache = cache;
+		this.concurrent = concurrent;
+	}
+	
+	/**
+	 * Creates a FileDataSlice over the same file and cache as another, with the same read pointer, ByteOrder, and
+	 * settings, optionally in a different mode.
+	 */
+	protected FileDataSlice(FileDataSlice original, boolean concurrent) {
+		this(original.file, original.cache, concurrent);
+		this.pointer = original.pointer;
+		this.byteOrder = original.byteOrder;
+		this.accessHint = original.accessHint;
+		this.readAheadExecutor = original.readAheadExecutor;
+		this.readAheadBlocks = original.readAheadBlocks;
 	}
 
 	@Override
@@ -29,17 +105,93 @@ public class FileDataSlice implements DataSlice {
 
 	@Override
 	public int read() throws IOException {
-		if (pointer!=file.getFilePointer()) file.seek(pointer);
-		int result = file.read();
+		int result = read(pointer);
 		pointer++;
 		return result;
 	}
 	
 	@Override
 	public int read(long offset) throws IOException {
-		if (offset!=file.getFilePointer()) file.seek(pointer);
+		if (cache!=null) {
+			BlockCache.Block block = currentBlock;
+			if (block==null || !block.contains(offset)) {
+				block = cache.getBlock(channel, offset);
+				currentBlock = block;
+				if (readAheadExecutor!=null) readAhead(block.start(), block.start()+block.length());
+			}
+			return block.read(offset);
+		}
+		
+		if (concurrent) {
+			BlockCache.Block window = currentBlock;
+			if (window==null || !window.contains(offset)) {
+				window = readWindow(offset);
+				if (window==null) return -1;
+				currentBlock = window;
+			}
+			return window.read(offset);
+		}
+		
+		if (offset!=file.getFilePointer()) file.seek(offset);
 		return file.read();
 	}
+	
+	/**
+	 * Reads the aligned window of the file which contains the specified offset, with positional reads.
+	 * @return the window, which is shorter than WINDOW_SIZE at the end of the file, or null if it would be empty
+	 */
+	private BlockCache.Block readWindow(long offset) throws IOException {
+		long start = offset & ~(WINDOW_SIZE-1L);
+		ByteBuffer buf = ByteBuffer.allocate(WINDOW_SIZE);
+		while(buf.hasRemaining()) {
+			if (channel.read(buf, start + buf.position())<0) break;
+		}
+		if (buf.position()==0) return null;
+		byte[] data = (buf.position()==WINDOW_SIZE) ? buf.array() : Arrays.copyOf(buf.array(), buf.position());
+		return new BlockCache.Block(start, data);
+	}
+	
+	/**
+	 * Reads a run of bytes with a positional read, so the file pointer is never involved; this is as fast as a seek
+	 * followed by a read, and safe in either mode.
+	 */
+	@Override
+	public void read(long offset, byte[] destination, int start, int len) throws IOException {
+		if (cache!=null) {
+			cache.read(channel, offset, destination, start, len);
+			if (readAheadExecutor!=null) readAhead(offset, offset+len);
+			return;
+		}
+		
+		ByteBuffer buf = ByteBuffer.wrap(destination, start, len);
+		while(buf.hasRemaining()) {
+			if (channel.read(buf, offset + (buf.position()-start))<0) throw new EOFException();
+		}
+	}
+	
+	/**
+	 * Reads straight into the destination buffer with a positional read, so a direct buffer is filled without any
+	 * intermediate copy.
+	 */
+	@Override
+	public void read(long offset, ByteBuffer destination) throws IOException {
+		if (cache!=null) {
+			DataSlice.super.read(offset, destination);
+			return;
+		}
+		
+		while(destination.hasRemaining()) {
+			int read = channel.read(destination, offset);
+			if (read<0) throw new EOFException();
+			offset += read;
+		}
+	}
+	
+	@Override
+	public void copy(byte[] destination, int start, int len) throws IOException {
+		read(pointer, destination, start, len);
+		pointer += len;
+	}
 
 	@Override
 	public long position() {
@@ -58,6 +210,101 @@ public class FileDataSlice implements DataSlice {
 		return result;
 	}
 
+	@Override
+	public DataSlice duplicate() {
+		return derive(concurrent);
+	}
+	
+	/**
+	 * Creates a FileDataSlice over the same file and cache, with the same read pointer, ByteOrder, and settings, for
+	 * {@link #duplicate()} and {@link #asConcurrent()}. Subclasses override this to hand out copies of themselves.
+	 */
+	protected FileDataSlice derive(boolean concurrent) {
+		return new FileDataSlice(this, concurrent);
+	}
+	
+	/**
+	 * Turns on read-ahead, loading blocks on a shared pool of daemon threads.
+	 * @see #setReadAhead(int, Executor)
+	 */
+	public void setReadAhead(int blocks) {
+		setReadAhead(blocks, ReadAheadPool.EXECUTOR);
+	}
+	
+	/**
+	 * Turns on read-ahead, which needs a BlockCache. Once this slice has read a few blocks in a row front to back, or
+	 * has been given the SEQUENTIAL hint, every move into a new block starts loading the next {@code blocks} blocks on
+	 * the executor, so that they're already in the cache by the time they're read. Two blocks is enough to keep one
+	 * loading while the other is read; slow storage may want more. The RANDOM hint turns automatic read-ahead off,
+	 * but {@link #prefetch(long, long)} still works.
+	 * 
+	 * <p>Blocks loading ahead are counted against the cache's {@link BlockCache#setPrefetchBudget(long) prefetch
+	 * budget}, and any which haven't started loading are called off when this slice is closed. Only loads which read
+	 * through this slice's file are called off, so other slices sharing the cache keep theirs.
+	 * @param blocks   the number of blocks to keep loading ahead of the read pointer, or 0 to turn read-ahead off
+	 * @param executor where to run the loads. Loads block on IO, so this should not be the common ForkJoinPool.
+	 * @throws IllegalStateException if this slice doesn't read through a BlockCache
+	 */
+	public void setReadAhead(int blocks, Executor executor) {
+		if (blocks<0) throw new IllegalArgumentException();
+		if (blocks>0 && cache==null) throw new IllegalStateException("Read-ahead needs a BlockCache");
+		this.readAheadBlocks = blocks;
+		this.readAheadExecutor = (blocks==0) ? null : executor;
+	}
+	
+	/**
+	 * Called whenever this slice moves on to a new block or reads a run of bytes, to start loading what comes next if
+	 * the reads look sequential.
+	 */
+	private void readAhead(long start, long end) throws IOException {
+		if (accessHint==AccessHint.RANDOM) return;
+		boolean sequential = lastReadEnd>=0 && start>=lastReadEnd-cache.getBlockSize() && start<=lastReadEnd;
+		sequentialRun = sequential ? sequentialRun+1 : 0;
+		lastReadEnd = end;
+		
+		if (accessHint==AccessHint.SEQUENTIAL || sequentialRun>=SEQUENTIAL_THRESHOLD) {
+			cache.prefetch(channel, end, (long) readAheadBlocks*cache.getBlockSize(), readAheadExecutor);
+		}
+	}
+	
+	/**
+	 * Starts loading the range into the BlockCache in the background, if read-ahead is on. Otherwise this does nothing.
+	 */
+	@Override
+	public void prefetch(long offset, long length) throws IOException {
+		if (readAheadExecutor==null || offset<0 || length<=0) return;
+		cache.prefetch(channel, offset, length, readAheadExecutor);
+	}
+	
+	@Override
+	public void setAccessHint(AccessHint hint) {
+		this.accessHint = hint;
+	}
+	
+	@Override
+	public AccessHint getAccessHint() {
+		return accessHint;
+	}
+	
+	/**
+	 * Creates a concurrent-mode FileDataSlice over the same file and cache, with the same read pointer, ByteOrder, and
+	 * settings, so that slices of it can be read from several threads. The file is shared, so closing either slice
+	 * closes both.
+	 * @see #FileDataSlice(RandomAccessFile, BlockCache, boolean)
+	 */
+	public FileDataSlice asConcurrent() {
+		if (concurrent) return this;
+		return derive(true);
+	}
+	
+	/**
+	 * Returns true if this DataSlice was created in concurrent mode.
+	 * @see #FileDataSlice(RandomAccessFile, BlockCache, boolean)
+	 */
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+	
 	@Override
 	public ByteOrder getByteOrder() {
 		return byteOrder;
@@ -70,6 +317,18 @@ public class FileDataSlice implements DataSlice {
 
 	@Override
 	public void close() throws IOException {
+		if (cache!=null) cache.cancelPrefetch(channel);
 		file.close();
 	}
+	
+	/**
+	 * Holds the default read-ahead pool, so that its threads are only started if read-ahead is actually used.
+	 */
+	private static class ReadAheadPool {
+		private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(task -> {
+			Thread thread = new Thread(task, "glow-io read-ahead");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
 }
\ No newline at end of file
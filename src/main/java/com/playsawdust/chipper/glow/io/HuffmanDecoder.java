@@ -0,0 +1,223 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decodes symbols from a canonical Huffman code, as used by DEFLATE and many other formats, given only the length of
+ * each symbol's code.
+ *
+ * <p>Codes are assigned the usual canonical way: shorter codes come first, and codes of the same length are assigned
+ * in symbol order. Each code is read starting from its highest bit. In an LSB_FIRST stream, that means the code
+ * appears bit-reversed, which is what DEFLATE does.
+ *
+ * <p>Decoding is table-driven. Every code up to {@code rootBits} long is resolved by a single lookup into the root
+ * table. Longer codes take a second lookup into a subtable. Either way, only one peek is made at the stream.
+ */
+public class HuffmanDecoder {
+	public static final int MAX_CODE_LENGTH = 24;
+	public static final int DEFAULT_ROOT_BITS = 9;
+	
+	/*
+	 * Table entries are packed ints. Bits 0-4 hold a length, bit 7 is set for a link to a subtable, and bits 8 and up
+	 * hold either the decoded symbol or the index where the subtable starts. For a symbol the length is the length of
+	 * its code; for a link it's the number of bits which index the subtable. An entry of 0 is an unused code.
+	 */
+	private static final int LINK = 0x80;
+	private static final int LENGTH_MASK = 0x1F;
+	
+	protected final BitOrder order;
+	protected final int rootBits;
+	protected final int maxLength;
+	protected final int[] table;
+	
+	/**
+	 * Creates a HuffmanDecoder with the default root table size.
+	 * @param lengths the code length of each symbol, with 0 for symbols which don't appear
+	 */
+	public HuffmanDecoder(int[] lengths, BitOrder order) throws IOException {
+		this(lengths, 0, lengths.length, order, DEFAULT_ROOT_BITS);
+	}
+	
+	/**
+	 * Creates a HuffmanDecoder for the symbols {@code 0} to {@code count-1}, whose code lengths are found in
+	 * {@code lengths} starting at {@code start}.
+	 * @param rootBits the number of bits resolved by the root table. Larger root tables take more memory to build,
+	 *                 but send fewer codes on to a subtable.
+	 * @throws IOException if the code lengths are too long or describe more codes than can exist
+	 */
+	public HuffmanDecoder(int[] lengths, int start, int count, BitOrder order, int rootBits) throws IOException {
+		if (start<0 || count<0 || start+count>lengths.length) throw new ArrayIndexOutOfBoundsException();
+		if (rootBits<1 || rootBits>MAX_CODE_LENGTH) throw new IllegalArgumentException("Invalid root table size: "+rootBits);
+		this.order = order;
+		
+		//Count how many codes there are of each length, and make sure they can all fit
+		int[] lengthCounts = new int[MAX_CODE_LENGTH+1];
+		int longest = 0;
+		for(int i=0; i<count; i++) {
+			int length = lengths[start+i];
+			if (length<0 || length>MAX_CODE_LENGTH) throw new IOException("Invalid Huffman code length: "+length);
+			lengthCounts[length]++;
+			longest = Math.max(longest, length);
+		}
+		lengthCounts[0] = 0;
+		long left = 1;
+		for(int length=1; length<=MAX_CODE_LENGTH; length++) {
+			left = (left << 1) - lengthCounts[length];
+			if (left<0) throw new IOException("Oversubscribed Huffman code");
+		}
+		
+		this.maxLength = longest;
+		this.rootBits = Math.max(1, Math.min(rootBits, longest));
+		
+		//Assign canonical codes
+		int[] nextCode = new int[MAX_CODE_LENGTH+2];
+		for(int length=1; length<=MAX_CODE_LENGTH; length++) {
+			nextCode[length+1] = (nextCode[length] + lengthCounts[length]) << 1;
+		}
+		int[] codes = new int[count];
+		for(int i=0; i<count; i++) {
+			int length = lengths[start+i];
+			if (length!=0) codes[i] = nextCode[length]++;
+		}
+		
+		//Work out how deep each subtable needs to be: deep enough for the longest code sharing its root prefix
+		int rootSize = 1 << this.rootBits;
+		int[] subtableBits = new int[rootSize];
+		for(int i=0; i<count; i++) {
+			int length = lengths[start+i];
+			if (length<=this.rootBits) continue;
+			int prefix = rootIndex(codes[i], length);
+			subtableBits[prefix] = Math.max(subtableBits[prefix], length-this.rootBits);
+		}
+		int tableSize = rootSize;
+		for(int bits : subtableBits) {
+			if (bits>0) tableSize += 1 << bits;
+		}
+		
+		int[] table = new int[tableSize];
+		int nextSubtable = rootSize;
+		for(int prefix=0; prefix<rootSize; prefix++) {
+			if (subtableBits[prefix]==0) continue;
+			table[prefix] = (nextSubtable << 8) | LINK | subtableBits[prefix];
+			nextSubtable += 1 << subtableBits[prefix];
+		}
+		
+		for(int symbol=0; symbol<count; symbol++) {
+			int length = lengths[start+symbol];
+			if (length==0) continue;
+			int entry = (symbol << 8) | length;
+			int code = codes[symbol];
+			
+			if (length<=this.rootBits) {
+				fill(table, 0, this.rootBits, code, length, entry);
+			} else {
+				int link = table[rootIndex(code, length)];
+				int extra = length-this.rootBits;
+				fill(table, link >>> 8, link & LENGTH_MASK, code & ((1 << extra) - 1), extra, entry);
+			}
+		}
+		this.table = table;
+	}
+	
+	/**
+	 * Gets the root table slot for a code longer than the root table can resolve.
+	 */
+	private int rootIndex(int code, int length) {
+		int prefix = code >>> (length-rootBits);
+		return (order==BitOrder.MSB_FIRST) ? prefix : reverse(prefix, rootBits);
+	}
+	
+	/**
+	 * Fills every slot of a table whose index starts with the given code. The table is indexed by the next
+	 * {@code tableBits} bits of the stream, so in an MSB_FIRST stream the code is the top of the index, and in an
+	 * LSB_FIRST stream the bit-reversed code is the bottom of the index.
+	 */
+	private void fill(int[] table, int base, int tableBits, int code, int length, int entry) {
+		int free = tableBits-length;
+		if (order==BitOrder.MSB_FIRST) {
+			int first = base + (code << free);
+			Arrays.fill(table, first, first + (1 << free), entry);
+		} else {
+			int reversed = reverse(code, length);
+			for(int i=0; i < 1 << free; i++) {
+				table[base + (reversed | (i << length))] = entry;
+			}
+		}
+	}
+	
+	private static int reverse(int value, int bits) {
+		return Integer.reverse(value) >>> (32-bits);
+	}
+	
+	public BitOrder getBitOrder() {
+		return order;
+	}
+	
+	/**
+	 * Gets the length of the longest code, in bits.
+	 */
+	public int getMaxLength() {
+		return maxLength;
+	}
+	
+	/**
+	 * Gets the number of bits resolved by the root table.
+	 */
+	public int getRootBits() {
+		return rootBits;
+	}
+	
+	/**
+	 * Reads one code from the stream and returns its symbol.
+	 * @throws IOException if the stream holds a code which isn't part of this Huffman code, or ends partway through a
+	 *                     code
+	 */
+	public int decode(BitInputStream in) throws IOException {
+		if (in.getBitOrder()!=order) throw new IllegalArgumentException("Stream bit order doesn't match this decoder");
+		if (maxLength==0) throw new IOException("Invalid Huffman code");
+		
+		int bits = in.peekBits(maxLength);
+		int entry;
+		if (order==BitOrder.MSB_FIRST) {
+			entry = table[bits >>> (maxLength-rootBits)];
+			if ((entry & LINK)!=0) {
+				int subBits = entry & LENGTH_MASK;
+				int index = (bits >>> (maxLength-rootBits-subBits)) & ((1 << subBits) - 1);
+				entry = table[(entry >>> 8) + index];
+			}
+		} else {
+			entry = table[bits & ((1 << rootBits) - 1)];
+			if ((entry & LINK)!=0) {
+				int subBits = entry & LENGTH_MASK;
+				int index = (bits >>> rootBits) & ((1 << subBits) - 1);
+				entry = table[(entry >>> 8) + index];
+			}
+		}
+		
+		if (entry==0) throw new IOException("Invalid Huffman code");
+		in.skipBits(entry & LENGTH_MASK);
+		return entry >>> 8;
+	}
+	
+	/**
+	 * Reads {@code len} codes from the stream, storing their symbols into the destination array.
+	 * @throws IOException if the stream holds a code which isn't part of this Huffman code, or ends partway through a
+	 *                     code
+	 */
+	public void decodeSymbols(BitInputStream in, int[] destination, int start, int len) throws IOException {
+		if (start<0 || len<0 || start+len>destination.length) throw new ArrayIndexOutOfBoundsException();
+		for(int i=0; i<len; i++) {
+			destination[start+i] = decode(in);
+		}
+	}
+}
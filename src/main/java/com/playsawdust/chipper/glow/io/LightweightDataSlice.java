@@ -10,20 +10,69 @@
 package com.playsawdust.chipper.glow.io;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Optional;
 
+/**
+ * A window onto part of another DataSlice. Windows onto a LightweightDataSlice are flattened: they point straight at
+ * the slice underneath it, with their offsets added together, so reads cost the same however deeply slices are nested.
+ *
+ * <p>A window can be moved onto a different range with {@link #retarget(DataSlice, long, long)}, so a loop which
+ * visits many ranges one at a time can reuse a single window instead of creating one for each.
+ */
 public class LightweightDataSlice implements DataSlice {
-	protected final DataSlice underlying;
-	protected final long baseOffset;
-	protected final long length;
+	protected DataSlice underlying;
+	protected long baseOffset;
+	protected long length;
 	protected long pointer = 0L;
 	protected ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
 	
+	/**
+	 * Creates a window of {@code length} bytes onto the underlying slice, starting at {@code offset}. If the
+	 * underlying slice is a flattenable LightweightDataSlice, the window must fit inside it.
+	 */
 	public LightweightDataSlice(DataSlice underlying, long offset, long length) {
+		this.byteOrder = underlying.getByteOrder();
+		if (underlying instanceof LightweightDataSlice && ((LightweightDataSlice) underlying).isFlattenable()) {
+			LightweightDataSlice parent = (LightweightDataSlice) underlying;
+			if (offset<0 || length<0 || offset+length>parent.length) throw new ArrayIndexOutOfBoundsException();
+			underlying = parent.underlying;
+			offset += parent.baseOffset;
+		}
 		this.underlying = underlying;
 		this.baseOffset = offset;
 		this.length = length;
-		this.byteOrder = underlying.getByteOrder();
+	}
+	
+	/**
+	 * Moves this window, in place, onto {@code length} bytes of the specified slice starting at {@code offset}. The
+	 * read pointer goes back to zero, and the ByteOrder is taken from the slice, just as if this window had been newly
+	 * created. Anything still holding this window sees the new range from then on.
+	 * @return this window
+	 */
+	public LightweightDataSlice retarget(DataSlice underlying, long offset, long length) throws IOException {
+		if (offset<0 || length<0 || offset+length>underlying.length()) throw new ArrayIndexOutOfBoundsException();
+		ByteOrder order = underlying.getByteOrder();
+		if (underlying instanceof LightweightDataSlice && ((LightweightDataSlice) underlying).isFlattenable()) {
+			LightweightDataSlice parent = (LightweightDataSlice) underlying;
+			offset += parent.baseOffset;
+			underlying = parent.underlying;
+		}
+		this.underlying = underlying;
+		this.baseOffset = offset;
+		this.length = length;
+		this.pointer = 0L;
+		this.byteOrder = order;
+		return this;
+	}
+	
+	/**
+	 * Returns true if windows onto this slice may skip it and read straight from the slice underneath it. Subclasses
+	 * which change the bytes they pass on, or which need to see every read, should return false.
+	 */
+	public boolean isFlattenable() {
+		return true;
 	}
 
 	@Override
@@ -34,15 +83,22 @@ public class LightweightDataSlice implements DataSlice {
 
 	@Override
 	public int read() throws IOException {
-		int result = underlying.read(pointer);
+		int result = read(pointer);
 		seek(pointer+1);
 		return result;
 	}
 	
 	@Override
 	public int read(long offset) throws IOException {
+		if (offset<0 || offset>=length) throw new ArrayIndexOutOfBoundsException();
 		return underlying.read(baseOffset + offset);
 	}
+	
+	@Override
+	public void read(long offset, byte[] destination, int start, int len) throws IOException {
+		if (offset<0 || len<0 || offset+len>length) throw new ArrayIndexOutOfBoundsException();
+		underlying.read(baseOffset + offset, destination, start, len);
+	}
 
 	@Override
 	public long position() {
@@ -61,6 +117,45 @@ public class LightweightDataSlice implements DataSlice {
 		return result;
 	}
 
+	@Override
+	public void read(long offset, ByteBuffer destination) throws IOException {
+		if (offset<0 || offset+destination.remaining()>length) throw new ArrayIndexOutOfBoundsException();
+		underlying.read(baseOffset + offset, destination);
+	}
+	
+	@Override
+	public Optional<ByteBuffer> tryAsByteBuffer(long offset, long length) throws IOException {
+		if (offset<0 || length<0 || offset+length>this.length) throw new ArrayIndexOutOfBoundsException();
+		return underlying.tryAsByteBuffer(baseOffset + offset, length).map(it -> it.order(byteOrder));
+	}
+	
+	/**
+	 * Passes the hint on to the underlying slice, since that's where caching and read-ahead happen.
+	 */
+	@Override
+	public void setAccessHint(AccessHint hint) {
+		underlying.setAccessHint(hint);
+	}
+	
+	@Override
+	public AccessHint getAccessHint() {
+		return underlying.getAccessHint();
+	}
+	
+	@Override
+	public void prefetch(long offset, long length) throws IOException {
+		if (offset<0 || length<=0 || offset>=this.length) return;
+		underlying.prefetch(baseOffset + offset, Math.min(length, this.length-offset));
+	}
+	
+	@Override
+	public DataSlice duplicate() {
+		LightweightDataSlice result = new LightweightDataSlice(underlying, baseOffset, length);
+		result.pointer = pointer;
+		result.byteOrder = byteOrder;
+		return result;
+	}
+	
 	@Override
 	public ByteOrder getByteOrder() {
 		return byteOrder;
@@ -0,0 +1,322 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * A DataSlice backed by a memory-mapped file. A single MappedByteBuffer can't address more than 2GiB, so the file is
+ * mapped as a series of 1GiB segments. Each segment overlaps the next by a few bytes, so that any primitive read that
+ * starts inside a segment can be served entirely from that segment.
+ *
+ * <p>Sub-slices are views onto the same mapping rather than wrappers, so reads from a slice cost the same no matter
+ * how it was obtained.
+ */
+public class MappedDataSlice implements DataSlice {
+	protected static final int SEGMENT_SHIFT = 30;
+	protected static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+	protected static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+	/** Number of bytes each segment extends past the start of the next one */
+	protected static final int SEGMENT_OVERLAP = 8;
+	
+	/** Stride used to touch pages during prefetch. Pages are at least this big on every platform we care about. */
+	private static final int PAGE_SIZE = 4096;
+	/** Written by prefetch so that the JIT can't discard the page touches as dead code */
+	private static volatile byte prefetchSink;
+	
+	protected final FileChannel channel;
+	protected final MappedByteBuffer[] segments;
+	protected final long baseOffset;
+	protected final long length;
+	protected long pointer = 0L;
+	protected ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+	protected AccessHint accessHint = AccessHint.NORMAL;
+	
+	public MappedDataSlice(FileChannel channel) throws IOException {
+		this(channel, map(channel), 0L, channel.size());
+	}
+	
+	protected MappedDataSlice(FileChannel channel, MappedByteBuffer[] segments, long offset, long length) {
+		this.channel = channel;
+		this.segments = segments;
+		this.baseOffset = offset;
+		this.length = length;
+	}
+	
+	/**
+	 * Opens the specified file read-only and maps its entire contents.
+	 */
+	public static MappedDataSlice open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			return new MappedDataSlice(channel);
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+	
+	private static MappedByteBuffer[] map(FileChannel channel) throws IOException {
+		long size = channel.size();
+		int count = (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+		MappedByteBuffer[] result = new MappedByteBuffer[count];
+		for(int i=0; i<count; i++) {
+			long start = ((long) i) << SEGMENT_SHIFT;
+			long segmentLength = Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, size - start);
+			result[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, segmentLength);
+		}
+		return result;
+	}
+	
+	@Override
+	public void seek(long offset) {
+		if (offset<0 || offset>length) throw new ArrayIndexOutOfBoundsException();
+		pointer = offset;
+	}
+	
+	@Override
+	public int read() {
+		int result = read(pointer);
+		pointer++;
+		return result;
+	}
+	
+	@Override
+	public int read(long offset) {
+		if (offset<0 || offset>=length) throw new ArrayIndexOutOfBoundsException();
+		long absolute = baseOffset + offset;
+		return segments[(int) (absolute >>> SEGMENT_SHIFT)].get((int) (absolute & SEGMENT_MASK)) & 0xFF;
+	}
+	
+	@Override
+	public short readI16s() {
+		checkAvailable(2);
+		long absolute = baseOffset + pointer;
+		short result = segments[(int) (absolute >>> SEGMENT_SHIFT)].getShort((int) (absolute & SEGMENT_MASK));
+		pointer += 2;
+		return (byteOrder==ByteOrder.BIG_ENDIAN) ? result : Short.reverseBytes(result);
+	}
+	
+	@Override
+	public int readI16u() {
+		return readI16s() & 0xFFFF;
+	}
+	
+	@Override
+	public int readI32s() {
+		checkAvailable(4);
+		long absolute = baseOffset + pointer;
+		int result = segments[(int) (absolute >>> SEGMENT_SHIFT)].getInt((int) (absolute & SEGMENT_MASK));
+		pointer += 4;
+		return (byteOrder==ByteOrder.BIG_ENDIAN) ? result : Integer.reverseBytes(result);
+	}
+	
+	@Override
+	public long readI64s() {
+		checkAvailable(8);
+		long absolute = baseOffset + pointer;
+		long result = segments[(int) (absolute >>> SEGMENT_SHIFT)].getLong((int) (absolute & SEGMENT_MASK));
+		pointer += 8;
+		return (byteOrder==ByteOrder.BIG_ENDIAN) ? result : Long.reverseBytes(result);
+	}
+	
+	@Override
+	public void read(long offset, byte[] destination, int start, int len) {
+		if (start<0 || len<0 || start+len>destination.length) throw new ArrayIndexOutOfBoundsException();
+		if (offset<0 || offset+len>length) throw new ArrayIndexOutOfBoundsException();
+		long absolute = baseOffset + offset;
+		int copied = 0;
+		while(copied<len) {
+			int segmentOffset = (int) (absolute & SEGMENT_MASK);
+			int chunk = (int) Math.min(len-copied, SEGMENT_SIZE - segmentOffset);
+			segments[(int) (absolute >>> SEGMENT_SHIFT)].get(segmentOffset, destination, start+copied, chunk);
+			copied += chunk;
+			absolute += chunk;
+		}
+	}
+	
+	@Override
+	public void copy(byte[] destination, int start, int len) {
+		read(pointer, destination, start, len);
+		pointer += len;
+	}
+	
+	@Override
+	public void readI16s(short[] destination, int start, int len) throws IOException {
+		ByteBuffer view = view(len, Short.BYTES);
+		if (view!=null) {
+			view.asShortBuffer().get(destination, start, len);
+		} else {
+			DataSlice.super.readI16s(destination, start, len);
+		}
+	}
+	
+	@Override
+	public void readI32s(int[] destination, int start, int len) throws IOException {
+		ByteBuffer view = view(len, Integer.BYTES);
+		if (view!=null) {
+			view.asIntBuffer().get(destination, start, len);
+		} else {
+			DataSlice.super.readI32s(destination, start, len);
+		}
+	}
+	
+	@Override
+	public void readI64s(long[] destination, int start, int len) throws IOException {
+		ByteBuffer view = view(len, Long.BYTES);
+		if (view!=null) {
+			view.asLongBuffer().get(destination, start, len);
+		} else {
+			DataSlice.super.readI64s(destination, start, len);
+		}
+	}
+	
+	@Override
+	public void readF32s(float[] destination, int start, int len) throws IOException {
+		ByteBuffer view = view(len, Float.BYTES);
+		if (view!=null) {
+			view.asFloatBuffer().get(destination, start, len);
+		} else {
+			DataSlice.super.readF32s(destination, start, len);
+		}
+	}
+	
+	@Override
+	public void readF64s(double[] destination, int start, int len) throws IOException {
+		ByteBuffer view = view(len, Double.BYTES);
+		if (view!=null) {
+			view.asDoubleBuffer().get(destination, start, len);
+		} else {
+			DataSlice.super.readF64s(destination, start, len);
+		}
+	}
+	
+	/**
+	 * If the next {@code elements} values of the given size all lie within a single segment, advances the read pointer
+	 * past them and returns a ByteBuffer, in this slice's ByteOrder, covering them. Otherwise returns null and leaves
+	 * the read pointer alone.
+	 */
+	private ByteBuffer view(int elements, int elementSize) {
+		if (elements<0) throw new ArrayIndexOutOfBoundsException();
+		long bytes = (long) elements * elementSize;
+		checkAvailable(bytes);
+		long absolute = baseOffset + pointer;
+		int segmentOffset = (int) (absolute & SEGMENT_MASK);
+		if (segmentOffset+bytes > SEGMENT_SIZE + SEGMENT_OVERLAP) return null;
+		
+		MappedByteBuffer segment = segments[(int) (absolute >>> SEGMENT_SHIFT)];
+		pointer += bytes;
+		return segment.slice(segmentOffset, (int) bytes).order(byteOrder);
+	}
+	
+	private void checkAvailable(long bytes) {
+		if (pointer+bytes>length) throw new ArrayIndexOutOfBoundsException();
+	}
+	
+	@Override
+	public long position() {
+		return pointer;
+	}
+	
+	@Override
+	public long length() {
+		return length;
+	}
+	
+	@Override
+	public DataSlice slice(long offset, long length) {
+		if (offset<0 || offset>this.length) throw new ArrayIndexOutOfBoundsException();
+		if (length<0 || offset+length>this.length) throw new ArrayIndexOutOfBoundsException();
+		
+		MappedDataSlice result = new MappedDataSlice(channel, segments, baseOffset+offset, length);
+		result.setByteOrder(byteOrder);
+		result.setAccessHint(accessHint);
+		this.pointer += length;
+		return result;
+	}
+	
+	/**
+	 * Returns a view of the mapping if the range lies within a single segment. Ranges which cross from one 1GiB segment
+	 * into the next can't be represented by one ByteBuffer, and return an empty Optional.
+	 */
+	@Override
+	public Optional<ByteBuffer> tryAsByteBuffer(long offset, long length) {
+		if (offset<0 || length<0 || offset+length>this.length) throw new ArrayIndexOutOfBoundsException();
+		long absolute = baseOffset + offset;
+		int segmentOffset = (int) (absolute & SEGMENT_MASK);
+		if (segmentOffset+length > SEGMENT_SIZE + SEGMENT_OVERLAP) return Optional.empty();
+		
+		MappedByteBuffer segment = segments[(int) (absolute >>> SEGMENT_SHIFT)];
+		return Optional.of(segment.slice(segmentOffset, (int) length).asReadOnlyBuffer().order(byteOrder));
+	}
+	
+	@Override
+	public DataSlice duplicate() {
+		MappedDataSlice result = new MappedDataSlice(channel, segments, baseOffset, length);
+		result.pointer = pointer;
+		result.byteOrder = byteOrder;
+		result.accessHint = accessHint;
+		return result;
+	}
+	
+	@Override
+	public ByteOrder getByteOrder() {
+		return byteOrder;
+	}
+	
+	@Override
+	public void setByteOrder(ByteOrder order) {
+		this.byteOrder = order;
+	}
+	
+	/**
+	 * Records the hint. The JVM gives us no way to pass madvise flags through to the OS, so SEQUENTIAL and RANDOM
+	 * currently have no effect of their own; use {@link #prefetch(long, long)} to fault pages in ahead of time.
+	 */
+	@Override
+	public void setAccessHint(AccessHint hint) {
+		this.accessHint = hint;
+	}
+	
+	@Override
+	public AccessHint getAccessHint() {
+		return accessHint;
+	}
+	
+	/**
+	 * Faults in every page in the specified range by touching one byte per page, which is the closest we can get to
+	 * MADV_WILLNEED from the JVM. This blocks until the pages are resident.
+	 */
+	@Override
+	public void prefetch(long offset, long length) {
+		if (offset<0 || length<=0 || offset>=this.length) return;
+		long end = Math.min(this.length, offset+length);
+		
+		//Touch the first byte of each page in the range, plus the last byte so a partial trailing page isn't missed
+		byte sink = 0;
+		for(long i=offset; i<end; i+=PAGE_SIZE) {
+			sink ^= read(i);
+		}
+		sink ^= read(end-1);
+		prefetchSink = sink;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
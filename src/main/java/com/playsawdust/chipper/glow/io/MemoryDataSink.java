@@ -0,0 +1,285 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A DataSink which grows in memory. Data is kept in fixed-size pages rather than one big array, so growing never
+ * copies what's already been written, and the total size can go past 2GiB.
+ */
+public class MemoryDataSink implements DataSink {
+	private static final VarHandle SHORT_BE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle SHORT_LE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	
+	public static final int DEFAULT_PAGE_SHIFT = 16;
+	
+	protected final int pageShift;
+	protected final int pageSize;
+	protected final int pageMask;
+	protected byte[][] pages = new byte[8][];
+	protected long length = 0L;
+	protected long pointer = 0L;
+	protected ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+	
+	/**
+	 * Creates a MemoryDataSink with 64KiB pages.
+	 */
+	public MemoryDataSink() {
+		this(DEFAULT_PAGE_SHIFT);
+	}
+	
+	/**
+	 * Creates a MemoryDataSink whose pages are {@code 1 << pageShift} bytes long. Bigger pages mean fewer allocations
+	 * for large outputs, at the cost of more wasted space in the last page.
+	 */
+	public MemoryDataSink(int pageShift) {
+		if (pageShift<4 || pageShift>30) throw new IllegalArgumentException("Page size must be between 16 bytes and 1GiB");
+		this.pageShift = pageShift;
+		this.pageSize = 1 << pageShift;
+		this.pageMask = pageSize-1;
+	}
+	
+	@Override
+	public void seek(long offset) {
+		if (offset<0) throw new ArrayIndexOutOfBoundsException();
+		pointer = offset;
+	}
+	
+	@Override
+	public long position() {
+		return pointer;
+	}
+	
+	@Override
+	public long length() {
+		return length;
+	}
+	
+	@Override
+	public ByteOrder getByteOrder() {
+		return byteOrder;
+	}
+	
+	@Override
+	public void setByteOrder(ByteOrder order) {
+		this.byteOrder = order;
+	}
+	
+	/**
+	 * Gets the page which holds the specified offset, allocating it (and the page table) if needed, and records that
+	 * the sink now extends to {@code end}.
+	 */
+	private byte[] page(long offset, long end) {
+		int index = (int) (offset >>> pageShift);
+		if (index>=pages.length) {
+			pages = Arrays.copyOf(pages, Math.max(pages.length*2, index+1));
+		}
+		byte[] page = pages[index];
+		if (page==null) {
+			page = new byte[pageSize];
+			pages[index] = page;
+		}
+		if (end>length) length = end;
+		return page;
+	}
+	
+	@Override
+	public void write(long offset, byte[] source, int start, int len) {
+		if (offset<0 || len<0 || start<0 || start+len>source.length) throw new ArrayIndexOutOfBoundsException();
+		while(len>0) {
+			int pageOffset = (int) (offset & pageMask);
+			int count = Math.min(len, pageSize-pageOffset);
+			System.arraycopy(source, start, page(offset, offset+count), pageOffset, count);
+			offset += count;
+			start += count;
+			len -= count;
+		}
+	}
+	
+	@Override
+	public void write(long offset, ByteBuffer source) {
+		if (offset<0) throw new ArrayIndexOutOfBoundsException();
+		while(source.hasRemaining()) {
+			int pageOffset = (int) (offset & pageMask);
+			int count = Math.min(source.remaining(), pageSize-pageOffset);
+			source.get(page(offset, offset+count), pageOffset, count);
+			offset += count;
+		}
+	}
+	
+	@Override
+	public void writeI8(long offset, int value) {
+		if (offset<0) throw new ArrayIndexOutOfBoundsException();
+		page(offset, offset+1)[(int) (offset & pageMask)] = (byte) value;
+	}
+	
+	@Override
+	public void write(int value) {
+		writeI8(pointer, value);
+		pointer++;
+	}
+	
+	@Override
+	public void writeI16(long offset, short value) {
+		int pageOffset = (int) (offset & pageMask);
+		if (offset<0 || pageOffset+Short.BYTES>pageSize) {
+			writeSplit(offset, value, Short.BYTES);
+		} else if (byteOrder==ByteOrder.BIG_ENDIAN) {
+			SHORT_BE.set(page(offset, offset+Short.BYTES), pageOffset, value);
+		} else {
+			SHORT_LE.set(page(offset, offset+Short.BYTES), pageOffset, value);
+		}
+	}
+	
+	@Override
+	public void writeI32(long offset, int value) {
+		int pageOffset = (int) (offset & pageMask);
+		if (offset<0 || pageOffset+Integer.BYTES>pageSize) {
+			writeSplit(offset, value, Integer.BYTES);
+		} else if (byteOrder==ByteOrder.BIG_ENDIAN) {
+			INT_BE.set(page(offset, offset+Integer.BYTES), pageOffset, value);
+		} else {
+			INT_LE.set(page(offset, offset+Integer.BYTES), pageOffset, value);
+		}
+	}
+	
+	@Override
+	public void writeI64(long offset, long value) {
+		int pageOffset = (int) (offset & pageMask);
+		if (offset<0 || pageOffset+Long.BYTES>pageSize) {
+			writeSplit(offset, value, Long.BYTES);
+		} else if (byteOrder==ByteOrder.BIG_ENDIAN) {
+			LONG_BE.set(page(offset, offset+Long.BYTES), pageOffset, value);
+		} else {
+			LONG_LE.set(page(offset, offset+Long.BYTES), pageOffset, value);
+		}
+	}
+	
+	/**
+	 * Writes a value one byte at a time, for values which straddle two pages.
+	 */
+	private void writeSplit(long offset, long value, int bytes) {
+		for(int i=0; i<bytes; i++) {
+			int shift = (byteOrder==ByteOrder.BIG_ENDIAN) ? (bytes-1-i)*8 : i*8;
+			writeI8(offset+i, (int) (value >>> shift));
+		}
+	}
+	
+	@Override
+	public void writeI16(short value) {
+		writeI16(pointer, value);
+		pointer += Short.BYTES;
+	}
+	
+	@Override
+	public void writeI32(int value) {
+		writeI32(pointer, value);
+		pointer += Integer.BYTES;
+	}
+	
+	@Override
+	public void writeI64(long value) {
+		writeI64(pointer, value);
+		pointer += Long.BYTES;
+	}
+	
+	/**
+	 * Copies bytes which have been written to this sink back out into the destination array. Bytes in gaps which were
+	 * skipped over, and never written, read as zero.
+	 */
+	public void read(long offset, byte[] destination, int start, int len) {
+		if (offset<0 || len<0 || offset+len>length) throw new ArrayIndexOutOfBoundsException();
+		while(len>0) {
+			int pageOffset = (int) (offset & pageMask);
+			int count = Math.min(len, pageSize-pageOffset);
+			byte[] page = pages[(int) (offset >>> pageShift)];
+			if (page==null) {
+				Arrays.fill(destination, start, start+count, (byte) 0);
+			} else {
+				System.arraycopy(page, pageOffset, destination, start, count);
+			}
+			offset += count;
+			start += count;
+			len -= count;
+		}
+	}
+	
+	/**
+	 * Copies everything written so far into a new array.
+	 * @throws IOException if there's more data than an array can hold
+	 */
+	public byte[] toByteArray() throws IOException {
+		if (length>Integer.MAX_VALUE-8) throw new IOException("MemoryDataSink of "+length+" bytes is too large for an array");
+		byte[] result = new byte[(int) length];
+		read(0L, result, 0, result.length);
+		return result;
+	}
+	
+	/**
+	 * Writes everything written so far out to the specified OutputStream, one page at a time.
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		byte[] zeroes = null;
+		for(long offset=0; offset<length; offset+=pageSize) {
+			int count = (int) Math.min(pageSize, length-offset);
+			byte[] page = pages[(int) (offset >>> pageShift)];
+			if (page==null) {
+				if (zeroes==null) zeroes = new byte[pageSize];
+				page = zeroes;
+			}
+			out.write(page, 0, count);
+		}
+	}
+	
+	/**
+	 * Creates a DataSlice over everything written so far, without copying it. Pages are shared, so overwriting bytes
+	 * which had already been written changes what the slice reads, but the slice never grows to include data written
+	 * past its end.
+	 */
+	public DataSlice toDataSlice() {
+		int pageCount = (int) ((length + pageSize - 1) >>> pageShift);
+		byte[][] result = Arrays.copyOf(pages, Math.max(pageCount, 1));
+		byte[] zeroes = null;
+		for(int i=0; i<pageCount; i++) {
+			if (result[i]==null) {
+				//Gaps which were skipped over and never written read as zero
+				if (zeroes==null) zeroes = new byte[pageSize];
+				result[i] = zeroes;
+			}
+		}
+		return new SegmentedDataSlice(result, pageShift, length);
+	}
+	
+	/**
+	 * Throws away everything written so far, and moves the write pointer back to the start.
+	 */
+	public void clear() {
+		pages = new byte[8][];
+		length = 0L;
+		pointer = 0L;
+	}
+	
+	@Override
+	public void close() {
+		// Do Nothing
+	}
+	
+}
@@ -0,0 +1,100 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+
+/**
+ * A DataSink which feeds an OutputStream, and so can only be written front to back. Seeking forward is allowed, and
+ * the gap is filled with zeroes once something is written after it; writing anywhere before the end of what's already
+ * been written is an error.
+ */
+public class OutputStreamDataSink implements DataSink {
+	protected final OutputStream out;
+	/** The number of bytes which have gone to the stream so far */
+	protected long written = 0L;
+	protected long pointer = 0L;
+	protected ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+	
+	public OutputStreamDataSink(OutputStream out) {
+		this.out = out;
+	}
+	
+	@Override
+	public boolean isSeekable() {
+		return false;
+	}
+	
+	@Override
+	public void seek(long offset) {
+		if (offset<0) throw new ArrayIndexOutOfBoundsException();
+		pointer = offset;
+	}
+	
+	@Override
+	public long position() {
+		return pointer;
+	}
+	
+	@Override
+	public long length() {
+		return written;
+	}
+	
+	@Override
+	public ByteOrder getByteOrder() {
+		return byteOrder;
+	}
+	
+	@Override
+	public void setByteOrder(ByteOrder order) {
+		this.byteOrder = order;
+	}
+	
+	@Override
+	public void write(long offset, byte[] source, int start, int len) throws IOException {
+		if (offset<0 || len<0 || start<0 || start+len>source.length) throw new ArrayIndexOutOfBoundsException();
+		if (offset<written) throw new IOException("Can't write at offset "+offset+", "+written+" bytes have already been written");
+		while(written<offset) {
+			int count = (int) Math.min(offset-written, 8192);
+			out.write(new byte[count]);
+			written += count;
+		}
+		out.write(source, start, len);
+		written += len;
+	}
+	
+	@Override
+	public void write(int value) throws IOException {
+		if (pointer==written) {
+			out.write(value);
+			written++;
+			pointer++;
+		} else {
+			DataSink.super.write(value);
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+	
+	/**
+	 * Flushes and closes the underlying OutputStream.
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+	
+}
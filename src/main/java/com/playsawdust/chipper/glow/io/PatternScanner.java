@@ -0,0 +1,219 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Searches a DataSlice for the first occurrence of any of a set of byte patterns.
+ *
+ * <p>The slice is read in large blocks, straight out of its backing storage where {@link DataSlice#tryAsByteBuffer}
+ * allows it, and scanned eight bytes at a time for the first byte of each pattern using SWAR tricks on longs. Only
+ * positions which pass that test are compared against the full patterns, so scanning costs a few operations per eight
+ * bytes rather than a call per byte.
+ */
+public class PatternScanner {
+	private static final int BLOCK_SIZE = 64 * 1024;
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGHS = 0x8080808080808080L;
+	/** Past this many distinct first bytes, a lookup table beats testing each of them with SWAR */
+	private static final int MAX_SWAR_BYTES = 4;
+	
+	protected final byte[][] patterns;
+	protected final int maxLength;
+	/** The first byte of each pattern, repeated across a long, one long per distinct first byte */
+	protected final long[] broadcasts;
+	/** For each possible first byte, the indices of the patterns which start with it, or null if none do */
+	protected final int[][] byFirstByte = new int[256][];
+	
+	/**
+	 * Creates a PatternScanner which looks for any of the specified patterns. If several patterns match at the same
+	 * offset, the one which comes first in this list wins.
+	 */
+	public PatternScanner(byte[]... patterns) {
+		if (patterns.length==0) throw new IllegalArgumentException("No patterns to search for");
+		this.patterns = new byte[patterns.length][];
+		int maxLength = 0;
+		List<Long> broadcasts = new ArrayList<>();
+		for(int i=0; i<patterns.length; i++) {
+			if (patterns[i].length==0) throw new IllegalArgumentException("Patterns can't be empty");
+			this.patterns[i] = patterns[i].clone();
+			maxLength = Math.max(maxLength, patterns[i].length);
+			
+			int first = patterns[i][0] & 0xFF;
+			int[] existing = byFirstByte[first];
+			if (existing==null) {
+				byFirstByte[first] = new int[] { i };
+				broadcasts.add(first*ONES);
+			} else {
+				byFirstByte[first] = Arrays.copyOf(existing, existing.length+1);
+				byFirstByte[first][existing.length] = i;
+			}
+		}
+		this.maxLength = maxLength;
+		this.broadcasts = new long[broadcasts.size()];
+		for(int i=0; i<this.broadcasts.length; i++) this.broadcasts[i] = broadcasts.get(i);
+	}
+	
+	/**
+	 * Creates a PatternScanner for four-character tags, such as RIFF chunk tags. Tags shorter than four characters are
+	 * padded with spaces.
+	 */
+	public static PatternScanner forTags(String... tags) {
+		byte[][] patterns = new byte[tags.length][];
+		for(int i=0; i<tags.length; i++) patterns[i] = tagBytes(tags[i]);
+		return new PatternScanner(patterns);
+	}
+	
+	static byte[] tagBytes(String tag) {
+		if (tag.length()>4) throw new IllegalArgumentException("Tag '"+tag+"' is longer than four characters");
+		byte[] result = { ' ', ' ', ' ', ' ' };
+		for(int i=0; i<tag.length(); i++) {
+			char ch = tag.charAt(i);
+			if (ch>0xFF) throw new IllegalArgumentException("Tag '"+tag+"' isn't ASCII");
+			result[i] = (byte) ch;
+		}
+		return result;
+	}
+	
+	public int getPatternCount() {
+		return patterns.length;
+	}
+	
+	/**
+	 * Finds the first offset at or after {@code from} where any of the patterns begins.
+	 * @return the offset of the match, or -1 if there isn't one
+	 */
+	public long indexOf(DataSlice data, long from) throws IOException {
+		Match match = find(data, from);
+		return (match==null) ? -1L : match.getOffset();
+	}
+	
+	/**
+	 * Finds the first offset at or after {@code from} where any of the patterns begins, and which pattern it was.
+	 * @return the match, or null if there isn't one
+	 */
+	public Match find(DataSlice data, long from) throws IOException {
+		if (from<0) from = 0;
+		long length = data.length();
+		int blockSize = Math.max(BLOCK_SIZE, maxLength*2);
+		byte[] scratch = null;
+		
+		//Blocks overlap by maxLength-1 bytes, so a pattern which starts near the end of one block is found in the next
+		for(long blockStart=from; blockStart<length; blockStart+=blockSize-(maxLength-1)) {
+			int blockLength = (int) Math.min(blockSize, length-blockStart);
+			boolean last = blockStart+blockLength>=length;
+			
+			ByteBuffer block;
+			Optional<ByteBuffer> view = data.tryAsByteBuffer(blockStart, blockLength);
+			if (view.isPresent()) {
+				block = view.get().order(ByteOrder.LITTLE_ENDIAN);
+			} else {
+				if (scratch==null) scratch = new byte[blockSize];
+				data.read(blockStart, scratch, 0, blockLength);
+				block = ByteBuffer.wrap(scratch, 0, blockLength).order(ByteOrder.LITTLE_ENDIAN);
+			}
+			
+			//Matches which start past the overlap are left for the next block, unless there isn't one
+			int scanEnd = last ? blockLength : blockLength-(maxLength-1);
+			long found = scan(block, blockLength, scanEnd);
+			if (found>=0) return new Match(blockStart + (found >>> 32), (int) found, this);
+			if (last) break;
+		}
+		return null;
+	}
+	
+	/**
+	 * Scans for a match starting anywhere before {@code scanEnd}.
+	 * @return the position in the block of the match in the high 32 bits and the index of the pattern in the low 32
+	 *         bits, or -1 if there's no match
+	 */
+	private long scan(ByteBuffer block, int blockLength, int scanEnd) {
+		int i = 0;
+		if (broadcasts.length<=MAX_SWAR_BYTES) {
+			for(; i+Long.BYTES<=scanEnd; i+=Long.BYTES) {
+				long word = block.getLong(i);
+				long candidates = 0L;
+				for(long broadcast : broadcasts) {
+					//Sets the high bit of each byte which equals the first byte of a pattern. Bytes above a true match
+					//can be flagged too, but never bytes below one, so the lowest flag is always real.
+					long x = word ^ broadcast;
+					candidates |= (x - ONES) & ~x & HIGHS;
+				}
+				while(candidates!=0) {
+					int position = i + (Long.numberOfTrailingZeros(candidates) >>> 3);
+					long found = verify(block, blockLength, position);
+					if (found>=0) return found;
+					candidates &= candidates-1;
+				}
+			}
+		}
+		for(; i<scanEnd; i++) {
+			if (byFirstByte[block.get(i) & 0xFF]==null) continue;
+			long found = verify(block, blockLength, i);
+			if (found>=0) return found;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Checks each pattern which starts with the byte at {@code position}.
+	 */
+	private long verify(ByteBuffer block, int blockLength, int position) {
+		int[] candidates = byFirstByte[block.get(position) & 0xFF];
+		if (candidates==null) return -1;
+		outer:
+		for(int index : candidates) {
+			byte[] pattern = patterns[index];
+			if (position+pattern.length>blockLength) continue;
+			for(int j=1; j<pattern.length; j++) {
+				if (block.get(position+j)!=pattern[j]) continue outer;
+			}
+			return ((long) position << 32) | index;
+		}
+		return -1;
+	}
+	
+	/**
+	 * One place where a pattern was found.
+	 */
+	public static final class Match {
+		private final long offset;
+		private final int pattern;
+		private final PatternScanner scanner;
+		
+		private Match(long offset, int pattern, PatternScanner scanner) {
+			this.offset = offset;
+			this.pattern = pattern;
+			this.scanner = scanner;
+		}
+		
+		/** Gets the offset in the slice where the match begins */
+		public long getOffset() {
+			return offset;
+		}
+		
+		/** Gets the index of the pattern which matched, in the order the patterns were given */
+		public int getPatternIndex() {
+			return pattern;
+		}
+		
+		/** Gets a copy of the pattern which matched */
+		public byte[] getPattern() {
+			return scanner.patterns[pattern].clone();
+		}
+	}
+}
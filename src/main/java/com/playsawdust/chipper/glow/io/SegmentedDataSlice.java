@@ -0,0 +1,272 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Optional;
+
+/**
+ * A DataSlice over data held in memory as a series of equal-sized, power-of-two pages. Unlike ArrayDataSlice,
+ * offsets are longs all the way through, so the data can be far bigger than 2GiB.
+ * 
+ * <p>Every page but the last must be exactly {@code 1 << pageShift} bytes long. Pages are never copied, so changes
+ * to them can be seen through the slice.
+ */
+public class SegmentedDataSlice implements DataSlice {
+	private static final VarHandle SHORT_BE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle SHORT_LE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	
+	public static final int DEFAULT_PAGE_SHIFT = 20;
+	
+	protected final byte[][] pages;
+	protected final int pageShift;
+	protected final int pageSize;
+	protected final int pageMask;
+	protected final long baseOffset;
+	protected final long length;
+	protected long pointer = 0L;
+	protected ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+	
+	/**
+	 * Creates a SegmentedDataSlice over the first {@code length} bytes of the specified pages.
+	 * @param pages     the pages, each {@code 1 << pageShift} bytes long except for the last, which may be shorter
+	 * @param pageShift the base-2 logarithm of the page size
+	 */
+	public SegmentedDataSlice(byte[][] pages, int pageShift, long length) {
+		this(pages, pageShift, 0L, length);
+	}
+	
+	public SegmentedDataSlice(byte[][] pages, int pageShift, long offset, long length) {
+		if (pageShift<4 || pageShift>30) throw new IllegalArgumentException("Page size must be between 16 bytes and 1GiB");
+		if (offset<0 || length<0 || offset+length > (long) pages.length << pageShift) throw new ArrayIndexOutOfBoundsException();
+		this.pages = pages;
+		this.pageShift = pageShift;
+		this.pageSize = 1 << pageShift;
+		this.pageMask = pageSize-1;
+		this.baseOffset = offset;
+		this.length = length;
+	}
+	
+	/**
+	 * Copies {@code length} bytes of a DataSlice, starting at {@code offset}, into memory, in pages of 1MiB. This is
+	 * the way to keep data resident which is too big for ArrayDataSlice.
+	 */
+	public static SegmentedDataSlice copyOf(DataSlice source, long offset, long length) throws IOException {
+		return copyOf(source, offset, length, DEFAULT_PAGE_SHIFT);
+	}
+	
+	public static SegmentedDataSlice copyOf(DataSlice source, long offset, long length, int pageShift) throws IOException {
+		if (pageShift<4 || pageShift>30) throw new IllegalArgumentException("Page size must be between 16 bytes and 1GiB");
+		if (offset<0 || length<0) throw new ArrayIndexOutOfBoundsException();
+		long pageCount = (length + (1L << pageShift) - 1) >>> pageShift;
+		if (pageCount>Integer.MAX_VALUE-8) throw new IOException("Too many pages for "+length+" bytes");
+		
+		byte[][] pages = new byte[(int) pageCount][];
+		for(int i=0; i<pages.length; i++) {
+			long pageStart = (long) i << pageShift;
+			pages[i] = new byte[(int) Math.min(1L << pageShift, length-pageStart)];
+			source.read(offset+pageStart, pages[i], 0, pages[i].length);
+		}
+		SegmentedDataSlice result = new SegmentedDataSlice(pages, pageShift, length);
+		result.byteOrder = source.getByteOrder();
+		return result;
+	}
+	
+	@Override
+	public void seek(long offset) {
+		if (offset<0 || offset>length) throw new ArrayIndexOutOfBoundsException();
+		pointer = offset;
+	}
+	
+	@Override
+	public int read() {
+		int result = read(pointer);
+		pointer++;
+		return result;
+	}
+	
+	@Override
+	public int read(long offset) {
+		if (offset<0 || offset>=length) throw new ArrayIndexOutOfBoundsException();
+		long index = baseOffset+offset;
+		return pages[(int) (index >>> pageShift)][(int) (index & pageMask)] & 0xFF;
+	}
+	
+	@Override
+	public short readI16s() {
+		long index = advance(Short.BYTES);
+		int pageOffset = (int) (index & pageMask);
+		byte[] page = pages[(int) (index >>> pageShift)];
+		if (pageOffset+Short.BYTES>page.length) {
+			return (short) readSplit(index, Short.BYTES);
+		} else if (byteOrder==ByteOrder.BIG_ENDIAN) {
+			return (short) SHORT_BE.get(page, pageOffset);
+		} else {
+			return (short) SHORT_LE.get(page, pageOffset);
+		}
+	}
+	
+	@Override
+	public int readI16u() {
+		return readI16s() & 0xFFFF;
+	}
+	
+	@Override
+	public int readI32s() {
+		long index = advance(Integer.BYTES);
+		int pageOffset = (int) (index & pageMask);
+		byte[] page = pages[(int) (index >>> pageShift)];
+		if (pageOffset+Integer.BYTES>page.length) {
+			return (int) readSplit(index, Integer.BYTES);
+		} else if (byteOrder==ByteOrder.BIG_ENDIAN) {
+			return (int) INT_BE.get(page, pageOffset);
+		} else {
+			return (int) INT_LE.get(page, pageOffset);
+		}
+	}
+	
+	@Override
+	public long readI64s() {
+		long index = advance(Long.BYTES);
+		int pageOffset = (int) (index & pageMask);
+		byte[] page = pages[(int) (index >>> pageShift)];
+		if (pageOffset+Long.BYTES>page.length) {
+			return readSplit(index, Long.BYTES);
+		} else if (byteOrder==ByteOrder.BIG_ENDIAN) {
+			return (long) LONG_BE.get(page, pageOffset);
+		} else {
+			return (long) LONG_LE.get(page, pageOffset);
+		}
+	}
+	
+	/**
+	 * Advances the read pointer past a value of the given size, and returns the absolute index where the value begins.
+	 */
+	private long advance(int bytes) {
+		if (pointer+bytes>length) throw new ArrayIndexOutOfBoundsException();
+		long index = baseOffset+pointer;
+		pointer += bytes;
+		return index;
+	}
+	
+	/**
+	 * Reads a value one byte at a time, for values which straddle two pages.
+	 */
+	private long readSplit(long index, int bytes) {
+		long result = 0L;
+		for(int i=0; i<bytes; i++) {
+			long b = pages[(int) ((index+i) >>> pageShift)][(int) ((index+i) & pageMask)] & 0xFFL;
+			if (byteOrder==ByteOrder.BIG_ENDIAN) {
+				result = (result << 8) | b;
+			} else {
+				result |= b << (i*8);
+			}
+		}
+		return result;
+	}
+	
+	@Override
+	public void read(long offset, byte[] destination, int start, int len) {
+		if (offset<0 || len<0 || offset+len>length) throw new ArrayIndexOutOfBoundsException();
+		long index = baseOffset+offset;
+		while(len>0) {
+			int pageOffset = (int) (index & pageMask);
+			int count = Math.min(len, pageSize-pageOffset);
+			System.arraycopy(pages[(int) (index >>> pageShift)], pageOffset, destination, start, count);
+			index += count;
+			start += count;
+			len -= count;
+		}
+	}
+	
+	@Override
+	public void read(long offset, ByteBuffer destination) {
+		if (offset<0 || offset+destination.remaining()>length) throw new ArrayIndexOutOfBoundsException();
+		long index = baseOffset+offset;
+		while(destination.hasRemaining()) {
+			int pageOffset = (int) (index & pageMask);
+			int count = Math.min(destination.remaining(), pageSize-pageOffset);
+			destination.put(pages[(int) (index >>> pageShift)], pageOffset, count);
+			index += count;
+		}
+	}
+	
+	@Override
+	public void copy(byte[] destination, int start, int len) {
+		read(pointer, destination, start, len);
+		pointer += len;
+	}
+	
+	@Override
+	public long position() {
+		return pointer;
+	}
+	
+	@Override
+	public long length() {
+		return length;
+	}
+	
+	@Override
+	public DataSlice slice(long offset, long length) {
+		if (offset<0 || length<0 || offset+length>this.length) throw new ArrayIndexOutOfBoundsException();
+		SegmentedDataSlice result = new SegmentedDataSlice(pages, pageShift, baseOffset+offset, length);
+		result.byteOrder = byteOrder;
+		this.pointer += length;
+		return result;
+	}
+	
+	/**
+	 * Returns a view of the range if it falls inside a single page. Ranges which cross a page boundary have to be
+	 * copied.
+	 */
+	@Override
+	public Optional<ByteBuffer> tryAsByteBuffer(long offset, long length) {
+		if (offset<0 || length<0 || offset+length>this.length) throw new ArrayIndexOutOfBoundsException();
+		long index = baseOffset+offset;
+		int pageOffset = (int) (index & pageMask);
+		if (pageOffset+length>pageSize) return Optional.empty();
+		
+		ByteBuffer view = ByteBuffer.wrap(pages[(int) (index >>> pageShift)], pageOffset, (int) length).slice();
+		return Optional.of(view.asReadOnlyBuffer().order(byteOrder));
+	}
+	
+	@Override
+	public DataSlice duplicate() {
+		SegmentedDataSlice result = new SegmentedDataSlice(pages, pageShift, baseOffset, length);
+		result.pointer = pointer;
+		result.byteOrder = byteOrder;
+		return result;
+	}
+	
+	@Override
+	public ByteOrder getByteOrder() {
+		return byteOrder;
+	}
+	
+	@Override
+	public void setByteOrder(ByteOrder order) {
+		this.byteOrder = order;
+	}
+	
+	@Override
+	public void close() {
+		// Do Nothing
+	}
+	
+}
@@ -0,0 +1,197 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * A streaming implementation of the 64-bit xxHash function. It's a fast, well-distributed, non-cryptographic hash,
+ * suitable for spotting accidental corruption, but not deliberate tampering.
+ *
+ * <p>Although this implements {@link Checksum}, {@link #getValue()} returns the full 64-bit hash. Input is consumed
+ * in 32-byte stripes; anything left over is held until more arrives or the hash is taken, so bytes can be fed in
+ * any size of pieces and still produce the same result.
+ */
+public class XXHash64 implements Checksum {
+	private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME3 = 0x165667B19E3779F9L;
+	private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME5 = 0x27D4EB2F165667C5L;
+	
+	protected final long seed;
+	protected long v1;
+	protected long v2;
+	protected long v3;
+	protected long v4;
+	protected long totalLength;
+	/** Input which didn't fill a whole stripe yet */
+	protected final byte[] pending = new byte[32];
+	protected int pendingLength;
+	
+	public XXHash64() {
+		this(0L);
+	}
+	
+	public XXHash64(long seed) {
+		this.seed = seed;
+		reset();
+	}
+	
+	@Override
+	public void reset() {
+		v1 = seed + PRIME1 + PRIME2;
+		v2 = seed + PRIME2;
+		v3 = seed;
+		v4 = seed - PRIME1;
+		totalLength = 0L;
+		pendingLength = 0;
+	}
+	
+	@Override
+	public void update(int b) {
+		pending[pendingLength++] = (byte) b;
+		totalLength++;
+		if (pendingLength==32) {
+			stripe(pending, 0);
+			pendingLength = 0;
+		}
+	}
+	
+	@Override
+	public void update(byte[] b, int off, int len) {
+		if (off<0 || len<0 || off+len>b.length) throw new ArrayIndexOutOfBoundsException();
+		totalLength += len;
+		
+		if (pendingLength>0) {
+			int count = Math.min(len, 32-pendingLength);
+			System.arraycopy(b, off, pending, pendingLength, count);
+			pendingLength += count;
+			off += count;
+			len -= count;
+			if (pendingLength<32) return;
+			stripe(pending, 0);
+			pendingLength = 0;
+		}
+		
+		int end = off + len;
+		while(end-off>=32) {
+			stripe(b, off);
+			off += 32;
+		}
+		System.arraycopy(b, off, pending, 0, end-off);
+		pendingLength = end-off;
+	}
+	
+	/**
+	 * Updates the hash with the remaining bytes of the buffer. Direct buffers, such as memory-mapped files, are read
+	 * in place eight bytes at a time rather than being copied out first.
+	 */
+	@Override
+	public void update(ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			update(buffer.array(), buffer.arrayOffset()+buffer.position(), buffer.remaining());
+			buffer.position(buffer.limit());
+			return;
+		}
+		
+		int pos = buffer.position();
+		int limit = buffer.limit();
+		totalLength += limit-pos;
+		while(pendingLength>0 && pos<limit) {
+			pending[pendingLength++] = buffer.get(pos++);
+			if (pendingLength==32) {
+				stripe(pending, 0);
+				pendingLength = 0;
+			}
+		}
+		
+		ByteBuffer le = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		while(limit-pos>=32) {
+			v1 = round(v1, le.getLong(pos));
+			v2 = round(v2, le.getLong(pos+8));
+			v3 = round(v3, le.getLong(pos+16));
+			v4 = round(v4, le.getLong(pos+24));
+			pos += 32;
+		}
+		while(pos<limit) {
+			pending[pendingLength++] = buffer.get(pos++);
+		}
+		buffer.position(limit);
+	}
+	
+	/**
+	 * Gets the 64-bit hash of everything passed in since this hash was created or last reset. More input can still
+	 * be added afterwards.
+	 */
+	@Override
+	public long getValue() {
+		long h;
+		if (totalLength>=32) {
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = merge(h, v1);
+			h = merge(h, v2);
+			h = merge(h, v3);
+			h = merge(h, v4);
+		} else {
+			h = seed + PRIME5;
+		}
+		h += totalLength;
+		
+		int i = 0;
+		while(i+8<=pendingLength) {
+			h ^= round(0L, (long) LONG_LE.get(pending, i));
+			h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+			i += 8;
+		}
+		if (i+4<=pendingLength) {
+			h ^= ((int) INT_LE.get(pending, i) & 0xFFFFFFFFL) * PRIME1;
+			h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+			i += 4;
+		}
+		while(i<pendingLength) {
+			h ^= (pending[i] & 0xFFL) * PRIME5;
+			h = Long.rotateLeft(h, 11) * PRIME1;
+			i++;
+		}
+		
+		h ^= h >>> 33;
+		h *= PRIME2;
+		h ^= h >>> 29;
+		h *= PRIME3;
+		h ^= h >>> 32;
+		return h;
+	}
+	
+	private void stripe(byte[] b, int off) {
+		v1 = round(v1, (long) LONG_LE.get(b, off));
+		v2 = round(v2, (long) LONG_LE.get(b, off+8));
+		v3 = round(v3, (long) LONG_LE.get(b, off+16));
+		v4 = round(v4, (long) LONG_LE.get(b, off+24));
+	}
+	
+	private static long round(long acc, long input) {
+		acc += input * PRIME2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * PRIME1;
+	}
+	
+	private static long merge(long h, long v) {
+		h ^= round(0L, v);
+		return h * PRIME1 + PRIME4;
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.deflate;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.playsawdust.chipper.glow.io.BitInputStream;
+import com.playsawdust.chipper.glow.io.BitOrder;
+import com.playsawdust.chipper.glow.io.DataSlice;
+import com.playsawdust.chipper.glow.io.HuffmanDecoder;
+
+/**
+ * A pure-Java DEFLATE decoder which can start at any block boundary, given the bit offset of the block and the 32KiB
+ * of output which came before it. java.util.zip.Inflater can't be started partway through a byte, which is why this
+ * exists.
+ */
+class DeflateDecoder {
+	static final int WINDOW_SIZE = 32 * 1024;
+	private static final int WINDOW_MASK = WINDOW_SIZE-1;
+	
+	private static final int BLOCK_HEADER = 0;
+	private static final int STORED = 1;
+	private static final int HUFFMAN = 2;
+	
+	private static final int[] LENGTH_BASE = {
+			3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258 };
+	private static final int[] LENGTH_EXTRA = {
+			0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0 };
+	private static final int[] DISTANCE_BASE = {
+			1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073,
+			4097, 6145, 8193, 12289, 16385, 24577 };
+	private static final int[] DISTANCE_EXTRA = {
+			0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13 };
+	private static final int[] CODE_LENGTH_ORDER = { 16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15 };
+	
+	private static final HuffmanDecoder FIXED_LITERALS;
+	private static final HuffmanDecoder FIXED_DISTANCES;
+	static {
+		int[] literals = new int[288];
+		Arrays.fill(literals, 0, 144, 8);
+		Arrays.fill(literals, 144, 256, 9);
+		Arrays.fill(literals, 256, 280, 7);
+		Arrays.fill(literals, 280, 288, 8);
+		int[] distances = new int[30];
+		Arrays.fill(distances, 5);
+		try {
+			FIXED_LITERALS = new HuffmanDecoder(literals, BitOrder.LSB_FIRST);
+			FIXED_DISTANCES = new HuffmanDecoder(distances, BitOrder.LSB_FIRST);
+		} catch (IOException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+	
+	private final BitInputStream in;
+	/** The last 32KiB of output, indexed by output position modulo the window size */
+	private final byte[] window = new byte[WINDOW_SIZE];
+	/** The number of bytes output so far, counting from the start of the stream rather than the checkpoint */
+	private long position;
+	
+	private int state = BLOCK_HEADER;
+	private boolean lastBlock = false;
+	private boolean finished = false;
+	private int storedRemaining;
+	private HuffmanDecoder literals;
+	private HuffmanDecoder distances;
+	private int matchRemaining = 0;
+	private int matchDistance;
+	
+	/**
+	 * Creates a DeflateDecoder which starts at a block header.
+	 * @param data      the compressed data
+	 * @param bitOffset the offset of the block header, in bits from the start of the data
+	 * @param position  the number of bytes which the stream had already produced before this block
+	 * @param history   the bytes the stream produced just before this block, up to 32KiB of them
+	 */
+	DeflateDecoder(DataSlice data, long bitOffset, long position, byte[] history) throws IOException {
+		this.in = new BitInputStream(data, BitOrder.LSB_FIRST);
+		in.seekBit(bitOffset);
+		this.position = position;
+		int count = Math.min(history.length, WINDOW_SIZE);
+		for(int i=0; i<count; i++) {
+			window[(int) (position-count+i) & WINDOW_MASK] = history[history.length-count+i];
+		}
+	}
+	
+	/**
+	 * Gets the number of bytes the stream has produced so far.
+	 */
+	long getPosition() {
+		return position;
+	}
+	
+	/**
+	 * Gets the offset of the next unread bit, from the start of the compressed data.
+	 */
+	long getBitPosition() {
+		return in.getBitPosition();
+	}
+	
+	/**
+	 * Returns true if the next thing in the stream is the header of a block, which means a new DeflateDecoder could take
+	 * over from here given only the bit position and the history.
+	 */
+	boolean atBlockBoundary() {
+		return state==BLOCK_HEADER && matchRemaining==0 && !lastBlock;
+	}
+	
+	/**
+	 * Gets a copy of the last 32KiB of output, or all of it if there's been less than that.
+	 */
+	byte[] getHistory() {
+		int count = (int) Math.min(position, WINDOW_SIZE);
+		byte[] result = new byte[count];
+		for(int i=0; i<count; i++) {
+			result[i] = window[(int) (position-count+i) & WINDOW_MASK];
+		}
+		return result;
+	}
+	
+	/**
+	 * Decodes up to {@code len} bytes into the destination array. Decoding always stops at the end of a block, so that
+	 * the caller gets a chance to look at every block boundary.
+	 * @return the number of bytes decoded, or -1 if the final block has ended
+	 */
+	int read(byte[] destination, int start, int len) throws IOException {
+		int off = start;
+		int end = start+len;
+		while(off<end) {
+			if (matchRemaining>0) {
+				int count = Math.min(matchRemaining, end-off);
+				for(int i=0; i<count; i++) {
+					byte b = window[(int) (position-matchDistance) & WINDOW_MASK];
+					window[(int) position & WINDOW_MASK] = b;
+					destination[off++] = b;
+					position++;
+				}
+				matchRemaining -= count;
+				continue;
+			}
+			
+			if (state==BLOCK_HEADER) {
+				if (off>start || finished) break;
+				if (lastBlock) {
+					finished = true;
+					break;
+				}
+				readBlockHeader();
+			} else if (state==STORED) {
+				if (storedRemaining==0) {
+					state = BLOCK_HEADER;
+					continue;
+				}
+				int count = Math.min(storedRemaining, end-off);
+				in.readFully(destination, off, count);
+				addToWindow(destination, off, count);
+				off += count;
+				storedRemaining -= count;
+			} else {
+				int symbol = literals.decode(in);
+				if (symbol<256) {
+					byte b = (byte) symbol;
+					window[(int) position & WINDOW_MASK] = b;
+					destination[off++] = b;
+					position++;
+				} else if (symbol==256) {
+					state = BLOCK_HEADER;
+				} else {
+					symbol -= 257;
+					if (symbol>=LENGTH_BASE.length) throw new IOException("Invalid length code "+(symbol+257));
+					int length = LENGTH_BASE[symbol] + in.readBits(LENGTH_EXTRA[symbol]);
+					int distanceCode = distances.decode(in);
+					if (distanceCode>=DISTANCE_BASE.length) throw new IOException("Invalid distance code "+distanceCode);
+					int distance = DISTANCE_BASE[distanceCode] + in.readBits(DISTANCE_EXTRA[distanceCode]);
+					if (distance>position) throw new IOException("Distance too far back");
+					matchRemaining = length;
+					matchDistance = distance;
+				}
+			}
+		}
+		
+		return (off==start && finished) ? -1 : off-start;
+	}
+	
+	private void addToWindow(byte[] source, int start, int len) {
+		if (len>=WINDOW_SIZE) {
+			start += len-WINDOW_SIZE;
+			position += len-WINDOW_SIZE;
+			len = WINDOW_SIZE;
+		}
+		int index = (int) position & WINDOW_MASK;
+		int first = Math.min(len, WINDOW_SIZE-index);
+		System.arraycopy(source, start, window, index, first);
+		System.arraycopy(source, start+first, window, 0, len-first);
+		position += len;
+	}
+	
+	private void readBlockHeader() throws IOException {
+		lastBlock = in.readBits(1)!=0;
+		int type = in.readBits(2);
+		switch(type) {
+			case 0:
+				in.align();
+				int length = in.readBits(16);
+				int inverse = in.readBits(16);
+				if ((length ^ 0xFFFF)!=inverse) throw new IOException("Corrupt stored block length");
+				storedRemaining = length;
+				state = STORED;
+				break;
+			case 1:
+				literals = FIXED_LITERALS;
+				distances = FIXED_DISTANCES;
+				state = HUFFMAN;
+				break;
+			case 2:
+				readDynamicTables();
+				state = HUFFMAN;
+				break;
+			default:
+				throw new IOException("Invalid block type");
+		}
+	}
+	
+	private void readDynamicTables() throws IOException {
+		int literalCount = in.readBits(5) + 257;
+		int distanceCount = in.readBits(5) + 1;
+		int codeLengthCount = in.readBits(4) + 4;
+		
+		int[] codeLengthLengths = new int[CODE_LENGTH_ORDER.length];
+		for(int i=0; i<codeLengthCount; i++) {
+			codeLengthLengths[CODE_LENGTH_ORDER[i]] = in.readBits(3);
+		}
+		HuffmanDecoder codeLengths = new HuffmanDecoder(codeLengthLengths, 0, codeLengthLengths.length, BitOrder.LSB_FIRST, 7);
+		
+		//Literal and distance code lengths are one run, and repeats can cross from one to the other
+		int[] lengths = new int[literalCount+distanceCount];
+		int i = 0;
+		while(i<lengths.length) {
+			int symbol = codeLengths.decode(in);
+			if (symbol<16) {
+				lengths[i++] = symbol;
+				continue;
+			}
+			
+			int value = 0;
+			int repeat;
+			if (symbol==16) {
+				if (i==0) throw new IOException("Repeated code length with nothing to repeat");
+				value = lengths[i-1];
+				repeat = 3 + in.readBits(2);
+			} else if (symbol==17) {
+				repeat = 3 + in.readBits(3);
+			} else {
+				repeat = 11 + in.readBits(7);
+			}
+			if (i+repeat>lengths.length) throw new IOException("Code lengths overflow the table");
+			Arrays.fill(lengths, i, i+repeat, value);
+			i += repeat;
+		}
+		if (lengths[256]==0) throw new IOException("Block has no end-of-block code");
+		
+		literals = new HuffmanDecoder(lengths, 0, literalCount, BitOrder.LSB_FIRST, HuffmanDecoder.DEFAULT_ROOT_BITS);
+		distances = new HuffmanDecoder(lengths, literalCount, distanceCount, BitOrder.LSB_FIRST, HuffmanDecoder.DEFAULT_ROOT_BITS);
+	}
+}
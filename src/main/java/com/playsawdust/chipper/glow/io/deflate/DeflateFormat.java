@@ -0,0 +1,82 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.deflate;
+
+import java.io.IOException;
+
+import com.playsawdust.chipper.glow.io.DataSlice;
+
+/**
+ * The wrappers which DEFLATE-compressed data can come in.
+ */
+public enum DeflateFormat {
+	/** Bare DEFLATE data, with no header or trailer */
+	RAW,
+	/** DEFLATE data with a two-byte zlib header and an Adler-32 trailer, as found in PNG files */
+	ZLIB,
+	/** DEFLATE data with a gzip header and trailer, as written by the gzip tool */
+	GZIP;
+	
+	/**
+	 * Guesses the format of the data from its first few bytes. Data that doesn't start with a gzip or zlib header is
+	 * assumed to be RAW.
+	 */
+	public static DeflateFormat detect(DataSlice data) throws IOException {
+		if (data.length()<2) return RAW;
+		int a = data.read(0L);
+		int b = data.read(1L);
+		if (a==0x1F && b==0x8B) return GZIP;
+		if ((a & 0x0F)==8 && (a >>> 4)<=7 && ((a << 8) | b) % 31==0) return ZLIB;
+		return RAW;
+	}
+	
+	/**
+	 * Reads the header at the start of the data, and returns the offset in bytes where the DEFLATE data itself starts.
+	 * @throws IOException if the header is malformed, or asks for something which isn't supported
+	 */
+	public long readHeader(DataSlice data) throws IOException {
+		switch(this) {
+			case RAW:
+				return 0L;
+			case ZLIB: {
+				if (data.length()<2) throw new IOException("Truncated zlib header");
+				int cmf = data.read(0L);
+				int flg = data.read(1L);
+				if ((cmf & 0x0F)!=8 || ((cmf << 8) | flg) % 31!=0) throw new IOException("Not a zlib stream");
+				if ((flg & 0x20)!=0) throw new IOException("zlib streams with a preset dictionary are not supported");
+				return 2L;
+			}
+			case GZIP: {
+				if (data.length()<10) throw new IOException("Truncated gzip header");
+				if (data.read(0L)!=0x1F || data.read(1L)!=0x8B) throw new IOException("Not a gzip stream");
+				if (data.read(2L)!=8) throw new IOException("Unsupported gzip compression method "+data.read(2L));
+				int flags = data.read(3L);
+				long length = data.length();
+				long offset = 10L;
+				if ((flags & 0x04)!=0 && offset+2<=length) { //FEXTRA
+					offset += 2 + (data.read(offset) | (data.read(offset+1) << 8));
+				}
+				if ((flags & 0x08)!=0) { //FNAME
+					while(offset<length && data.read(offset++)!=0);
+				}
+				if ((flags & 0x10)!=0) { //FCOMMENT
+					while(offset<length && data.read(offset++)!=0);
+				}
+				if ((flags & 0x02)!=0) { //FHCRC
+					offset += 2;
+				}
+				if (offset>=length) throw new IOException("Truncated gzip header");
+				return offset;
+			}
+			default:
+				throw new IllegalStateException();
+		}
+	}
+}
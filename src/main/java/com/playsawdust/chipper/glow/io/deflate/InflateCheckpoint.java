@@ -0,0 +1,111 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.deflate;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.playsawdust.chipper.glow.io.DataSlice;
+
+/**
+ * A point in a DEFLATE stream where decoding can restart: the start of a block, together with the 32KiB of output
+ * which came before it, since matches in the block may refer back that far. Windows are deflated again when a
+ * checkpoint is serialized, which usually shrinks them considerably.
+ */
+public final class InflateCheckpoint implements Serializable {
+	private static final long serialVersionUID = 1L;
+	
+	private final long bitOffset;
+	private final long outputOffset;
+	private transient byte[] window;
+	
+	InflateCheckpoint(long bitOffset, long outputOffset, byte[] window) {
+		this.bitOffset = bitOffset;
+		this.outputOffset = outputOffset;
+		this.window = window;
+	}
+	
+	/**
+	 * Gets the offset of the block header, in bits from the start of the compressed data.
+	 */
+	public long getBitOffset() {
+		return bitOffset;
+	}
+	
+	/**
+	 * Gets the offset in the decompressed data where the block's output starts.
+	 */
+	public long getOutputOffset() {
+		return outputOffset;
+	}
+	
+	/**
+	 * Gets the number of bytes of history stored with this checkpoint. This is 32KiB except near the start of the
+	 * stream.
+	 */
+	public int getWindowSize() {
+		return window.length;
+	}
+	
+	DeflateDecoder resume(DataSlice data) throws IOException {
+		return new DeflateDecoder(data, bitOffset, outputOffset, window);
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+		try {
+			deflater.setInput(window);
+			deflater.finish();
+			byte[] compressed = new byte[window.length + 64];
+			int compressedLength = 0;
+			while(!deflater.finished()) {
+				if (compressedLength==compressed.length) compressed = Arrays.copyOf(compressed, compressed.length*2);
+				compressedLength += deflater.deflate(compressed, compressedLength, compressed.length-compressedLength);
+			}
+			out.writeInt(window.length);
+			out.writeInt(compressedLength);
+			out.write(compressed, 0, compressedLength);
+		} finally {
+			deflater.end();
+		}
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int windowLength = in.readInt();
+		int compressedLength = in.readInt();
+		if (windowLength<0 || windowLength>DeflateDecoder.WINDOW_SIZE || compressedLength<0) throw new IOException("Corrupt checkpoint");
+		byte[] compressed = new byte[compressedLength];
+		in.readFully(compressed);
+		
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(compressed);
+			window = new byte[windowLength];
+			int read = 0;
+			while(read<windowLength) {
+				int count = inflater.inflate(window, read, windowLength-read);
+				if (count==0 && (inflater.finished() || inflater.needsInput())) throw new IOException("Corrupt checkpoint");
+				read += count;
+			}
+		} catch (DataFormatException ex) {
+			throw new IOException("Corrupt checkpoint", ex);
+		} finally {
+			inflater.end();
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.deflate;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.playsawdust.chipper.glow.io.DataSlice;
+
+/**
+ * The checkpoints of a DEFLATE stream, which let an {@link InflatingDataSlice} start decoding close to any offset
+ * instead of from the very beginning. Building an index means decoding the whole stream once; serializing it lets
+ * later opens of the same data skip that.
+ */
+public final class InflateIndex implements Serializable {
+	private static final long serialVersionUID = 1L;
+	
+	/** The default distance between checkpoints, in decompressed bytes */
+	public static final long DEFAULT_SPACING = 1L << 20;
+	
+	private final DeflateFormat format;
+	private final long compressedLength;
+	private final long length;
+	private final long spacing;
+	private final ImmutableList<InflateCheckpoint> checkpoints;
+	
+	private InflateIndex(DeflateFormat format, long compressedLength, long length, long spacing, ImmutableList<InflateCheckpoint> checkpoints) {
+		this.format = format;
+		this.compressedLength = compressedLength;
+		this.length = length;
+		this.spacing = spacing;
+		this.checkpoints = checkpoints;
+	}
+	
+	/**
+	 * Decodes all of the compressed data, recording a checkpoint at the first block boundary after every
+	 * {@code spacing} bytes of output. Each checkpoint holds up to 32KiB, so a smaller spacing makes seeking faster at
+	 * the cost of memory. For gzip data, only the first member is read.
+	 * @throws IOException if the data is corrupt or truncated, or if there was a problem reading it
+	 */
+	public static InflateIndex build(DataSlice compressed, DeflateFormat format, long spacing) throws IOException {
+		if (spacing<=0) throw new IllegalArgumentException("Checkpoint spacing must be positive");
+		long start = format.readHeader(compressed);
+		ImmutableList.Builder<InflateCheckpoint> checkpoints = ImmutableList.builder();
+		checkpoints.add(new InflateCheckpoint(start*8, 0L, new byte[0]));
+		
+		DeflateDecoder decoder = new DeflateDecoder(compressed, start*8, 0L, new byte[0]);
+		byte[] scratch = new byte[64 * 1024];
+		long lastCheckpoint = 0L;
+		while(decoder.read(scratch, 0, scratch.length)>=0) {
+			if (decoder.atBlockBoundary() && decoder.getPosition()-lastCheckpoint>=spacing) {
+				lastCheckpoint = decoder.getPosition();
+				checkpoints.add(new InflateCheckpoint(decoder.getBitPosition(), lastCheckpoint, decoder.getHistory()));
+			}
+		}
+		
+		return new InflateIndex(format, compressed.length(), decoder.getPosition(), spacing, checkpoints.build());
+	}
+	
+	public DeflateFormat getFormat() {
+		return format;
+	}
+	
+	/**
+	 * Gets the length of the compressed data this index was built from. An index is rejected by data of any other
+	 * length.
+	 */
+	public long getCompressedLength() {
+		return compressedLength;
+	}
+	
+	/**
+	 * Gets the length of the decompressed data.
+	 */
+	public long getLength() {
+		return length;
+	}
+	
+	public long getSpacing() {
+		return spacing;
+	}
+	
+	/**
+	 * Gets every checkpoint, in order. The first is always at the very start of the stream.
+	 */
+	public List<InflateCheckpoint> getCheckpoints() {
+		return checkpoints;
+	}
+	
+	/**
+	 * Finds the last checkpoint at or before the specified offset in the decompressed data.
+	 */
+	public InflateCheckpoint getCheckpoint(long offset) {
+		int low = 0;
+		int high = checkpoints.size()-1;
+		while(low<high) {
+			int mid = (low+high+1) >>> 1;
+			if (checkpoints.get(mid).getOutputOffset()<=offset) {
+				low = mid;
+			} else {
+				high = mid-1;
+			}
+		}
+		return checkpoints.get(low);
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.deflate;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import com.playsawdust.chipper.glow.io.DataSlice;
+import com.playsawdust.chipper.glow.io.LightweightDataSlice;
+
+/**
+ * A DataSlice over the decompressed contents of DEFLATE, zlib, or gzip data, which decompresses only what is read.
+ *
+ * <p>Random access works the way zran does: an {@link InflateIndex} records a checkpoint every megabyte or so, and a
+ * read decodes forward from the nearest checkpoint before it. Reading forward from wherever the last read left off
+ * just carries on decoding. Building the index takes one full pass over the data, but the index can be serialized and
+ * passed back in to skip that pass next time.
+ *
+ * <p>An InflatingDataSlice keeps its decoder state internally, so it must not be shared between threads. Each
+ * {@link #duplicate()} has its own decoder, and is as thread-safe as the compressed DataSlice's duplicates are.
+ */
+public class InflatingDataSlice implements DataSlice {
+	private static final int CHUNK_SIZE = 64 * 1024;
+	
+	protected final DataSlice compressed;
+	protected final InflateIndex index;
+	protected long pointer = 0L;
+	protected ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+	
+	/** The most recently decoded run of output, which the decoder picks up from */
+	protected final byte[] chunk = new byte[CHUNK_SIZE];
+	protected long chunkStart = 0L;
+	protected int chunkLength = 0;
+	protected DeflateDecoder decoder;
+	
+	/**
+	 * Creates an InflatingDataSlice, building its index with the default checkpoint spacing.
+	 */
+	public InflatingDataSlice(DataSlice compressed, DeflateFormat format) throws IOException {
+		this(compressed, InflateIndex.build(compressed, format, InflateIndex.DEFAULT_SPACING));
+	}
+	
+	/**
+	 * Creates an InflatingDataSlice from an index which was built earlier for the same compressed data.
+	 * @throws IOException if the index was obviously built for different data
+	 */
+	public InflatingDataSlice(DataSlice compressed, InflateIndex index) throws IOException {
+		if (compressed.length()!=index.getCompressedLength()) throw new IOException("Index does not match the compressed data");
+		this.compressed = compressed;
+		this.index = index;
+	}
+	
+	/**
+	 * Gets this slice's index, which can be serialized and passed back into
+	 * {@link #InflatingDataSlice(DataSlice, InflateIndex)} later on.
+	 */
+	public InflateIndex getIndex() {
+		return index;
+	}
+	
+	@Override
+	public void seek(long offset) {
+		if (offset<0 || offset>index.getLength()) throw new ArrayIndexOutOfBoundsException();
+		pointer = offset;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		int result = read(pointer);
+		pointer++;
+		return result;
+	}
+	
+	@Override
+	public int read(long offset) throws IOException {
+		if (offset<0 || offset>=index.getLength()) throw new ArrayIndexOutOfBoundsException();
+		if (offset<chunkStart || offset>=chunkStart+chunkLength) decodeTo(offset);
+		return chunk[(int) (offset-chunkStart)] & 0xFF;
+	}
+	
+	@Override
+	public void read(long offset, byte[] destination, int start, int len) throws IOException {
+		if (offset<0 || len<0 || offset+len>index.getLength()) throw new ArrayIndexOutOfBoundsException();
+		if (start<0 || start+len>destination.length) throw new ArrayIndexOutOfBoundsException();
+		while(len>0) {
+			if (offset<chunkStart || offset>=chunkStart+chunkLength) decodeTo(offset);
+			int chunkOffset = (int) (offset-chunkStart);
+			int count = Math.min(len, chunkLength-chunkOffset);
+			System.arraycopy(chunk, chunkOffset, destination, start, count);
+			offset += count;
+			start += count;
+			len -= count;
+		}
+	}
+	
+	/**
+	 * Decodes forward until the chunk holds the specified offset, restarting from a checkpoint first if that's closer
+	 * than where the decoder is now, or if the offset is behind the decoder.
+	 */
+	private void decodeTo(long offset) throws IOException {
+		InflateCheckpoint checkpoint = index.getCheckpoint(offset);
+		if (decoder==null || decoder.getPosition()>offset || checkpoint.getOutputOffset()>decoder.getPosition()) {
+			decoder = checkpoint.resume(compressed);
+			chunkStart = decoder.getPosition();
+			chunkLength = 0;
+		}
+		
+		while(offset>=chunkStart+chunkLength) {
+			chunkStart = decoder.getPosition();
+			chunkLength = 0;
+			while(chunkLength<CHUNK_SIZE) {
+				int read = decoder.read(chunk, chunkLength, CHUNK_SIZE-chunkLength);
+				if (read<0) break;
+				chunkLength += read;
+			}
+			if (chunkLength==0) throw new IOException("Compressed data ended early");
+		}
+	}
+	
+	@Override
+	public long position() {
+		return pointer;
+	}
+	
+	@Override
+	public long length() {
+		return index.getLength();
+	}
+	
+	@Override
+	public DataSlice slice(long offset, long length) {
+		if (offset<0 || offset>index.getLength()) throw new ArrayIndexOutOfBoundsException();
+		if (length<0 || offset+length>index.getLength()) throw new ArrayIndexOutOfBoundsException();
+		
+		DataSlice result = new LightweightDataSlice(this, offset, length);
+		result.setByteOrder(byteOrder);
+		this.pointer += length;
+		return result;
+	}
+	
+	/**
+	 * Creates an InflatingDataSlice over a duplicate of the compressed data, which shares this slice's index but has a
+	 * decoder of its own.
+	 */
+	@Override
+	public DataSlice duplicate() throws IOException {
+		InflatingDataSlice result = new InflatingDataSlice(compressed.duplicate(), index);
+		result.pointer = pointer;
+		result.byteOrder = byteOrder;
+		return result;
+	}
+	
+	@Override
+	public ByteOrder getByteOrder() {
+		return byteOrder;
+	}
+	
+	@Override
+	public void setByteOrder(ByteOrder order) {
+		this.byteOrder = order;
+	}
+	
+	/**
+	 * Closes the compressed DataSlice.
+	 */
+	@Override
+	public void close() throws IOException {
+		compressed.close();
+	}
+	
+}
@@ -0,0 +1,122 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A FileChannel which passes every call on to another, and counts each read as a system call.
+ */
+class CountingFileChannel extends FileChannel {
+	protected final FileChannel delegate;
+	protected final IoCounters counters;
+	
+	CountingFileChannel(FileChannel delegate, IoCounters counters) {
+		this.delegate = delegate;
+		this.counters = counters;
+	}
+	
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		counters.recordSyscall();
+		return delegate.read(dst);
+	}
+	
+	@Override
+	public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+		counters.recordSyscall();
+		return delegate.read(dsts, offset, length);
+	}
+	
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException {
+		counters.recordSyscall();
+		return delegate.read(dst, position);
+	}
+	
+	@Override
+	public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+		counters.recordSyscall();
+		return delegate.transferTo(position, count, target);
+	}
+	
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		return delegate.write(src);
+	}
+	
+	@Override
+	public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+		return delegate.write(srcs, offset, length);
+	}
+	
+	@Override
+	public int write(ByteBuffer src, long position) throws IOException {
+		return delegate.write(src, position);
+	}
+	
+	@Override
+	public long position() throws IOException {
+		return delegate.position();
+	}
+	
+	@Override
+	public FileChannel position(long newPosition) throws IOException {
+		delegate.position(newPosition);
+		return this;
+	}
+	
+	@Override
+	public long size() throws IOException {
+		return delegate.size();
+	}
+	
+	@Override
+	public FileChannel truncate(long size) throws IOException {
+		delegate.truncate(size);
+		return this;
+	}
+	
+	@Override
+	public void force(boolean metaData) throws IOException {
+		delegate.force(metaData);
+	}
+	
+	@Override
+	public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+		return delegate.transferFrom(src, position, count);
+	}
+	
+	@Override
+	public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+		return delegate.map(mode, position, size);
+	}
+	
+	@Override
+	public FileLock lock(long position, long size, boolean shared) throws IOException {
+		return delegate.lock(position, size, shared);
+	}
+	
+	@Override
+	public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+		return delegate.tryLock(position, size, shared);
+	}
+	
+	@Override
+	protected void implCloseChannel() throws IOException {
+		delegate.close();
+	}
+}
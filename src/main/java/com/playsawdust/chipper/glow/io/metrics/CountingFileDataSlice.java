@@ -0,0 +1,57 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.metrics;
+
+import java.io.IOException;
+
+import com.playsawdust.chipper.glow.io.FileDataSlice;
+
+/**
+ * A FileDataSlice which counts the system calls it makes against the file. Positional reads, and the blocks a
+ * BlockCache loads for it, including blocks read ahead, are counted by the channel it reads through; only the
+ * RandomAccessFile reads of a plain slice need counting here. {@link IoInstrumentation} swaps one of these in for a
+ * FileDataSlice, so slices which aren't instrumented run none of this.
+ */
+class CountingFileDataSlice extends FileDataSlice {
+	protected final IoCounters counters;
+	
+	CountingFileDataSlice(FileDataSlice original, boolean concurrent, IoCounters counters) {
+		super(original, concurrent);
+		this.counters = counters;
+		if (original instanceof CountingFileDataSlice && ((CountingFileDataSlice) original).counters==counters) {
+			//Share the channel, so that closing any copy calls off the read-ahead of all of them
+			this.channel = ((CountingFileDataSlice) original).channel;
+		} else {
+			this.channel = new CountingFileChannel(file.getChannel(), counters);
+		}
+		if (cache!=null) counters.setCache(cache);
+	}
+	
+	@Override
+	public int read(long offset) throws IOException {
+		if (cache!=null || concurrent) return super.read(offset);
+		
+		if (offset!=file.getFilePointer()) {
+			counters.recordFileSeek();
+			file.seek(offset);
+		}
+		counters.recordSyscall();
+		return file.read();
+	}
+	
+	@Override
+	protected FileDataSlice derive(boolean concurrent) {
+		return new CountingFileDataSlice(this, concurrent, counters);
+	}
+	
+	public IoCounters getCounters() {
+		return counters;
+	}
+}
@@ -0,0 +1,326 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Optional;
+
+import com.playsawdust.chipper.glow.io.AccessHint;
+import com.playsawdust.chipper.glow.io.DataSlice;
+
+/**
+ * A DataSlice which counts the reads and seeks made against another DataSlice, and reports slow reads and large
+ * copies to JFR. Slices and duplicates taken from it are instrumented too, and share its counters.
+ * 
+ * <p>Every call is passed straight through to the wrapped slice, so its own fast paths still apply. Single-byte and
+ * single-value reads are only counted; bulk reads are also timed, since they're the ones which can block on IO.
+ * @see IoInstrumentation
+ */
+public class InstrumentedDataSlice implements DataSlice {
+	protected final DataSlice delegate;
+	protected final IoCounters counters;
+	protected final long largeCopyThreshold;
+	
+	public InstrumentedDataSlice(DataSlice delegate, IoCounters counters, long largeCopyThreshold) {
+		this.delegate = delegate;
+		this.counters = counters;
+		this.largeCopyThreshold = largeCopyThreshold;
+	}
+	
+	/** Gets the DataSlice which this slice passes its calls on to */
+	public DataSlice getDelegate() {
+		return delegate;
+	}
+	
+	public IoCounters getCounters() {
+		return counters;
+	}
+	
+	@Override
+	public void reset() throws IOException {
+		counters.recordSeek();
+		delegate.reset();
+	}
+	
+	@Override
+	public void seek(long offset) throws IOException {
+		counters.recordSeek();
+		delegate.seek(offset);
+	}
+	
+	@Override
+	public void skip(long bytes) throws IOException {
+		counters.recordSeek();
+		delegate.skip(bytes);
+	}
+	
+	@Override
+	public int read() throws IOException {
+		counters.recordSingleByteRead();
+		return delegate.read();
+	}
+	
+	@Override
+	public int read(long offset) throws IOException {
+		counters.recordSingleByteRead();
+		return delegate.read(offset);
+	}
+	
+	@Override
+	public ByteOrder getByteOrder() {
+		return delegate.getByteOrder();
+	}
+	
+	@Override
+	public void setByteOrder(ByteOrder order) {
+		delegate.setByteOrder(order);
+	}
+	
+	@Override
+	public boolean readBoolean() throws IOException {
+		counters.recordSingleByteRead();
+		return delegate.readBoolean();
+	}
+	
+	@Override
+	public byte readI8s() throws IOException {
+		counters.recordSingleByteRead();
+		return delegate.readI8s();
+	}
+	
+	@Override
+	public int readI8u() throws IOException {
+		counters.recordSingleByteRead();
+		return delegate.readI8u();
+	}
+	
+	@Override
+	public short readI16s() throws IOException {
+		counters.recordValueRead(Short.BYTES);
+		return delegate.readI16s();
+	}
+	
+	@Override
+	public int readI16u() throws IOException {
+		counters.recordValueRead(Short.BYTES);
+		return delegate.readI16u();
+	}
+	
+	@Override
+	public int readI32s() throws IOException {
+		counters.recordValueRead(Integer.BYTES);
+		return delegate.readI32s();
+	}
+	
+	@Override
+	public long readI64s() throws IOException {
+		counters.recordValueRead(Long.BYTES);
+		return delegate.readI64s();
+	}
+	
+	@Override
+	public float readF32s() throws IOException {
+		counters.recordValueRead(Float.BYTES);
+		return delegate.readF32s();
+	}
+	
+	@Override
+	public double readF64s() throws IOException {
+		counters.recordValueRead(Double.BYTES);
+		return delegate.readF64s();
+	}
+	
+	@Override
+	public void copy(byte[] destination, int start, int len) throws IOException {
+		long offset = delegate.position();
+		SlowReadEvent event = begin();
+		delegate.copy(destination, start, len);
+		finish(event, offset, len);
+	}
+	
+	@Override
+	public void read(long offset, byte[] destination, int start, int len) throws IOException {
+		SlowReadEvent event = begin();
+		delegate.read(offset, destination, start, len);
+		finish(event, offset, len);
+	}
+	
+	@Override
+	public void read(long offset, ByteBuffer destination) throws IOException {
+		int len = destination.remaining();
+		SlowReadEvent event = begin();
+		delegate.read(offset, destination);
+		finish(event, offset, len);
+	}
+	
+	@Override
+	public void readI16s(short[] destination, int start, int len) throws IOException {
+		long offset = delegate.position();
+		SlowReadEvent event = begin();
+		delegate.readI16s(destination, start, len);
+		finish(event, offset, (long) len*Short.BYTES);
+	}
+	
+	@Override
+	public void readI32s(int[] destination, int start, int len) throws IOException {
+		long offset = delegate.position();
+		SlowReadEvent event = begin();
+		delegate.readI32s(destination, start, len);
+		finish(event, offset, (long) len*Integer.BYTES);
+	}
+	
+	@Override
+	public void readI64s(long[] destination, int start, int len) throws IOException {
+		long offset = delegate.position();
+		SlowReadEvent event = begin();
+		delegate.readI64s(destination, start, len);
+		finish(event, offset, (long) len*Long.BYTES);
+	}
+	
+	@Override
+	public void readF32s(float[] destination, int start, int len) throws IOException {
+		long offset = delegate.position();
+		SlowReadEvent event = begin();
+		delegate.readF32s(destination, start, len);
+		finish(event, offset, (long) len*Float.BYTES);
+	}
+	
+	@Override
+	public void readF64s(double[] destination, int start, int len) throws IOException {
+		long offset = delegate.position();
+		SlowReadEvent event = begin();
+		delegate.readF64s(destination, start, len);
+		finish(event, offset, (long) len*Double.BYTES);
+	}
+	
+	@Override
+	public void readI32s(IntBuffer destination) throws IOException {
+		long offset = delegate.position();
+		int len = destination.remaining();
+		SlowReadEvent event = begin();
+		delegate.readI32s(destination);
+		finish(event, offset, (long) len*Integer.BYTES);
+	}
+	
+	@Override
+	public void readF32s(FloatBuffer destination) throws IOException {
+		long offset = delegate.position();
+		int len = destination.remaining();
+		SlowReadEvent event = begin();
+		delegate.readF32s(destination);
+		finish(event, offset, (long) len*Float.BYTES);
+	}
+	
+	@Override
+	public DataSlice copy(long offset, int length) throws IOException {
+		SlowReadEvent event = begin();
+		DataSlice result = delegate.copy(offset, length);
+		finish(event, offset, length);
+		return result;
+	}
+	
+	@Override
+	public ByteBuffer asByteBuffer(long offset, long length) throws IOException {
+		Optional<ByteBuffer> view = delegate.tryAsByteBuffer(offset, length);
+		if (view.isPresent()) return view.get();
+		
+		//No view, so this is a copy
+		SlowReadEvent event = begin();
+		ByteBuffer result = delegate.asByteBuffer(offset, length);
+		finish(event, offset, length);
+		return result;
+	}
+	
+	@Override
+	public Optional<ByteBuffer> tryAsByteBuffer(long offset, long length) throws IOException {
+		return delegate.tryAsByteBuffer(offset, length);
+	}
+	
+	/**
+	 * Starts timing a bulk read. The event is only committed if it runs past the threshold in the JFR recording's
+	 * settings, and when JFR isn't recording at all this costs next to nothing.
+	 */
+	private static SlowReadEvent begin() {
+		SlowReadEvent event = new SlowReadEvent();
+		event.begin();
+		return event;
+	}
+	
+	private void finish(SlowReadEvent event, long offset, long bytes) {
+		event.end();
+		counters.recordBulkRead(bytes);
+		if (event.shouldCommit()) {
+			event.root = counters.getRoot();
+			event.offset = offset;
+			event.bytes = bytes;
+			event.commit();
+		}
+		
+		if (bytes>=largeCopyThreshold) {
+			counters.recordLargeCopy();
+			LargeCopyEvent copy = new LargeCopyEvent();
+			if (copy.shouldCommit()) {
+				copy.root = counters.getRoot();
+				copy.offset = offset;
+				copy.bytes = bytes;
+				copy.commit();
+			}
+		}
+	}
+	
+	@Override
+	public long position() {
+		return delegate.position();
+	}
+	
+	@Override
+	public long length() throws IOException {
+		return delegate.length();
+	}
+	
+	@Override
+	public DataSlice slice(long offset, long length) {
+		return new InstrumentedDataSlice(delegate.slice(offset, length), counters, largeCopyThreshold);
+	}
+	
+	@Override
+	public DataSlice slice(long length) {
+		return new InstrumentedDataSlice(delegate.slice(length), counters, largeCopyThreshold);
+	}
+	
+	@Override
+	public DataSlice duplicate() throws IOException {
+		return new InstrumentedDataSlice(delegate.duplicate(), counters, largeCopyThreshold);
+	}
+	
+	@Override
+	public void setAccessHint(AccessHint hint) {
+		delegate.setAccessHint(hint);
+	}
+	
+	@Override
+	public AccessHint getAccessHint() {
+		return delegate.getAccessHint();
+	}
+	
+	@Override
+	public void prefetch(long offset, long length) throws IOException {
+		delegate.prefetch(offset, length);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		delegate.close();
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.playsawdust.chipper.glow.io.BlockCache;
+
+/**
+ * Running totals of the IO done against one root file or buffer, shared by every instrumented slice taken from it.
+ * Counters are LongAdders, so slices read from different threads don't contend on them.
+ */
+public class IoCounters {
+	protected final String root;
+	protected volatile BlockCache cache;
+	
+	protected final LongAdder bytesRead = new LongAdder();
+	protected final LongAdder singleByteReads = new LongAdder();
+	protected final LongAdder valueReads = new LongAdder();
+	protected final LongAdder bulkReads = new LongAdder();
+	protected final LongAdder bulkBytes = new LongAdder();
+	protected final LongAdder seeks = new LongAdder();
+	protected final LongAdder syscalls = new LongAdder();
+	protected final LongAdder fileSeeks = new LongAdder();
+	protected final LongAdder largeCopies = new LongAdder();
+	
+	public IoCounters(String root) {
+		this.root = root;
+	}
+	
+	public String getRoot() {
+		return root;
+	}
+	
+	/**
+	 * Sets the BlockCache the root file is read through, so that its hit rate is included in snapshots.
+	 */
+	public void setCache(BlockCache cache) {
+		this.cache = cache;
+	}
+	
+	/** Records a read of a single byte */
+	public void recordSingleByteRead() {
+		singleByteReads.increment();
+		bytesRead.increment();
+	}
+	
+	/** Records a read of one primitive value, such as an int or a double */
+	public void recordValueRead(int bytes) {
+		valueReads.increment();
+		bytesRead.add(bytes);
+	}
+	
+	/** Records a read of a run of bytes, or an array of values, in one call */
+	public void recordBulkRead(long bytes) {
+		bulkReads.increment();
+		bulkBytes.add(bytes);
+		bytesRead.add(bytes);
+	}
+	
+	/** Records a move of a DataSlice's read pointer */
+	public void recordSeek() {
+		seeks.increment();
+	}
+	
+	/** Records a read or seek system call made against the underlying file */
+	public void recordSyscall() {
+		syscalls.increment();
+	}
+	
+	/** Records a call to RandomAccessFile.seek, which is also counted as a system call */
+	public void recordFileSeek() {
+		fileSeeks.increment();
+		syscalls.increment();
+	}
+	
+	/** Records a copy big enough to be worth reporting */
+	public void recordLargeCopy() {
+		largeCopies.increment();
+	}
+	
+	/**
+	 * Takes a snapshot of the counters. Counters which are updated while the snapshot is being taken may or may not be
+	 * included in it.
+	 */
+	public IoMetrics snapshot() {
+		BlockCache cache = this.cache;
+		long hits = (cache==null) ? 0L : cache.getHitCount();
+		long misses = (cache==null) ? 0L : cache.getMissCount();
+		return new IoMetrics(root, bytesRead.sum(), singleByteReads.sum(), valueReads.sum(), bulkReads.sum(),
+				bulkBytes.sum(), seeks.sum(), syscalls.sum(), fileSeeks.sum(), largeCopies.sum(), cache!=null, hits, misses);
+	}
+	
+	/**
+	 * Sets every counter back to zero. The cache's own statistics are not reset.
+	 */
+	public void reset() {
+		bytesRead.reset();
+		singleByteReads.reset();
+		valueReads.reset();
+		bulkReads.reset();
+		bulkBytes.reset();
+		seeks.reset();
+		syscalls.reset();
+		fileSeeks.reset();
+		largeCopies.reset();
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.playsawdust.chipper.glow.io.DataSlice;
+import com.playsawdust.chipper.glow.io.FileDataSlice;
+
+/**
+ * Opt-in instrumentation for DataSlices. Slices are registered under the name of their root file or buffer, and every
+ * slice registered under one name adds to the same counters.
+ * 
+ * <pre>
+ * IoInstrumentation instrumentation = new IoInstrumentation();
+ * DataSlice data = instrumentation.instrument(DataSlice.of(file, cache), "terrain.riff");
+ * ...
+ * System.out.println(instrumentation.snapshot("terrain.riff"));
+ * </pre>
+ * 
+ * <p>When instrumentation is disabled, {@link #instrument(DataSlice, String)} hands back the slice it was given, so
+ * the loader reads exactly as fast as it would without this class. Enabling or disabling it only affects slices
+ * instrumented afterwards.
+ */
+public class IoInstrumentation {
+	public static final long DEFAULT_LARGE_COPY_THRESHOLD = 16L << 20;
+	
+	protected final ConcurrentHashMap<String, IoCounters> roots = new ConcurrentHashMap<>();
+	protected volatile boolean enabled;
+	protected volatile long largeCopyThreshold = DEFAULT_LARGE_COPY_THRESHOLD;
+	
+	/**
+	 * Creates an enabled IoInstrumentation.
+	 */
+	public IoInstrumentation() {
+		this(true);
+	}
+	
+	public IoInstrumentation(boolean enabled) {
+		this.enabled = enabled;
+	}
+	
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+	
+	/**
+	 * Sets how many bytes a single read or copy has to move before it's counted as a large copy, and reported to JFR.
+	 * The default is 16MiB.
+	 */
+	public void setLargeCopyThreshold(long bytes) {
+		if (bytes<0) throw new IllegalArgumentException();
+		this.largeCopyThreshold = bytes;
+	}
+	
+	public long getLargeCopyThreshold() {
+		return largeCopyThreshold;
+	}
+	
+	/**
+	 * Gets the counters for the specified root, creating them if they don't exist yet.
+	 */
+	public IoCounters getCounters(String root) {
+		return roots.computeIfAbsent(root, IoCounters::new);
+	}
+	
+	/**
+	 * Instruments a DataSlice, adding its reads to the counters for the specified root. A FileDataSlice is replaced by a
+	 * copy, with the same file, cache, read pointer, and settings, which also counts the system calls it makes, and has
+	 * its BlockCache's hit rate included in snapshots. The original slice is left uninstrumented.
+	 * @return an instrumented view of the slice, or the slice itself if instrumentation is disabled
+	 */
+	public DataSlice instrument(DataSlice slice, String root) {
+		if (!enabled) return slice;
+		IoCounters counters = getCounters(root);
+		if (slice instanceof FileDataSlice) {
+			FileDataSlice file = (FileDataSlice) slice;
+			slice = new CountingFileDataSlice(file, file.isConcurrent(), counters);
+		}
+		return new InstrumentedDataSlice(slice, counters, largeCopyThreshold);
+	}
+	
+	/**
+	 * Takes a snapshot of the counters for the specified root, or returns null if nothing has been instrumented under
+	 * that name.
+	 */
+	public IoMetrics snapshot(String root) {
+		IoCounters counters = roots.get(root);
+		return (counters==null) ? null : counters.snapshot();
+	}
+	
+	/**
+	 * Takes a snapshot of every root's counters.
+	 */
+	public Map<String, IoMetrics> snapshot() {
+		Map<String, IoMetrics> result = new LinkedHashMap<>();
+		for(IoCounters counters : roots.values()) {
+			result.put(counters.getRoot(), counters.snapshot());
+		}
+		return result;
+	}
+	
+	/**
+	 * Sets every root's counters back to zero.
+	 */
+	public void reset() {
+		for(IoCounters counters : roots.values()) counters.reset();
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.metrics;
+
+/**
+ * An immutable snapshot of the IO done against one root file or buffer.
+ * @see IoCounters#snapshot()
+ */
+public final class IoMetrics {
+	private final String root;
+	private final long bytesRead;
+	private final long singleByteReads;
+	private final long valueReads;
+	private final long bulkReads;
+	private final long bulkBytes;
+	private final long seeks;
+	private final long syscalls;
+	private final long fileSeeks;
+	private final long largeCopies;
+	private final boolean cached;
+	private final long cacheHits;
+	private final long cacheMisses;
+	
+	IoMetrics(String root, long bytesRead, long singleByteReads, long valueReads, long bulkReads, long bulkBytes, long seeks,
+			long syscalls, long fileSeeks, long largeCopies, boolean cached, long cacheHits, long cacheMisses) {
+		this.root = root;
+		this.bytesRead = bytesRead;
+		this.singleByteReads = singleByteReads;
+		this.valueReads = valueReads;
+		this.bulkReads = bulkReads;
+		this.bulkBytes = bulkBytes;
+		this.seeks = seeks;
+		this.syscalls = syscalls;
+		this.fileSeeks = fileSeeks;
+		this.largeCopies = largeCopies;
+		this.cached = cached;
+		this.cacheHits = cacheHits;
+		this.cacheMisses = cacheMisses;
+	}
+	
+	/** Gets the name of the root file or buffer these metrics are for */
+	public String getRoot() {
+		return root;
+	}
+	
+	/** Gets the total number of bytes read, by every kind of read */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+	
+	/** Gets the number of calls which read a single byte */
+	public long getSingleByteReads() {
+		return singleByteReads;
+	}
+	
+	/** Gets the number of calls which read a single multi-byte value, such as an int or a double */
+	public long getValueReads() {
+		return valueReads;
+	}
+	
+	/** Gets the number of calls which read a run of bytes or an array of values at once */
+	public long getBulkReads() {
+		return bulkReads;
+	}
+	
+	/** Gets the number of bytes read by bulk reads */
+	public long getBulkBytes() {
+		return bulkBytes;
+	}
+	
+	/** Gets the total number of read calls of every kind */
+	public long getReadCalls() {
+		return singleByteReads + valueReads + bulkReads;
+	}
+	
+	/**
+	 * Gets the fraction of bytes which were read in bulk, from 0 to 1. Loaders which score low here are reading a byte
+	 * or a value at a time, and are the first place to look for a speedup.
+	 */
+	public double getBulkRatio() {
+		return (bytesRead==0) ? 0.0 : bulkBytes / (double) bytesRead;
+	}
+	
+	/** Gets the number of times a DataSlice's read pointer was moved explicitly */
+	public long getSeeks() {
+		return seeks;
+	}
+	
+	/**
+	 * Gets the number of read and seek system calls made against the root file. Only FileDataSlice roots report these;
+	 * reads which go through a BlockCache count each read which loads a block, including blocks read ahead.
+	 */
+	public long getSyscalls() {
+		return syscalls;
+	}
+	
+	/** Gets the number of calls to RandomAccessFile.seek on the root file */
+	public long getFileSeeks() {
+		return fileSeeks;
+	}
+	
+	/** Gets the number of copies larger than the large copy threshold */
+	public long getLargeCopies() {
+		return largeCopies;
+	}
+	
+	/** Returns true if the root file is read through a BlockCache */
+	public boolean isCached() {
+		return cached;
+	}
+	
+	public long getCacheHits() {
+		return cacheHits;
+	}
+	
+	public long getCacheMisses() {
+		return cacheMisses;
+	}
+	
+	/**
+	 * Gets the fraction of BlockCache lookups which were hits, from 0 to 1, or NaN if there's no cache or it hasn't been
+	 * used. The cache's counts cover every file read through it, not just this root, and reads which land in the block
+	 * a FileDataSlice read last never reach the cache, so a single sequential pass shows up as all misses.
+	 */
+	public double getCacheHitRate() {
+		long total = cacheHits+cacheMisses;
+		return (total==0) ? Double.NaN : cacheHits / (double) total;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		result.append(root).append(": ").append(bytesRead).append(" bytes in ").append(getReadCalls()).append(" reads (")
+				.append(singleByteReads).append(" single-byte, ").append(valueReads).append(" value, ").append(bulkReads)
+				.append(" bulk; ").append(String.format("%.1f", getBulkRatio()*100)).append("% bulk), ")
+				.append(seeks).append(" seeks, ").append(syscalls).append(" syscalls, ").append(fileSeeks).append(" file seeks");
+		if (cached) result.append(", cache hit rate ").append(String.format("%.1f", getCacheHitRate()*100)).append('%');
+		return result.toString();
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event for a copy out of an instrumented DataSlice which was larger than the instrumentation's large copy
+ * threshold.
+ */
+@Name("com.playsawdust.chipper.glow.io.LargeCopy")
+@Label("Large Copy")
+@Category({ "Glow", "IO" })
+@Description("A copy out of a DataSlice larger than the large copy threshold")
+class LargeCopyEvent extends jdk.jfr.Event {
+	@Label("Root")
+	String root;
+	
+	@Label("Offset")
+	long offset;
+	
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+}
@@ -0,0 +1,38 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A JFR event for a read from an instrumented DataSlice which took longer than the threshold, 10ms unless the
+ * recording's settings say otherwise.
+ */
+@Name("com.playsawdust.chipper.glow.io.SlowRead")
+@Label("Slow Read")
+@Category({ "Glow", "IO" })
+@Description("A DataSlice read which took longer than the threshold")
+@Threshold("10 ms")
+class SlowReadEvent extends jdk.jfr.Event {
+	@Label("Root")
+	String root;
+	
+	@Label("Offset")
+	long offset;
+	
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+}
@@ -0,0 +1,30 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.riff;
+
+import java.io.IOException;
+
+/**
+ * Checks the checksum of a chunk body against whatever the caller expects it to be, such as a value recorded in a
+ * manifest or database when the file was written.
+ * @see RiffInputStream#setVerification(com.playsawdust.chipper.glow.io.ChecksumAlgorithm, ChunkVerifier)
+ * @see ListRiffChunk#verify(com.playsawdust.chipper.glow.io.ChecksumAlgorithm, ChunkVerifier)
+ */
+@FunctionalInterface
+public interface ChunkVerifier {
+	/**
+	 * Called once for each non-list chunk, with the checksum of its entire body.
+	 * @param tag the chunk's tag
+	 * @param size the size of the chunk's body in bytes
+	 * @param checksum the checksum of the chunk's body
+	 * @throws IOException to reject the chunk
+	 */
+	void verify(String tag, long size, long checksum) throws IOException;
+}
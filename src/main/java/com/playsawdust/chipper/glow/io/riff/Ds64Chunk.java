@@ -0,0 +1,83 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.riff;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.playsawdust.chipper.glow.io.DataSlice;
+
+/**
+ * The "ds64" chunk which begins every RF64 and BW64 file. A 32-bit size field can't describe a chunk of 4GiB or more,
+ * so such chunks have 0xFFFFFFFF in their size field, and their real 64-bit size is recorded here instead.
+ */
+public class Ds64Chunk extends RiffChunk {
+	/** The value found in a 32-bit size field when the real size is recorded in the ds64 chunk */
+	public static final long SIZE_PLACEHOLDER = 0xFFFFFFFFL;
+	
+	protected final long riffSize;
+	protected final long dataSize;
+	protected final long sampleCount;
+	protected final Map<Integer, Long> table = new HashMap<>();
+	
+	public Ds64Chunk(String tag, DataSlice contents) throws IOException {
+		this(FourCC.of(tag), contents);
+	}
+	
+	public Ds64Chunk(int fourCC, DataSlice contents) throws IOException {
+		super(fourCC, contents);
+		if (contents.length()<28) throw new IOException("ds64 chunk is too short ("+contents.length()+" bytes)");
+		DataSlice cursor = contents.duplicate();
+		cursor.seek(0L);
+		cursor.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+		riffSize = cursor.readI64s();
+		dataSize = cursor.readI64s();
+		sampleCount = cursor.readI64s();
+		
+		long tableLength = cursor.readI32s() & 0xFFFFFFFFL;
+		for(long i=0; i<tableLength && cursor.position()+12<=cursor.length(); i++) {
+			int chunkTag = FourCC.read(cursor);
+			long chunkSize = cursor.readI64s();
+			table.putIfAbsent(chunkTag, chunkSize);
+		}
+	}
+	
+	/** Gets the real size of the outermost RF64 or BW64 chunk */
+	public long getRiffSize() {
+		return riffSize;
+	}
+	
+	/** Gets the real size of the "data" chunk */
+	public long getDataSize() {
+		return dataSize;
+	}
+	
+	public long getSampleCount() {
+		return sampleCount;
+	}
+	
+	/**
+	 * Gets the real size of the first chunk with the specified tag, or -1 if this ds64 chunk doesn't record it.
+	 */
+	public long getChunkSize(String tag) {
+		return getChunkSize(FourCC.of(tag));
+	}
+	
+	/**
+	 * Gets the real size of the first chunk with the specified packed tag, or -1 if this ds64 chunk doesn't record it.
+	 */
+	public long getChunkSize(int fourCC) {
+		if (fourCC==FourCC.DATA) return dataSize;
+		Long result = table.get(fourCC);
+		return (result==null) ? -1L : result;
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.riff;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+
+import com.playsawdust.chipper.glow.io.DataSlice;
+
+/**
+ * Four-character codes, such as RIFF chunk tags, packed into an int with the first character in the highest byte.
+ * Packed codes can be compared with {@code ==} and used as {@code switch} cases, and reading one from a file creates
+ * no objects at all.
+ *
+ * <p>Codes are normalized the same way {@link RiffInputStream#readTag(InputStream)} normalizes tags: a NUL ends the
+ * code, and it's padded back out to four characters with spaces. So "fmt ", "fmt\0", and "fmt" all pack to
+ * {@link #FMT}.
+ */
+public final class FourCC {
+	public static final int RIFF = 0x52494646;
+	public static final int RIFX = 0x52494658;
+	public static final int RF64 = 0x52463634;
+	public static final int BW64 = 0x42573634;
+	public static final int LIST = 0x4C495354;
+	public static final int JUNK = 0x4A554E4B;
+	/** "ds64" */
+	public static final int DS64 = 0x64733634;
+	/** "data" */
+	public static final int DATA = 0x64617461;
+	/** "fmt " */
+	public static final int FMT = 0x666D7420;
+	
+	private FourCC() {}
+	
+	/**
+	 * Packs a code of up to four characters, padding it with spaces.
+	 * @throws IllegalArgumentException if the code is longer than four characters, or isn't Latin-1
+	 */
+	public static int of(String code) {
+		if (code.length()>4) throw new IllegalArgumentException("'"+code+"' is longer than four characters");
+		int result = 0;
+		for(int i=0; i<4; i++) {
+			int ch = (i<code.length()) ? code.charAt(i) : ' ';
+			if (ch>0xFF) throw new IllegalArgumentException("'"+code+"' isn't Latin-1");
+			result = (result << 8) | ch;
+		}
+		return normalize(result);
+	}
+	
+	/**
+	 * Unpacks a code into a String, without any trailing spaces.
+	 */
+	public static String toString(int fourCC) {
+		int length = 4;
+		while(length>0 && ((fourCC >>> (32-length*8)) & 0xFF)==' ') length--;
+		char[] chars = new char[length];
+		for(int i=0; i<length; i++) {
+			chars[i] = (char) ((fourCC >>> (24-i*8)) & 0xFF);
+		}
+		return new String(chars);
+	}
+	
+	/**
+	 * Reads a code from the next four bytes of an InputStream.
+	 * @throws EOFException if the stream ends first
+	 */
+	public static int read(InputStream in) throws IOException {
+		int result = 0;
+		for(int i=0; i<4; i++) {
+			int ch = in.read();
+			if (ch<0) throw new EOFException();
+			result = (result << 8) | ch;
+		}
+		return normalize(result);
+	}
+	
+	/**
+	 * Reads a code at the DataSlice's read pointer, and advances past it. The slice's ByteOrder doesn't matter.
+	 */
+	public static int read(DataSlice in) throws IOException {
+		int result = in.readI32s();
+		return normalize((in.getByteOrder()==ByteOrder.BIG_ENDIAN) ? result : Integer.reverseBytes(result));
+	}
+	
+	/**
+	 * Reads a code from four bytes of an array.
+	 */
+	public static int read(byte[] bytes, int offset) {
+		return normalize(((bytes[offset] & 0xFF) << 24) | ((bytes[offset+1] & 0xFF) << 16) | ((bytes[offset+2] & 0xFF) << 8) | (bytes[offset+3] & 0xFF));
+	}
+	
+	/**
+	 * Normalizes four raw bytes packed into an int, by replacing a NUL, and everything after it, with spaces.
+	 */
+	public static int normalize(int fourCC) {
+		for(int shift=24; shift>=0; shift-=8) {
+			if (((fourCC >>> shift) & 0xFF)==0) {
+				int mask = (int) ((1L << (shift+8)) - 1); //This byte and everything below it
+				return (fourCC & ~mask) | (0x20202020 & mask);
+			}
+		}
+		return fourCC;
+	}
+	
+	/**
+	 * Returns true if chunks with the specified code contain a list type followed by child chunks.
+	 */
+	public static boolean isList(int fourCC) {
+		switch(fourCC) {
+			case RIFF: case RIFX: case RF64: case BW64: case LIST:
+				return true;
+			default:
+				return false;
+		}
+	}
+	
+	/**
+	 * Returns true if a code looks like a real chunk tag: one to four printable ASCII characters.
+	 */
+	public static boolean isPlausible(int fourCC) {
+		if (fourCC==0x20202020) return false;
+		for(int shift=0; shift<32; shift+=8) {
+			int ch = (fourCC >>> shift) & 0xFF;
+			if (ch<0x20 || ch>0x7E) return false;
+		}
+		return true;
+	}
+}
@@ -10,43 +10,541 @@
 package com.playsawdust.chipper.glow.io.riff;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
 
 import com.google.common.collect.ImmutableList;
+import com.playsawdust.chipper.glow.io.ChecksumAlgorithm;
 import com.playsawdust.chipper.glow.io.DataSlice;
 
-public class ListRiffChunk extends RiffChunk {
+/**
+ * A RIFF or LIST chunk, whose contents are a four-character list type followed by any number of child chunks.
+ *
+ * <p>Sizes are unsigned 32-bit values, little-endian in RIFF files and big-endian in RIFX files. RF64 and BW64 files
+ * can go past 4GiB: their first child is a {@link Ds64Chunk}, and any later chunk whose size field holds 0xFFFFFFFF
+ * takes its real size from there. Chunks with an odd size are followed by a pad byte, which is skipped.
+ *
+ * <p>By default, every child (and every child's child) is parsed up front. In lazy mode, children are only parsed
+ * when they're asked for, and only as far as needed: iterating stops reading headers when the iterator stops, and
+ * child lists are themselves lazy, so their contents aren't touched until they're asked for too.
+ *
+ * <p>Normally, a child whose header is damaged, or whose size runs past the end of its list, ends the list: it and
+ * everything after it are dropped. In recovery mode, the rest of the list is searched for the next header with a
+ * plausible tag and a size which fits, and which is followed by another such header or by the end of the list.
+ * Parsing carries on from there.
+ */
+public class ListRiffChunk extends RiffChunk implements Iterable<RiffChunk> {
+	private static final int RESYNC_BLOCK_SIZE = 64 * 1024;
+	
+	protected final int listFourCC;
+	/** The list type as a String, which is only created once it's asked for */
 	protected String listType;
+	protected final boolean lazy;
+	protected final boolean recover;
+	/** The number of bytes skipped over while looking for the next good header in recovery mode */
+	protected long skippedBytes = 0L;
+	/** Holds each block of the list while recovery mode searches it, for slices which can't be viewed directly */
+	protected byte[] resyncBlock;
+	/** The byte order of the size fields in this list; children of a RIFX chunk are big-endian */
+	protected final ByteOrder sizeOrder;
+	/** The ds64 chunk which gives the real size of oversized chunks in an RF64 or BW64 file, if there is one */
+	protected Ds64Chunk ds64;
+	/** Decides which RiffChunk subclass each non-list child is created as */
+	protected final RiffChunkRegistry registry;
+	/** A private cursor over the contents, so that parsing never disturbs the read pointer of getChunkData() */
+	protected final DataSlice cursor;
 	protected ArrayList<RiffChunk> children = new ArrayList<>();
+	/** The offset of each parsed child's data within this chunk's contents, in the same order as children */
+	protected long[] childOffsets = new long[8];
+	protected boolean fullyParsed = false;
+	protected ImmutableList<RiffChunk> childView;
+	protected TagIndex tagIndex;
 	
 	public ListRiffChunk(String tag, DataSlice contents) throws IOException {
-		super(tag, contents);
+		this(tag, contents, false);
+	}
+	
+	/**
+	 * Creates a ListRiffChunk, optionally in lazy mode.
+	 * @param tag      the tag of this chunk, usually "RIFF" or "LIST"
+	 * @param contents this chunk's data, starting with the list type
+	 * @param lazy     if true, children are parsed on demand instead of all at once
+	 */
+	public ListRiffChunk(String tag, DataSlice contents, boolean lazy) throws IOException {
+		this(tag, contents, lazy, false);
+	}
+	
+	/**
+	 * Creates a ListRiffChunk, optionally in lazy mode, and optionally in recovery mode.
+	 * @param recover if true, damaged children are skipped over instead of ending the list
+	 */
+	public ListRiffChunk(String tag, DataSlice contents, boolean lazy, boolean recover) throws IOException {
+		this(FourCC.of(tag), contents, lazy, recover, ByteOrder.LITTLE_ENDIAN, null, RiffChunkRegistry.DEFAULT);
+	}
+	
+	/**
+	 * Creates a ListRiffChunk nested inside another list, which shares that list's size byte order and ds64 chunk.
+	 */
+	protected ListRiffChunk(String tag, DataSlice contents, boolean lazy, ByteOrder sizeOrder, Ds64Chunk ds64) throws IOException {
+		this(tag, contents, lazy, false, sizeOrder, ds64);
+	}
+	
+	protected ListRiffChunk(String tag, DataSlice contents, boolean lazy, boolean recover, ByteOrder sizeOrder, Ds64Chunk ds64) throws IOException {
+		this(FourCC.of(tag), contents, lazy, recover, sizeOrder, ds64, RiffChunkRegistry.DEFAULT);
+	}
+	
+	/**
+	 * Creates a ListRiffChunk whose non-list children, at any depth, are created through the specified registry.
+	 */
+	protected ListRiffChunk(int fourCC, DataSlice contents, boolean lazy, boolean recover, ByteOrder sizeOrder, Ds64Chunk ds64, RiffChunkRegistry registry) throws IOException {
+		super(fourCC, contents);
+		this.lazy = lazy;
+		this.recover = recover;
+		this.sizeOrder = (fourCC==FourCC.RIFX) ? ByteOrder.BIG_ENDIAN : sizeOrder;
+		this.ds64 = ds64;
+		this.registry = registry;
 		contents.seek(0L);
-		contents.setByteOrder(ByteOrder.LITTLE_ENDIAN);
-		listType = RiffInputStream.readTag(contents);
+		contents.setByteOrder(this.sizeOrder);
+		listFourCC = FourCC.read(contents);
 		
-		try {
-			while(contents.position()<contents.length()) {
-				String subchunkTag = RiffInputStream.readTag(contents);
-				int chunkSize = contents.readI32s();
-				DataSlice chunkData = contents.slice(chunkSize);
-				if (subchunkTag.equals("RIFF") || subchunkTag.equals("LIST")) {
-					children.add(new ListRiffChunk(subchunkTag, chunkData));
-				} else {
-					children.add(new RiffChunk(subchunkTag, chunkData));
-				}
+		cursor = contents.duplicate();
+		if (!lazy) parseAll();
+	}
+	
+	/**
+	 * Parses a whole RIFF, RIFX, RF64, or BW64 file, which must start with the outermost chunk header. If the file is
+	 * shorter than its header claims, the outermost chunk is cut short to fit.
+	 * @param file the contents of the file
+	 * @param lazy if true, children are parsed on demand instead of all at once
+	 */
+	public static ListRiffChunk parse(DataSlice file, boolean lazy) throws IOException {
+		return parse(file, lazy, false);
+	}
+	
+	/**
+	 * Parses a whole RIFF, RIFX, RF64, or BW64 file, optionally in recovery mode, which salvages what it can from
+	 * damaged files.
+	 * @see #parse(DataSlice, boolean)
+	 */
+	public static ListRiffChunk parse(DataSlice file, boolean lazy, boolean recover) throws IOException {
+		return parse(file, lazy, recover, RiffChunkRegistry.DEFAULT);
+	}
+	
+	/**
+	 * Parses a whole RIFF, RIFX, RF64, or BW64 file, creating each non-list chunk through the specified registry.
+	 * @see #parse(DataSlice, boolean)
+	 */
+	public static ListRiffChunk parse(DataSlice file, boolean lazy, boolean recover, RiffChunkRegistry registry) throws IOException {
+		DataSlice header = file.duplicate();
+		header.seek(0L);
+		int tag = FourCC.read(header);
+		if (!FourCC.isList(tag)) throw new IOException("Not a RIFF file (found '"+FourCC.toString(tag)+"')");
+		
+		header.setByteOrder((tag==FourCC.RIFX) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		long size = header.readI32s() & 0xFFFFFFFFL;
+		if (size==Ds64Chunk.SIZE_PLACEHOLDER && (tag==FourCC.RF64 || tag==FourCC.BW64) && header.length()>=28) {
+			//The ds64 chunk comes straight after the form type, and its first field is the real size of this chunk
+			header.seek(12L);
+			if (FourCC.read(header)==FourCC.DS64) {
+				header.seek(20L);
+				size = header.readI64s();
 			}
-		} catch (IOException ex) {} //Catch exception in case of a truncated chunk, which will be dropped.
+		}
+		
+		size = Math.max(0, Math.min(size, header.length()-8));
+		header.seek(8L);
+		return new ListRiffChunk(tag, header.slice(size), lazy, recover, ByteOrder.LITTLE_ENDIAN, null, registry);
+	}
+	
+	/**
+	 * Returns true if chunks with the specified tag contain a list type followed by child chunks.
+	 */
+	public static boolean isListTag(String tag) {
+		switch(tag) {
+			case "RIFF": case "RIFX": case "RF64": case "BW64": case "LIST":
+				return true;
+			default:
+				return false;
+		}
 	}
 	
 	public String getListType() {
+		if (listType==null) listType = FourCC.toString(listFourCC);
 		return listType;
 	}
 	
+	/**
+	 * Gets this list's list type packed into an int.
+	 * @see FourCC
+	 */
+	public int getListFourCC() {
+		return listFourCC;
+	}
+	
+	public RiffChunkRegistry getRegistry() {
+		return registry;
+	}
+	
+	public boolean isLazy() {
+		return lazy;
+	}
+	
+	public boolean isRecovering() {
+		return recover;
+	}
+	
+	/**
+	 * Gets the number of bytes of this list, not counting child lists, which recovery mode skipped over because they
+	 * didn't hold a readable chunk. Anything other than zero means the list was damaged.
+	 */
+	public long getSkippedBytes() {
+		return skippedBytes;
+	}
+	
+	/**
+	 * Gets the byte order of the size fields in this list. This is big-endian inside RIFX files, and little-endian
+	 * everywhere else.
+	 */
+	public ByteOrder getSizeOrder() {
+		return sizeOrder;
+	}
+	
+	/**
+	 * Gets the ds64 chunk which applies to this list, or null if this list isn't part of an RF64 or BW64 file. In a
+	 * lazy list the ds64 chunk is only found once the first child has been parsed.
+	 */
+	public Ds64Chunk getDs64() {
+		return ds64;
+	}
+	
+	/**
+	 * Gets every child of this chunk. The returned list is immutable, and the same list is returned every time.
+	 */
 	public List<RiffChunk> getChildren() {
-		return ImmutableList.copyOf(children);
+		if (childView==null) {
+			parseAllUnchecked();
+			childView = ImmutableList.copyOf(children);
+		}
+		return childView;
+	}
+	
+	/**
+	 * Iterates over the children of this chunk. In lazy mode, each header is only read once the iterator reaches it.
+	 * @throws UncheckedIOException from hasNext or next if there was a problem reading a header
+	 */
+	@Override
+	public Iterator<RiffChunk> iterator() {
+		return new Iterator<RiffChunk>() {
+			private int index = 0;
+			
+			@Override
+			public boolean hasNext() {
+				try {
+					return index<children.size() || parseNext();
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}
+			
+			@Override
+			public RiffChunk next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				return children.get(index++);
+			}
+		};
+	}
+	
+	/**
+	 * Creates a cursor which walks this list's children without creating a RiffChunk for each one. Children which have
+	 * already been parsed are read again, straight from the data.
+	 */
+	public RiffChunkCursor cursor() throws IOException {
+		return new RiffChunkCursor(contents, sizeOrder, ds64);
+	}
+	
+	/**
+	 * Gets the first child with the specified tag, if there is one. Tags match with or without their trailing spaces,
+	 * so "fmt " and "fmt" find the same chunks.
+	 * @throws IllegalArgumentException if the tag is longer than four characters
+	 */
+	public Optional<RiffChunk> findFirst(String tag) throws IOException {
+		return findFirst(FourCC.of(tag));
+	}
+	
+	/**
+	 * Gets the first child with the specified packed tag, if there is one.
+	 * @see FourCC
+	 */
+	public Optional<RiffChunk> findFirst(int fourCC) throws IOException {
+		TagIndex index = getTagIndex();
+		int group = index.find(fourCC);
+		return (group<0) ? Optional.empty() : Optional.of(children.get(index.positions[index.starts[group]]));
+	}
+	
+	/**
+	 * Gets every child with the specified tag, in the order they appear. Tags match with or without their trailing
+	 * spaces.
+	 * @throws IllegalArgumentException if the tag is longer than four characters
+	 */
+	public List<RiffChunk> findAll(String tag) throws IOException {
+		return findAll(FourCC.of(tag));
+	}
+	
+	/**
+	 * Gets every child with the specified packed tag, in the order they appear.
+	 * @see FourCC
+	 */
+	public List<RiffChunk> findAll(int fourCC) throws IOException {
+		TagIndex index = getTagIndex();
+		int group = index.find(fourCC);
+		if (group<0) return ImmutableList.of();
+		int start = index.starts[group];
+		int end = index.starts[group+1];
+		ImmutableList.Builder<RiffChunk> result = ImmutableList.builderWithExpectedSize(end-start);
+		for(int i=start; i<end; i++) {
+			result.add(children.get(index.positions[i]));
+		}
+		return result.build();
+	}
+	
+	/**
+	 * Checksums every non-list chunk inside this list, at any depth, and passes each checksum to the verifier in the
+	 * order the chunks appear. This matches what {@link RiffInputStream#setVerification(ChecksumAlgorithm, ChunkVerifier)}
+	 * does for a streamed file, and, since each body is read straight out of its backing storage, costs about the same
+	 * as reading the file once.
+	 * @throws IOException if a header couldn't be read, or if the verifier rejected a chunk
+	 */
+	public void verify(ChecksumAlgorithm algorithm, ChunkVerifier verifier) throws IOException {
+		parseAll();
+		for(RiffChunk child : children) {
+			if (child instanceof ListRiffChunk) {
+				((ListRiffChunk) child).verify(algorithm, verifier);
+			} else {
+				verifier.verify(child.getChunkType(), child.getChunkData().length(), child.checksum(algorithm));
+			}
+		}
+	}
+	
+	/**
+	 * Gets the offset of the specified child's data, relative to the start of this chunk's data.
+	 * @param index the position of the child in {@link #getChildren()}
+	 */
+	public long getChildOffset(int index) throws IOException {
+		while(index>=children.size()) {
+			if (!parseNext()) throw new IndexOutOfBoundsException(index);
+		}
+		return childOffsets[index];
+	}
+	
+	/**
+	 * Builds the tag index on first use. Building it means reading every child header, but no child's contents.
+	 */
+	protected TagIndex getTagIndex() throws IOException {
+		if (tagIndex==null) {
+			parseAll();
+			tagIndex = new TagIndex(children);
+		}
+		return tagIndex;
+	}
+	
+	protected void parseAll() throws IOException {
+		while(parseNext());
+	}
+	
+	private void parseAllUnchecked() {
+		try {
+			parseAll();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+	
+	/**
+	 * Parses the next child header, if there is one, and adds the child to the children list.
+	 * @return true if a child was added, or false if there are no more children.
+	 */
+	protected boolean parseNext() throws IOException {
+		if (fullyParsed) return false;
+		
+		long length = cursor.length();
+		int subchunkTag;
+		long chunkSize;
+		long dataOffset;
+		while(true) {
+			if (cursor.position()+8 > length) {
+				fullyParsed = true;
+				return false;
+			}
+			
+			long headerOffset = cursor.position();
+			subchunkTag = FourCC.read(cursor);
+			chunkSize = readChunkSize(subchunkTag, cursor.readI32s() & 0xFFFFFFFFL, cursor.position());
+			dataOffset = cursor.position();
+			if (dataOffset+chunkSize <= length && (!recover || FourCC.isPlausible(subchunkTag))) break;
+			
+			//Truncated or damaged chunk. Normally it and everything after it are dropped; in recovery mode, look for
+			//the next good header instead.
+			if (!recover || !resync(headerOffset+1)) {
+				fullyParsed = true;
+				return false;
+			}
+		}
+		
+		DataSlice chunkData = cursor.slice(chunkSize);
+		if ((chunkSize & 1)!=0 && cursor.position()<length) cursor.skip(1);
+		
+		if (children.size()==childOffsets.length) childOffsets = Arrays.copyOf(childOffsets, childOffsets.length*2);
+		childOffsets[children.size()] = dataOffset;
+		RiffChunk child = createChild(subchunkTag, chunkData);
+		if (child instanceof Ds64Chunk && ds64==null) ds64 = (Ds64Chunk) child;
+		children.add(child);
+		return true;
+	}
+	
+	/**
+	 * Resolves a size read from a chunk header, looking up placeholder sizes in the ds64 chunk.
+	 */
+	private long readChunkSize(int tag, long size, long dataOffset) throws IOException {
+		if (size==Ds64Chunk.SIZE_PLACEHOLDER && ds64!=null) {
+			long realSize = ds64.getChunkSize(tag);
+			//Writers which can't seek back often leave the last chunk's size out entirely, so let it run to the end
+			return (realSize>=0) ? realSize : cursor.length()-dataOffset;
+		}
+		return size;
+	}
+	
+	/**
+	 * Searches forward from {@code from} for the next chunk header with a plausible tag and a size which fits in this
+	 * list, and which is followed either by another such header or by the end of the list, and moves the cursor to it.
+	 * The list is read a block at a time, into the same buffer every time.
+	 * @return true if a header was found
+	 */
+	private boolean resync(long from) throws IOException {
+		long length = cursor.length();
+		
+		//Blocks overlap by seven bytes, so a header which starts near the end of one block is found in the next
+		for(long blockStart=from; blockStart+8<=length; blockStart+=RESYNC_BLOCK_SIZE-7) {
+			int blockLength = (int) Math.min(RESYNC_BLOCK_SIZE, length-blockStart);
+			ByteBuffer block;
+			Optional<ByteBuffer> view = cursor.tryAsByteBuffer(blockStart, blockLength);
+			if (view.isPresent()) {
+				block = view.get();
+			} else {
+				if (resyncBlock==null) resyncBlock = new byte[RESYNC_BLOCK_SIZE];
+				cursor.read(blockStart, resyncBlock, 0, blockLength);
+				block = ByteBuffer.wrap(resyncBlock, 0, blockLength);
+			}
+			block.order(ByteOrder.BIG_ENDIAN);
+			
+			for(int i=0; i+8<=blockLength; i++) {
+				int first = block.get(i) & 0xFF;
+				if (first<0x20 || first>0x7E) continue; //Cheap test which rules out most positions
+				long candidate = blockStart+i;
+				long end = chunkEnd(block, i, candidate, length);
+				if (end>=0 && isFollowedByHeader(block, blockStart, candidate, end, length)) {
+					skippedBytes += candidate-(from-1);
+					cursor.seek(candidate);
+					return true;
+				}
+			}
+			if (blockStart+blockLength>=length) break;
+		}
+		return false;
+	}
+	
+	/**
+	 * Checks the header at {@code position} in the block, which is at {@code offset} in this list.
+	 * @return the offset of the end of the chunk's data, or -1 if the tag isn't plausible or the size doesn't fit in
+	 *         this list
+	 */
+	private long chunkEnd(ByteBuffer block, int position, long offset, long length) throws IOException {
+		int tag = FourCC.normalize(block.getInt(position));
+		if (!FourCC.isPlausible(tag)) return -1L;
+		int rawSize = block.getInt(position+4);
+		if (sizeOrder==ByteOrder.LITTLE_ENDIAN) rawSize = Integer.reverseBytes(rawSize);
+		long end = offset+8+readChunkSize(tag, rawSize & 0xFFFFFFFFL, offset+8);
+		return (end<=length) ? end : -1L;
+	}
+	
+	/**
+	 * Returns true if the chunk at {@code offset}, whose data ends at {@code end}, is followed by another good header
+	 * after any pad byte, or by the end of this list.
+	 */
+	private boolean isFollowedByHeader(ByteBuffer block, long blockStart, long offset, long end, long length) throws IOException {
+		long next = end+((end-offset-8) & 1);
+		if (next+8 > length) return true; //Too little left for another header, which parseNext treats as the end
+		
+		if (next+8 <= blockStart+block.limit()) return chunkEnd(block, (int) (next-blockStart), next, length)>=0;
+		byte[] header = new byte[8];
+		cursor.read(next, header, 0, 8);
+		return chunkEnd(ByteBuffer.wrap(header), 0, next, length)>=0;
+	}
+	
+	/**
+	 * Creates the object representing one child chunk. Child lists inherit this list's lazy and recovery settings, size
+	 * byte order, ds64 chunk, and registry; everything else is created through the registry.
+	 */
+	protected RiffChunk createChild(int tag, DataSlice data) throws IOException {
+		if (FourCC.isList(tag)) {
+			return new ListRiffChunk(tag, data, lazy, recover, sizeOrder, ds64, registry);
+		} else {
+			return registry.create(tag, data);
+		}
+	}
+	
+	/**
+	 * The position of each child in the children list, grouped by packed tag. Looking a tag up is a binary search over
+	 * the distinct tags, and nothing is boxed.
+	 */
+	protected static final class TagIndex {
+		/** The distinct tags, in ascending order */
+		protected final int[] tags;
+		/** Where each tag's group starts in positions, plus one more entry for where the last group ends */
+		protected final int[] starts;
+		/** Positions of children in the children list, grouped by tag, and in order within each group */
+		protected final int[] positions;
+		
+		protected TagIndex(List<RiffChunk> children) {
+			//Sorting tag and position packed together groups by tag while keeping each group in order
+			long[] entries = new long[children.size()];
+			for(int i=0; i<entries.length; i++) {
+				entries[i] = ((long) children.get(i).getFourCC() << 32) | i;
+			}
+			Arrays.sort(entries);
+			
+			int[] tags = new int[entries.length];
+			int[] starts = new int[entries.length+1];
+			positions = new int[entries.length];
+			int groups = 0;
+			for(int i=0; i<entries.length; i++) {
+				int tag = (int) (entries[i] >> 32);
+				if (groups==0 || tags[groups-1]!=tag) {
+					tags[groups] = tag;
+					starts[groups] = i;
+					groups++;
+				}
+				positions[i] = (int) entries[i];
+			}
+			starts[groups] = entries.length;
+			this.tags = Arrays.copyOf(tags, groups);
+			this.starts = Arrays.copyOf(starts, groups+1);
+		}
+		
+		/**
+		 * Finds the group for the specified tag.
+		 * @return the index of the group, or -1 if no child has the tag
+		 */
+		protected int find(int fourCC) {
+			int group = Arrays.binarySearch(tags, fourCC);
+			return (group<0) ? -1 : group;
+		}
 	}
 	
 }
@@ -0,0 +1,232 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.riff;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.playsawdust.chipper.glow.io.DataSlice;
+import com.playsawdust.chipper.glow.io.FileDataSlice;
+
+/**
+ * Hands every chunk in a RIFF tree to a visitor on a ForkJoinPool, so that chunks are processed in parallel.
+ *
+ * <p>The tree is walked on the calling thread, which only reads chunk headers; lists are parsed lazily as the walk
+ * reaches them. Each list is parsed in full before any of its children are visited, and isn't changed afterwards, so
+ * visitors may freely read the parent list they're given from any thread. Every chunk which isn't a list is visited
+ * exactly once, on a pool thread. The walker stops handing out
+ * chunks while too many bytes, or too many chunks, are still being visited, so a fast walk can't queue up the whole
+ * file at once.
+ *
+ * <p>Every visited chunk reads from the same underlying DataSlice, so it has to be safe to read from several threads
+ * at once. Arrays and memory mappings always are, and so are FileDataSlices which read through a BlockCache or are in
+ * concurrent mode. {@link #walk(DataSlice, RiffChunkVisitor)} switches a FileDataSlice into concurrent mode itself.
+ */
+public class ParallelRiffWalker {
+	public static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 256L << 20;
+	
+	protected final ForkJoinPool pool;
+	protected long maxInFlightBytes = DEFAULT_MAX_IN_FLIGHT_BYTES;
+	protected int maxInFlightChunks;
+	protected boolean ordered = true;
+	
+	/**
+	 * Creates a ParallelRiffWalker which runs on the common pool.
+	 */
+	public ParallelRiffWalker() {
+		this(ForkJoinPool.commonPool());
+	}
+	
+	public ParallelRiffWalker(ForkJoinPool pool) {
+		this.pool = pool;
+		this.maxInFlightChunks = pool.getParallelism()*4;
+	}
+	
+	/**
+	 * Sets the most bytes of chunk data which may be queued or being visited at once. A single chunk bigger than this
+	 * is still visited, but only once nothing else is in flight. The default is 256MiB.
+	 */
+	public void setMaxInFlightBytes(long bytes) {
+		if (bytes<=0) throw new IllegalArgumentException();
+		this.maxInFlightBytes = bytes;
+	}
+	
+	/**
+	 * Sets the most chunks which may be queued or being visited at once. The default is four per pool thread.
+	 */
+	public void setMaxInFlightChunks(int chunks) {
+		if (chunks<=0) throw new IllegalArgumentException();
+		this.maxInFlightChunks = chunks;
+	}
+	
+	/**
+	 * Sets whether results are returned in the order their chunks appear in the file, which is the default, or in the
+	 * order the visits finish. Visits can finish in any order either way.
+	 */
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+	
+	/**
+	 * Parses a whole RIFF file and visits every chunk in it. A FileDataSlice which isn't in concurrent mode is read
+	 * through a concurrent view of the same file.
+	 * @see ListRiffChunk#parse(DataSlice, boolean)
+	 */
+	public <T> List<T> walk(DataSlice file, RiffChunkVisitor<T> visitor) throws IOException {
+		if (file instanceof FileDataSlice && !((FileDataSlice) file).isConcurrent()) {
+			file = ((FileDataSlice) file).asConcurrent();
+		}
+		return walk(ListRiffChunk.parse(file, true), visitor);
+	}
+	
+	/**
+	 * Visits every chunk inside the list, descending into child lists.
+	 * @return what the visitor returned for each chunk
+	 * @throws IOException if a header couldn't be read, or the visitor threw one. Chunks which haven't been visited
+	 *                     yet when this happens are skipped.
+	 */
+	public <T> List<T> walk(ListRiffChunk list, RiffChunkVisitor<T> visitor) throws IOException {
+		List<Future<T>> futures = new ArrayList<>();
+		BlockingQueue<Future<T>> completed = new LinkedBlockingQueue<>();
+		//Kept per walk, so that nothing a failed walk leaves behind can hold up the next one
+		InFlight inFlight = new InFlight();
+		try {
+			submitAll(list, visitor, futures, completed, inFlight);
+			
+			List<T> results = new ArrayList<>(futures.size());
+			for(Future<T> future : futures) {
+				results.add(await(ordered ? future : completed.take()));
+			}
+			return Collections.unmodifiableList(results);
+		} catch (UncheckedIOException ex) {
+			//Lists throw these from their iterators when a header can't be read
+			throw ex.getCause();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} finally {
+			for(Future<T> future : futures) future.cancel(false);
+		}
+	}
+	
+	private <T> void submitAll(ListRiffChunk list, RiffChunkVisitor<T> visitor, List<Future<T>> futures,
+			BlockingQueue<Future<T>> completed, InFlight inFlight) throws IOException, InterruptedException {
+		//Visitors may read the list from pool threads, so finish parsing it, and build its lazily-created lookup tables,
+		//before any of them start. Nothing changes it after this.
+		List<RiffChunk> children = list.getChildren();
+		list.getTagIndex();
+		
+		for(RiffChunk chunk : children) {
+			if (chunk instanceof ListRiffChunk) {
+				submitAll((ListRiffChunk) chunk, visitor, futures, completed, inFlight);
+				continue;
+			}
+			
+			long bytes = chunk.getChunkData().length();
+			inFlight.acquire(bytes, maxInFlightBytes, maxInFlightChunks);
+			//Tasks are made here rather than by pool.submit, which would wrap any IOException in a RuntimeException
+			FutureTask<T> future = new FutureTask<>(() -> visitor.visit(list, chunk)) {
+				@Override
+				protected void done() {
+					//Runs once whether the visit finished, failed, or was cancelled before it started
+					inFlight.release(bytes);
+					completed.add(this);
+				}
+			};
+			try {
+				pool.execute(future);
+			} catch (RuntimeException ex) {
+				inFlight.release(bytes);
+				throw ex;
+			}
+			futures.add(future);
+			
+			//Stop early rather than walking the rest of the file if a visit has already failed
+			if (future.isDone()) await(future);
+		}
+	}
+	
+	private static <T> T await(Future<T> future) throws IOException, InterruptedException {
+		try {
+			return future.get();
+		} catch (CancellationException ex) {
+			throw new IOException("Chunk visit was cancelled", ex);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+	
+	/**
+	 * The bytes and chunks which one walk has queued or is visiting.
+	 */
+	private static class InFlight {
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition released = lock.newCondition();
+		private long bytes = 0L;
+		private int chunks = 0;
+		
+		/**
+		 * Waits until there's room for another chunk of the specified size.
+		 */
+		void acquire(long size, long maxBytes, int maxChunks) throws InterruptedException {
+			lock.lock();
+			try {
+				while(chunks>0 && (chunks>=maxChunks || bytes+size>maxBytes)) {
+					released.await();
+				}
+				bytes += size;
+				chunks++;
+			} finally {
+				lock.unlock();
+			}
+		}
+		
+		void release(long size) {
+			lock.lock();
+			try {
+				bytes -= size;
+				chunks--;
+				released.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Visits one chunk of a RIFF tree. Visits run on pool threads, several at a time.
+	 */
+	@FunctionalInterface
+	public interface RiffChunkVisitor<T> {
+		/**
+		 * @param parent the list the chunk was found in. It's fully parsed before any of its children are visited, so
+		 *               it's safe to read from here, although visitors mustn't move its data's read pointer.
+		 * @param chunk  the chunk to visit, which is never a list
+		 */
+		T visit(ListRiffChunk parent, RiffChunk chunk) throws IOException;
+	}
+}
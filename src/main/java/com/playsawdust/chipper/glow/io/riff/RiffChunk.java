@@ -9,23 +9,50 @@
 
 package com.playsawdust.chipper.glow.io.riff;
 
+import java.io.IOException;
+
+import com.playsawdust.chipper.glow.io.ChecksumAlgorithm;
 import com.playsawdust.chipper.glow.io.DataSlice;
 
 //Note: this is not a record for subclassing reasons
 public class RiffChunk {
+	protected final int fourCC;
+	/** The tag as a String, which is only created once it's asked for */
 	protected String tag;
 	protected DataSlice contents;
 	
 	public RiffChunk(String tag, DataSlice contents) {
+		this.fourCC = FourCC.of(tag);
 		this.tag = tag;
 		this.contents = contents;
 	}
 	
+	public RiffChunk(int fourCC, DataSlice contents) {
+		this.fourCC = fourCC;
+		this.contents = contents;
+	}
+	
 	public String getChunkType() {
+		if (tag==null) tag = FourCC.toString(fourCC);
 		return tag;
 	}
 	
+	/**
+	 * Gets this chunk's tag packed into an int, which can be compared against the constants in {@link FourCC} without
+	 * creating a String.
+	 */
+	public int getFourCC() {
+		return fourCC;
+	}
+	
 	public DataSlice getChunkData() {
 		return contents;
 	}
+	
+	/**
+	 * Calculates a checksum of this chunk's entire body. For a list, that includes the list type and every child.
+	 */
+	public long checksum(ChecksumAlgorithm algorithm) throws IOException {
+		return contents.checksum(0L, contents.length(), algorithm);
+	}
 }
@@ -0,0 +1,251 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.riff;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import com.playsawdust.chipper.glow.io.DataSlice;
+import com.playsawdust.chipper.glow.io.LightweightDataSlice;
+
+/**
+ * A forward-only walk over the children of a RIFF list which doesn't create any objects per chunk. Where a
+ * ListRiffChunk creates a RiffChunk and a DataSlice for every child, a cursor has one header and one body window,
+ * which are moved onto each child in turn by {@link #next()}. Child lists are walked with the cursor returned by
+ * {@link #enter()}, which is likewise reused every time, so walking a whole file takes one cursor per level of
+ * nesting.
+ *
+ * <p>Since everything is reused, the header values and the window from {@link #getData()} are only good until the
+ * next call to {@link #next()}. Use {@link #toChunk(RiffChunkRegistry)} to keep hold of a chunk. A child cursor is
+ * only good until its parent moves on.
+ *
+ * <p>As with a ListRiffChunk, placeholder sizes in RF64 and BW64 files are resolved through the ds64 chunk, and a
+ * child whose size runs past the end of its list ends the walk.
+ */
+public class RiffChunkCursor {
+	/** The list being walked, starting with its list type */
+	protected final LightweightDataSlice contents;
+	/** The body of the current chunk */
+	protected final LightweightDataSlice data;
+	protected ByteOrder sizeOrder;
+	protected Ds64Chunk ds64;
+	protected int listFourCC;
+	/** The offset in contents of the next chunk header */
+	protected long nextHeader;
+	
+	protected boolean onChunk = false;
+	protected int fourCC;
+	protected long size;
+	protected long dataOffset;
+	
+	/** The cursor handed out by enter(), created the first time it's needed */
+	protected RiffChunkCursor child;
+	
+	/**
+	 * Creates a cursor over the children of a list.
+	 * @param listContents the list chunk's data, starting with its list type
+	 * @param sizeOrder the byte order of size fields; little-endian, except inside RIFX files
+	 * @param ds64 the ds64 chunk which applies to this list, or null if there isn't one yet
+	 */
+	public RiffChunkCursor(DataSlice listContents, ByteOrder sizeOrder, Ds64Chunk ds64) throws IOException {
+		this.contents = new LightweightDataSlice(listContents, 0L, 0L);
+		this.data = new LightweightDataSlice(listContents, 0L, 0L);
+		reset(listContents, sizeOrder, ds64);
+	}
+	
+	/**
+	 * Opens a cursor over the children of the outermost chunk of a RIFF, RIFX, RF64, or BW64 file. If the file is
+	 * shorter than its header claims, the outermost chunk is cut short to fit.
+	 * @throws IOException if the file doesn't start with a list chunk
+	 */
+	public static RiffChunkCursor open(DataSlice file) throws IOException {
+		DataSlice header = file.duplicate();
+		header.seek(0L);
+		int tag = FourCC.read(header);
+		if (!FourCC.isList(tag)) throw new IOException("Not a RIFF file (found '"+FourCC.toString(tag)+"')");
+		
+		ByteOrder order = (tag==FourCC.RIFX) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+		header.setByteOrder(order);
+		long size = header.readI32s() & 0xFFFFFFFFL;
+		if (size==Ds64Chunk.SIZE_PLACEHOLDER && (tag==FourCC.RF64 || tag==FourCC.BW64) && header.length()>=28) {
+			//The ds64 chunk comes straight after the form type, and its first field is the real size of this chunk
+			header.seek(12L);
+			if (FourCC.read(header)==FourCC.DS64) {
+				header.seek(20L);
+				size = header.readI64s();
+			}
+		}
+		size = Math.max(0, Math.min(size, header.length()-8));
+		return new RiffChunkCursor(new LightweightDataSlice(file, 8L, size), order, null);
+	}
+	
+	/**
+	 * Moves this cursor, in place, onto the children of a different list. The next call to {@link #next()} returns
+	 * its first child.
+	 * @see #RiffChunkCursor(DataSlice, ByteOrder, Ds64Chunk)
+	 */
+	public void reset(DataSlice listContents, ByteOrder sizeOrder, Ds64Chunk ds64) throws IOException {
+		listContents.resliceInto(contents, 0L, listContents.length());
+		contents.setByteOrder(sizeOrder);
+		this.sizeOrder = sizeOrder;
+		this.ds64 = ds64;
+		this.onChunk = false;
+		if (contents.length()>=4) {
+			listFourCC = FourCC.read(contents);
+			nextHeader = 4L;
+		} else {
+			listFourCC = 0;
+			nextHeader = contents.length();
+		}
+	}
+	
+	/**
+	 * Moves on to the next child.
+	 * @return true if there is one, or false if the list has ended
+	 */
+	public boolean next() throws IOException {
+		long length = contents.length();
+		if (nextHeader+8 > length) {
+			onChunk = false;
+			return false;
+		}
+		
+		contents.seek(nextHeader);
+		int tag = FourCC.read(contents);
+		long chunkSize = contents.readI32s() & 0xFFFFFFFFL;
+		long offset = nextHeader+8;
+		if (chunkSize==Ds64Chunk.SIZE_PLACEHOLDER && ds64!=null) {
+			long realSize = ds64.getChunkSize(tag);
+			chunkSize = (realSize>=0) ? realSize : length-offset;
+		}
+		if (offset+chunkSize > length) {
+			//Truncated or damaged, which ends the list
+			nextHeader = length;
+			onChunk = false;
+			return false;
+		}
+		
+		fourCC = tag;
+		size = chunkSize;
+		dataOffset = offset;
+		nextHeader = offset + chunkSize + (chunkSize & 1);
+		contents.resliceInto(data, offset, chunkSize);
+		onChunk = true;
+		
+		if (tag==FourCC.DS64 && ds64==null && chunkSize>=28) {
+			//Only happens once per file, and later sizes can't be resolved without it
+			ds64 = new Ds64Chunk(tag, contents.slice(offset, chunkSize));
+		}
+		return true;
+	}
+	
+	/**
+	 * Gets the list type of the list this cursor is walking.
+	 * @see FourCC
+	 */
+	public int getListFourCC() {
+		return listFourCC;
+	}
+	
+	public String getListType() {
+		return FourCC.toString(listFourCC);
+	}
+	
+	/**
+	 * Gets the current chunk's tag.
+	 * @see FourCC
+	 */
+	public int getFourCC() {
+		checkChunk();
+		return fourCC;
+	}
+	
+	/**
+	 * Gets the current chunk's tag as a String. Comparing {@link #getFourCC()} against a constant is cheaper.
+	 */
+	public String getChunkType() {
+		checkChunk();
+		return FourCC.toString(fourCC);
+	}
+	
+	/**
+	 * Gets the size of the current chunk's body in bytes, not counting the header or any pad byte.
+	 */
+	public long getChunkSize() {
+		checkChunk();
+		return size;
+	}
+	
+	/**
+	 * Gets the offset of the current chunk's body from the start of the list's contents.
+	 */
+	public long getDataOffset() {
+		checkChunk();
+		return dataOffset;
+	}
+	
+	/**
+	 * Returns true if the current chunk is a list, which can be walked with {@link #enter()}.
+	 */
+	public boolean isList() {
+		checkChunk();
+		return FourCC.isList(fourCC);
+	}
+	
+	/**
+	 * Gets a window onto the current chunk's body. The same window is moved onto each chunk in turn, starting with its
+	 * read pointer at zero, so it mustn't be kept past the next call to {@link #next()}.
+	 */
+	public DataSlice getData() {
+		checkChunk();
+		return data;
+	}
+	
+	/**
+	 * Gets the ds64 chunk which applies to this list, or null if none has been seen.
+	 */
+	public Ds64Chunk getDs64() {
+		return ds64;
+	}
+	
+	/**
+	 * Gets a cursor over the children of the current chunk, which must be a list. The same cursor object is returned
+	 * every time, moved onto whichever list is current.
+	 * @throws IOException if the current chunk isn't a list
+	 */
+	public RiffChunkCursor enter() throws IOException {
+		if (!isList()) throw new IOException("Chunk '"+getChunkType()+"' is not a list");
+		ByteOrder order = (fourCC==FourCC.RIFX) ? ByteOrder.BIG_ENDIAN : sizeOrder;
+		if (child==null) {
+			child = new RiffChunkCursor(data, order, ds64);
+		} else {
+			child.reset(data, order, ds64);
+		}
+		return child;
+	}
+	
+	/**
+	 * Creates a standalone chunk for the current chunk, with its own slice, which stays good after the cursor moves
+	 * on. Lists are created in lazy mode.
+	 */
+	public RiffChunk toChunk(RiffChunkRegistry registry) throws IOException {
+		checkChunk();
+		DataSlice slice = contents.slice(dataOffset, size);
+		if (FourCC.isList(fourCC)) {
+			return new ListRiffChunk(fourCC, slice, true, false, sizeOrder, ds64, registry);
+		} else {
+			return registry.create(fourCC, slice);
+		}
+	}
+	
+	private void checkChunk() {
+		if (!onChunk) throw new IllegalStateException("The cursor isn't on a chunk");
+	}
+}
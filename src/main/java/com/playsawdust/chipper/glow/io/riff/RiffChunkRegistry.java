@@ -0,0 +1,134 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.riff;
+
+import java.io.IOException;
+
+import com.playsawdust.chipper.glow.io.DataSlice;
+
+/**
+ * Decides which RiffChunk subclass represents each kind of chunk, by its {@link FourCC} tag. Chunks whose tag isn't
+ * registered come out as plain RiffChunks. List chunks are always ListRiffChunks, and their children are created
+ * through the same registry.
+ *
+ * <p>Lookups are a probe into a small int-keyed table, so they don't create any objects. A registry can be shared
+ * between threads once it's been filled in; {@link #DEFAULT} is locked, and can't be changed at all.
+ */
+public class RiffChunkRegistry {
+	/** The registry used when none is specified. It knows about {@link Ds64Chunk}, and can't be changed. */
+	public static final RiffChunkRegistry DEFAULT = new RiffChunkRegistry().lock();
+	
+	/** Open-addressed table of packed tags; 0 marks an empty slot, since no normalized FourCC is 0 */
+	protected int[] keys = new int[16];
+	protected ChunkFactory[] factories = new ChunkFactory[16];
+	protected int size = 0;
+	protected boolean locked = false;
+	
+	/**
+	 * Creates a registry which knows about the chunk types built into this package.
+	 */
+	public RiffChunkRegistry() {
+		register(FourCC.DS64, Ds64Chunk::new);
+	}
+	
+	/**
+	 * Creates an unlocked registry with all the same factories as this one.
+	 */
+	public RiffChunkRegistry copy() {
+		RiffChunkRegistry result = new RiffChunkRegistry();
+		result.keys = keys.clone();
+		result.factories = factories.clone();
+		result.size = size;
+		return result;
+	}
+	
+	/**
+	 * Prevents any more changes to this registry.
+	 * @return this registry
+	 */
+	public RiffChunkRegistry lock() {
+		locked = true;
+		return this;
+	}
+	
+	public boolean isLocked() {
+		return locked;
+	}
+	
+	/**
+	 * Makes chunks with the specified tag come out of the factory, replacing any factory already registered for it.
+	 * @throws IllegalArgumentException if the tag is a list tag
+	 * @throws IllegalStateException if this registry is locked
+	 */
+	public void register(int fourCC, ChunkFactory factory) {
+		if (locked) throw new IllegalStateException("This registry is locked");
+		if (FourCC.isList(fourCC)) throw new IllegalArgumentException("List chunks are always ListRiffChunks");
+		if (factory==null) throw new IllegalArgumentException("Factory can't be null");
+		if ((size+1)*2 > keys.length) grow();
+		int slot = find(keys, fourCC);
+		if (keys[slot]==0) size++;
+		keys[slot] = fourCC;
+		factories[slot] = factory;
+	}
+	
+	/**
+	 * @see #register(int, ChunkFactory)
+	 */
+	public void register(String tag, ChunkFactory factory) {
+		register(FourCC.of(tag), factory);
+	}
+	
+	/**
+	 * Gets the factory registered for the specified tag, or null if there isn't one.
+	 */
+	public ChunkFactory get(int fourCC) {
+		int slot = find(keys, fourCC);
+		return (keys[slot]==0) ? null : factories[slot];
+	}
+	
+	/**
+	 * Creates a non-list chunk with the factory registered for its tag, or as a plain RiffChunk if there isn't one.
+	 */
+	public RiffChunk create(int fourCC, DataSlice contents) throws IOException {
+		ChunkFactory factory = get(fourCC);
+		return (factory==null) ? new RiffChunk(fourCC, contents) : factory.create(fourCC, contents);
+	}
+	
+	private static int find(int[] keys, int fourCC) {
+		int mask = keys.length-1;
+		int slot = ((fourCC * 0x9E3779B9) >>> 16) & mask;
+		while(keys[slot]!=0 && keys[slot]!=fourCC) slot = (slot+1) & mask;
+		return slot;
+	}
+	
+	private void grow() {
+		int[] oldKeys = keys;
+		ChunkFactory[] oldFactories = factories;
+		keys = new int[oldKeys.length*2];
+		factories = new ChunkFactory[oldKeys.length*2];
+		for(int i=0; i<oldKeys.length; i++) {
+			if (oldKeys[i]==0) continue;
+			int slot = find(keys, oldKeys[i]);
+			keys[slot] = oldKeys[i];
+			factories[slot] = oldFactories[i];
+		}
+	}
+	
+	@FunctionalInterface
+	public interface ChunkFactory {
+		/**
+		 * Creates the object representing one chunk.
+		 * @param fourCC the chunk's tag
+		 * @param contents the chunk's body
+		 * @throws IOException if the body can't be decoded
+		 */
+		RiffChunk create(int fourCC, DataSlice contents) throws IOException;
+	}
+}
@@ -0,0 +1,337 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.riff;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+
+import com.playsawdust.chipper.glow.io.DataSlice;
+
+/**
+ * A flat table of every chunk in a RIFF file, with the tag, absolute offset, and length of each one, which can be
+ * saved next to the file and loaded again later. Loading an index costs time proportional to the number of chunks,
+ * not the size of the file, and chunks can then be sliced straight out of the file without walking the tree again.
+ *
+ * <p>A saved index records the size, modification time, and a hash of the first 64KiB of the file it describes, and
+ * is ignored if any of them no longer match.
+ */
+public class RiffIndex {
+	private static final int MAGIC = 0x47524958; // "GRIX"
+	private static final int VERSION = 1;
+	private static final int HEADER_HASH_BYTES = 64 * 1024;
+	private static final int FLAG_BIG_ENDIAN = 1;
+	
+	protected final long fileSize;
+	protected final long modifiedTime;
+	protected final long headerHash;
+	protected final boolean bigEndian;
+	
+	protected int count;
+	protected String[] tags;
+	/** The list type of each entry, or null for entries which aren't lists */
+	protected String[] listTypes;
+	/** The absolute offset in the file of each entry's data, just past its header */
+	protected long[] offsets;
+	protected long[] lengths;
+	/** The index of each entry's parent, or -1 for the outermost chunk */
+	protected int[] parents;
+	
+	protected Ds64Chunk ds64;
+	
+	protected RiffIndex(long fileSize, long modifiedTime, long headerHash, boolean bigEndian, int capacity) {
+		this.fileSize = fileSize;
+		this.modifiedTime = modifiedTime;
+		this.headerHash = headerHash;
+		this.bigEndian = bigEndian;
+		this.tags = new String[capacity];
+		this.listTypes = new String[capacity];
+		this.offsets = new long[capacity];
+		this.lengths = new long[capacity];
+		this.parents = new int[capacity];
+	}
+	
+	/**
+	 * Walks every chunk in the specified file and builds an index of them.
+	 */
+	public static RiffIndex build(Path file) throws IOException {
+		DataSlice data = DataSlice.map(file);
+		try {
+			long modifiedTime = Files.getLastModifiedTime(file).toMillis();
+			ListRiffChunk root = ListRiffChunk.parse(data, true);
+			RiffIndex result = new RiffIndex(data.length(), modifiedTime, hashHeader(data),
+					root.getSizeOrder()==ByteOrder.BIG_ENDIAN, 64);
+			int rootIndex = result.add(root, 8L, -1);
+			result.addChildren(root, 8L, rootIndex);
+			return result;
+		} finally {
+			data.close();
+		}
+	}
+	
+	/**
+	 * Loads the index saved at the specified sidecar path, if it exists and still matches the file. A sidecar which
+	 * can't be read, whether it's truncated, damaged, or from an unsupported version, is treated as out of date.
+	 * @return the index, or an empty Optional if there's no usable sidecar or it's out of date
+	 * @throws IOException if the file itself can't be read
+	 */
+	public static Optional<RiffIndex> load(Path sidecar, Path file) throws IOException {
+		RiffIndex result;
+		try(InputStream in = Files.newInputStream(sidecar)) {
+			result = read(in);
+		} catch (IOException ex) {
+			return Optional.empty();
+		}
+		return result.matches(file) ? Optional.of(result) : Optional.empty();
+	}
+	
+	/**
+	 * Loads the index for the specified file from its default sidecar, or if it's missing, unreadable, or out of date,
+	 * builds a fresh index and saves it there in place of the old one.
+	 * @see #getDefaultSidecar(Path)
+	 */
+	public static RiffIndex loadOrBuild(Path file) throws IOException {
+		Path sidecar = getDefaultSidecar(file);
+		Optional<RiffIndex> existing = load(sidecar, file);
+		if (existing.isPresent()) return existing.get();
+		
+		RiffIndex result = build(file);
+		result.save(sidecar);
+		return result;
+	}
+	
+	/**
+	 * Gets the path where {@link #loadOrBuild(Path)} keeps the index for the specified file: the same path, with
+	 * ".grix" added to the end.
+	 */
+	public static Path getDefaultSidecar(Path file) {
+		return file.resolveSibling(file.getFileName().toString()+".grix");
+	}
+	
+	/**
+	 * Returns true if this index still describes the specified file.
+	 */
+	public boolean matches(Path file) throws IOException {
+		if (Files.size(file)!=fileSize) return false;
+		if (Files.getLastModifiedTime(file).toMillis()!=modifiedTime) return false;
+		DataSlice data = DataSlice.map(file);
+		try {
+			return hashHeader(data)==headerHash;
+		} finally {
+			data.close();
+		}
+	}
+	
+	/**
+	 * Saves this index to the specified path. The index is written to a temporary file first and then moved into place,
+	 * so a reader never sees half an index.
+	 */
+	public void save(Path sidecar) throws IOException {
+		Path temp = Files.createTempFile(sidecar.toAbsolutePath().getParent(), sidecar.getFileName().toString(), ".tmp");
+		try {
+			try(OutputStream out = Files.newOutputStream(temp)) {
+				write(out);
+			}
+			Files.move(temp, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+	
+	public void write(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeLong(fileSize);
+		data.writeLong(modifiedTime);
+		data.writeLong(headerHash);
+		data.writeInt(bigEndian ? FLAG_BIG_ENDIAN : 0);
+		data.writeInt(count);
+		for(int i=0; i<count; i++) {
+			data.writeInt(FourCC.of(tags[i]));
+			data.writeInt((listTypes[i]==null) ? 0 : FourCC.of(listTypes[i]));
+			data.writeLong(offsets[i]);
+			data.writeLong(lengths[i]);
+			data.writeInt(parents[i]);
+		}
+		data.flush();
+	}
+	
+	public static RiffIndex read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		if (data.readInt()!=MAGIC) throw new IOException("Not a RIFF index");
+		int version = data.readInt();
+		if (version!=VERSION) throw new IOException("Unsupported RIFF index version "+version);
+		long fileSize = data.readLong();
+		long modifiedTime = data.readLong();
+		long headerHash = data.readLong();
+		int flags = data.readInt();
+		int count = data.readInt();
+		if (count<0) throw new IOException("Corrupt RIFF index");
+		
+		RiffIndex result = new RiffIndex(fileSize, modifiedTime, headerHash, (flags & FLAG_BIG_ENDIAN)!=0, Math.max(Math.min(count, 1 << 16), 1));
+		for(int i=0; i<count; i++) {
+			String tag = FourCC.toString(data.readInt());
+			int listType = data.readInt();
+			long offset = data.readLong();
+			long length = data.readLong();
+			int parent = data.readInt();
+			if (parent<-1 || parent>=i) throw new IOException("Corrupt RIFF index");
+			result.add(tag, (listType==0) ? null : FourCC.toString(listType), offset, length, parent);
+		}
+		return result;
+	}
+	
+	/** Gets the number of chunks in this index, including the outermost chunk */
+	public int size() {
+		return count;
+	}
+	
+	public String getTag(int entry) {
+		checkEntry(entry);
+		return tags[entry];
+	}
+	
+	/** Gets the list type of the specified entry, or null if it isn't a list */
+	public String getListType(int entry) {
+		checkEntry(entry);
+		return listTypes[entry];
+	}
+	
+	/** Gets the absolute offset in the file of the specified entry's data, just past its header */
+	public long getOffset(int entry) {
+		checkEntry(entry);
+		return offsets[entry];
+	}
+	
+	public long getLength(int entry) {
+		checkEntry(entry);
+		return lengths[entry];
+	}
+	
+	/** Gets the index of the specified entry's parent, or -1 if it's the outermost chunk */
+	public int getParent(int entry) {
+		checkEntry(entry);
+		return parents[entry];
+	}
+	
+	/**
+	 * Finds the first entry with the specified tag, in file order, or returns -1 if there isn't one.
+	 */
+	public int findFirst(String tag) {
+		for(int i=0; i<count; i++) {
+			if (tags[i].equals(tag)) return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Finds every entry with the specified tag, in file order.
+	 */
+	public int[] findAll(String tag) {
+		int[] result = new int[count];
+		int found = 0;
+		for(int i=0; i<count; i++) {
+			if (tags[i].equals(tag)) result[found++] = i;
+		}
+		return Arrays.copyOf(result, found);
+	}
+	
+	/**
+	 * Slices the specified entry's data out of the file this index describes, without reading anything.
+	 */
+	public DataSlice slice(DataSlice file, int entry) {
+		checkEntry(entry);
+		return file.slice(offsets[entry], lengths[entry]);
+	}
+	
+	/**
+	 * Creates a chunk for the specified entry. Lists are created in lazy mode, so nothing past the list type is read
+	 * until it's asked for.
+	 */
+	public RiffChunk getChunk(DataSlice file, int entry) throws IOException {
+		return getChunk(file, entry, RiffChunkRegistry.DEFAULT);
+	}
+	
+	/**
+	 * Creates a chunk for the specified entry, using the registry to decide which RiffChunk subclass it and its
+	 * children are created as.
+	 */
+	public RiffChunk getChunk(DataSlice file, int entry, RiffChunkRegistry registry) throws IOException {
+		DataSlice data = slice(file, entry);
+		if (listTypes[entry]==null) {
+			return registry.create(FourCC.of(tags[entry]), data);
+		}
+		
+		if (ds64==null) {
+			int ds64Entry = findFirst("ds64");
+			if (ds64Entry>=0) ds64 = new Ds64Chunk(FourCC.DS64, slice(file, ds64Entry));
+		}
+		return new ListRiffChunk(FourCC.of(tags[entry]), data, true, false, bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN, ds64, registry);
+	}
+	
+	private void addChildren(ListRiffChunk list, long dataOffset, int listIndex) throws IOException {
+		int childIndex = 0;
+		for(RiffChunk child : list) {
+			long childOffset = dataOffset + list.getChildOffset(childIndex);
+			int entry = add(child, childOffset, listIndex);
+			if (child instanceof ListRiffChunk) {
+				addChildren((ListRiffChunk) child, childOffset, entry);
+			}
+			childIndex++;
+		}
+	}
+	
+	private int add(RiffChunk chunk, long offset, int parent) throws IOException {
+		String listType = (chunk instanceof ListRiffChunk) ? ((ListRiffChunk) chunk).getListType() : null;
+		return add(chunk.getChunkType(), listType, offset, chunk.getChunkData().length(), parent);
+	}
+	
+	private int add(String tag, String listType, long offset, long length, int parent) {
+		if (count==tags.length) {
+			int capacity = count*2;
+			tags = Arrays.copyOf(tags, capacity);
+			listTypes = Arrays.copyOf(listTypes, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+		}
+		tags[count] = tag;
+		listTypes[count] = listType;
+		offsets[count] = offset;
+		lengths[count] = length;
+		parents[count] = parent;
+		return count++;
+	}
+	
+	private void checkEntry(int entry) {
+		if (entry<0 || entry>=count) throw new IndexOutOfBoundsException(entry);
+	}
+	
+	private static long hashHeader(DataSlice data) throws IOException {
+		int length = (int) Math.min(HEADER_HASH_BYTES, data.length());
+		byte[] header = new byte[length];
+		data.read(0L, header, 0, length);
+		CRC32C crc = new CRC32C();
+		crc.update(header);
+		return crc.getValue();
+	}
+}
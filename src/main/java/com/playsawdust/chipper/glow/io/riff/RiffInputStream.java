@@ -9,71 +9,176 @@
 
 package com.playsawdust.chipper.glow.io.riff;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import com.playsawdust.chipper.glow.io.ArrayDataSlice;
+import com.playsawdust.chipper.glow.io.ChecksumAlgorithm;
 import com.playsawdust.chipper.glow.io.DataSlice;
 
 public class RiffInputStream {
+	/** Chunk bodies larger than this are spilled to a temporary file by default instead of being held in memory */
+	public static final long DEFAULT_SPILL_THRESHOLD = 64L * 1024 * 1024;
+	/** ds64 chunks bigger than this are assumed to be corrupt, and aren't used to resolve sizes */
+	private static final long MAX_DS64_SIZE = 1024 * 1024;
+	
 	private final InputStream in;
+	/** Holds each chunk header as it's read, so that reading one doesn't create any garbage */
+	private final byte[] header = new byte[8];
+	protected long spillThreshold = DEFAULT_SPILL_THRESHOLD;
+	protected StreamingRiffChunk current;
+	/** The list type of the list being read, if this stream came from {@link StreamingRiffChunk#openList()} */
+	protected String listType;
+	/** The byte order of size fields. RIFX chunks switch their own contents to big-endian. */
+	protected ByteOrder sizeOrder = ByteOrder.LITTLE_ENDIAN;
+	/** The ds64 chunk of the RF64 or BW64 file being read, once it's been seen */
+	protected Ds64Chunk ds64;
+	/** The checksum taken over each non-list chunk body as it's read, or null to take none */
+	protected ChecksumAlgorithm checksumAlgorithm;
+	protected ChunkVerifier verifier;
+	protected RiffChunkRegistry registry = RiffChunkRegistry.DEFAULT;
 	
 	public RiffInputStream(InputStream in) throws IOException {
 		this.in = in;
 	}
 	
+	/**
+	 * Reads the next chunk in its entirety. Small chunks are held in memory, and larger ones are spilled to a temporary
+	 * file.
+	 * @throws EOFException if there are no more chunks
+	 * @see #setSpillThreshold(long)
+	 */
 	public RiffChunk readChunk() throws IOException {
-		String chunkTag = readTag(in);
+		StreamingRiffChunk chunk = nextChunk();
+		if (chunk==null) throw new EOFException();
+		return chunk.buffer();
+	}
+	
+	/**
+	 * Reads the next chunk header, and returns it along with a forward-only view of the chunk body. Whatever is left
+	 * of the previous chunk's body is skipped first, so memory use stays constant no matter how large the chunks are.
+	 * @return the next chunk, or null if the stream ended cleanly between chunks.
+	 */
+	public StreamingRiffChunk nextChunk() throws IOException {
+		if (current!=null) {
+			current.skip();
+			if ((current.getChunkSize() & 1)!=0) in.read(); //Pad byte, which may legitimately be missing at the very end
+			current = null;
+		}
 		
-		int chunkSize = (in.read() & 0xFF) << 24;
-		chunkSize |=    (in.read() & 0xFF) << 16;
-		chunkSize |=    (in.read() & 0xFF) <<  8;
-		chunkSize |=    (in.read()       );
+		int first = in.read();
+		if (first<0) return null;
 		
-		byte[] chunkData = in.readNBytes(chunkSize);
+		header[0] = (byte) first;
+		if (in.readNBytes(header, 1, 7)!=7) throw new EOFException("Unexpected end of stream inside chunk header");
+		int chunkTag = FourCC.read(header, 0);
+		ByteOrder order = (chunkTag==FourCC.RIFX) ? ByteOrder.BIG_ENDIAN : sizeOrder;
+		long chunkSize = DataSlice.order(header[4], header[5], header[6], header[7], order) & 0xFFFFFFFFL;
 		
-		//TODO: Return a more useful subclass depending on the tag type
-		if (chunkTag.equals("RIFF") || chunkTag.equals("LIST")) {
-			return new ListRiffChunk(chunkTag, new ArrayDataSlice(chunkData));
-		} else {
-			return new RiffChunk(chunkTag, new ArrayDataSlice(chunkData));
+		InputStream body = in;
+		if (chunkSize==Ds64Chunk.SIZE_PLACEHOLDER) {
+			if (chunkTag==FourCC.RF64 || chunkTag==FourCC.BW64) {
+				//Peek at the list type and the start of the ds64 chunk for the real size, then put them back
+				byte[] prefix = in.readNBytes(20);
+				if (prefix.length==20 && FourCC.read(prefix, 4)==FourCC.DS64) {
+					chunkSize = ByteBuffer.wrap(prefix, 12, 8).order(ByteOrder.LITTLE_ENDIAN).getLong();
+				} else {
+					chunkSize = StreamingRiffChunk.UNKNOWN_SIZE;
+				}
+				body = new SequenceInputStream(new ByteArrayInputStream(prefix), in);
+			} else if (ds64!=null) {
+				chunkSize = ds64.getChunkSize(chunkTag);
+				if (chunkSize<0) chunkSize = StreamingRiffChunk.UNKNOWN_SIZE;
+			}
+		} else if (chunkTag==FourCC.DS64 && chunkSize<=MAX_DS64_SIZE) {
+			//Keep hold of the size table so later placeholder sizes can be resolved, and replay it for the caller
+			byte[] ds64Data = in.readNBytes((int) chunkSize);
+			if (ds64==null && ds64Data.length>=28) ds64 = new Ds64Chunk(chunkTag, new ArrayDataSlice(ds64Data));
+			body = new SequenceInputStream(new ByteArrayInputStream(ds64Data), in);
 		}
+		
+		current = new StreamingRiffChunk(chunkTag, chunkSize, body, spillThreshold, order, ds64);
+		current.registry = registry;
+		current.setVerification(checksumAlgorithm, verifier);
+		return current;
+	}
+	
+	/**
+	 * Gets the ds64 chunk of the RF64 or BW64 file being read, or null if none has been read yet.
+	 */
+	public Ds64Chunk getDs64() {
+		return ds64;
 	}
 	
+	/**
+	 * Gets the list type of the list this stream is reading children from, or null if this stream isn't reading a
+	 * list.
+	 * @see StreamingRiffChunk#openList()
+	 */
+	public String getListType() {
+		return listType;
+	}
+	
+	/**
+	 * Sets the largest chunk body, in bytes, which {@link #readChunk()} and {@link StreamingRiffChunk#buffer()} will
+	 * hold in memory. Larger bodies are copied into a temporary file instead.
+	 */
+	public void setSpillThreshold(long bytes) {
+		this.spillThreshold = bytes;
+	}
+	
+	public long getSpillThreshold() {
+		return spillThreshold;
+	}
+	
+	/**
+	 * Takes a checksum of every non-list chunk body as it's read, whether it's consumed through
+	 * {@link StreamingRiffChunk#getBody()}, buffered, or skipped, and passes it to the verifier once the whole body has
+	 * gone by. Skipped bodies have to be read rather than skipped over, but nothing is read twice. Lists opened after
+	 * this is called verify their children the same way.
+	 * @param algorithm the checksum to take, or null to stop taking checksums
+	 * @param verifier called with each body's checksum, or null to only make checksums available from
+	 *                 {@link StreamingRiffChunk#getChecksum()}
+	 */
+	public void setVerification(ChecksumAlgorithm algorithm, ChunkVerifier verifier) {
+		this.checksumAlgorithm = algorithm;
+		this.verifier = verifier;
+	}
+	
+	public ChecksumAlgorithm getChecksumAlgorithm() {
+		return checksumAlgorithm;
+	}
+	
+	/**
+	 * Sets the registry which decides what RiffChunk subclass {@link #readChunk()} and
+	 * {@link StreamingRiffChunk#buffer()} create for each tag. Lists opened after this is called use it too.
+	 */
+	public void setRegistry(RiffChunkRegistry registry) {
+		this.registry = registry;
+	}
+	
+	public RiffChunkRegistry getRegistry() {
+		return registry;
+	}
 	
 	public void close() throws IOException {
 		in.close();
 	}
 	
 	public static String readTag(InputStream in) throws IOException {
-		String result = "";
-		
-		boolean terminated = false;
+		int result = 0;
 		for(int i=0; i<4; i++) {
-			int ch = in.read() & 0xFF;
-			if (ch==0) terminated = true;
-			
-			if (!terminated) {
-				result += (char)ch;
-			}
+			result = (result << 8) | (in.read() & 0xFF);
 		}
-		
-		return result.stripTrailing();
+		return FourCC.toString(FourCC.normalize(result));
 	}
 	
 	public static String readTag(DataSlice in) throws IOException {
-		String result = "";
-		
-		boolean terminated = false;
-		for(int i=0; i<4; i++) {
-			int ch = in.read() & 0xFF;
-			if (ch==0) terminated = true;
-			
-			if (!terminated) {
-				result += (char)ch;
-			}
-		}
-		
-		return result.stripTrailing();
+		return FourCC.toString(FourCC.read(in));
 	}
 }
@@ -0,0 +1,345 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.riff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.playsawdust.chipper.glow.io.DataSink;
+import com.playsawdust.chipper.glow.io.DataSlice;
+
+/**
+ * Writes RIFF data to a DataSink one chunk at a time, the write-side counterpart of RiffInputStream.
+ *
+ * <p>Chunks and lists are opened with a begin call and closed with an end call, and everything written in between
+ * becomes the chunk's body. Body data can be written through this class or straight into {@link #getSink()}; sizes are
+ * worked out from how far the sink's write pointer has moved. Pad bytes after odd-sized chunks are added
+ * automatically.
+ *
+ * <p>On a seekable sink, headers are written with a placeholder size which is patched when the chunk ends, so
+ * nothing needs to be known up front. Sinks which can't seek backwards need every size to be declared when the chunk
+ * begins, and a chunk which doesn't end up the declared size is an error.
+ *
+ * <p>A RIFF file can't normally be bigger than 4GiB. On a seekable sink, a top-level RIFF list starts with a JUNK
+ * chunk as a placeholder, as EBU Tech 3306 suggests. If the file goes past 4GiB, it's turned into an RF64 file when
+ * it ends: the RIFF tag becomes RF64, and the JUNK chunk becomes a ds64 chunk holding the real sizes. Smaller files are
+ * left as plain RIFF files, and readers skip the JUNK chunk.
+ */
+public class RiffOutputStream {
+	private static final long MAX_SIZE = 0xFFFFFFFEL;
+	/** The size of a ds64 chunk's body, not counting its table */
+	private static final int DS64_BASE_SIZE = 28;
+	private static final int DS64_ENTRY_SIZE = 12;
+	
+	protected final DataSink out;
+	protected final ArrayDeque<OpenChunk> open = new ArrayDeque<>();
+	protected ByteOrder sizeOrder = ByteOrder.LITTLE_ENDIAN;
+	
+	protected boolean rf64Enabled;
+	protected int ds64TableSize = 0;
+	protected long sampleCount = 0L;
+	/** The offset of the JUNK chunk reserved in the current top-level RIFF list, or -1 if there isn't one */
+	protected long junkOffset = -1L;
+	protected long dataSize = -1L;
+	protected final Map<String, Long> oversized = new LinkedHashMap<>();
+	
+	/**
+	 * Creates a RiffOutputStream which starts writing at the sink's write pointer. RF64 output is enabled if the sink
+	 * is seekable.
+	 */
+	public RiffOutputStream(DataSink out) {
+		this.out = out;
+		this.rf64Enabled = out.isSeekable();
+	}
+	
+	/**
+	 * Gets the sink this stream writes to. Anything written to it while a chunk is open becomes part of that chunk.
+	 */
+	public DataSink getSink() {
+		return out;
+	}
+	
+	/**
+	 * Sets whether top-level RIFF lists reserve space for a ds64 chunk, so that they can become RF64 files if they
+	 * grow past 4GiB. This must be set before the list begins, and can't be enabled for a sink which isn't seekable.
+	 */
+	public void setRf64Enabled(boolean enabled) {
+		if (enabled && !out.isSeekable()) throw new IllegalStateException("RF64 output needs a seekable sink");
+		this.rf64Enabled = enabled;
+	}
+	
+	public boolean isRf64Enabled() {
+		return rf64Enabled;
+	}
+	
+	/**
+	 * Sets how many chunks other than "data" may grow past 4GiB in an RF64 file. Each one needs a 12-byte entry in the
+	 * ds64 chunk's table, and the space for them is reserved when the top-level list begins. The default is 0.
+	 */
+	public void setDs64TableSize(int entries) {
+		if (entries<0) throw new IllegalArgumentException();
+		this.ds64TableSize = entries;
+	}
+	
+	/**
+	 * Sets the sample count recorded in the ds64 chunk, if the file becomes an RF64 file.
+	 */
+	public void setSampleCount(long sampleCount) {
+		this.sampleCount = sampleCount;
+	}
+	
+	/**
+	 * Gets the number of chunks and lists which have begun but not ended.
+	 */
+	public int getDepth() {
+		return open.size();
+	}
+	
+	/**
+	 * Begins a list whose size will be filled in when it ends. The sink must be seekable.
+	 * @param tag      the list's tag: "RIFF", "RIFX", or "LIST"
+	 * @param listType the four-character type written at the start of the list's body
+	 */
+	public void beginList(String tag, String listType) throws IOException {
+		beginList(tag, listType, -1L);
+	}
+	
+	/**
+	 * Begins a list of a known size, which counts the four-byte list type as well as every child chunk along with its
+	 * header and pad byte.
+	 * @see #getChunkSpan(long)
+	 */
+	public void beginList(String tag, String listType, long size) throws IOException {
+		if (!ListRiffChunk.isListTag(tag)) throw new IllegalArgumentException("'"+tag+"' is not a list tag");
+		if (open.isEmpty()) sizeOrder = tag.equals("RIFX") ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+		begin(tag, size, true);
+		writeTag(listType);
+		
+		if (open.size()==1 && tag.equals("RIFF") && rf64Enabled && size<0) {
+			//Reserve room for a ds64 chunk in case this grows past 4GiB
+			int junkSize = DS64_BASE_SIZE + ds64TableSize*DS64_ENTRY_SIZE;
+			junkOffset = out.position();
+			writeHeader("JUNK", junkSize);
+			out.write(new byte[junkSize]);
+			dataSize = -1L;
+			oversized.clear();
+		}
+	}
+	
+	/**
+	 * Begins a chunk whose size will be filled in when it ends. The sink must be seekable.
+	 */
+	public void beginChunk(String tag) throws IOException {
+		begin(tag, -1L, false);
+	}
+	
+	/**
+	 * Begins a chunk whose body will be exactly {@code size} bytes long, not counting the pad byte.
+	 */
+	public void beginChunk(String tag, long size) throws IOException {
+		if (size<0) throw new IllegalArgumentException("Chunk size can't be negative");
+		begin(tag, size, false);
+	}
+	
+	private void begin(String tag, long size, boolean list) throws IOException {
+		if (size<0 && !out.isSeekable()) {
+			throw new IllegalStateException("Chunk sizes must be declared up front when the sink isn't seekable");
+		}
+		if (size>MAX_SIZE && !out.isSeekable()) throw new IOException("RF64 output needs a seekable sink");
+		
+		OpenChunk chunk = new OpenChunk(tag, list, out.position(), size);
+		writeHeader(tag, (size<0 || size>MAX_SIZE) ? Ds64Chunk.SIZE_PLACEHOLDER : size);
+		chunk.dataStart = out.position();
+		open.push(chunk);
+	}
+	
+	/**
+	 * Ends the innermost open chunk, which must not be a list.
+	 */
+	public void endChunk() throws IOException {
+		if (open.isEmpty() || open.peek().list) throw new IllegalStateException("No chunk is open");
+		end();
+	}
+	
+	/**
+	 * Ends the innermost open list, which must not have any chunks still open inside it.
+	 */
+	public void endList() throws IOException {
+		if (open.isEmpty() || !open.peek().list) throw new IllegalStateException("No list is open");
+		end();
+	}
+	
+	private void end() throws IOException {
+		OpenChunk chunk = open.pop();
+		long size = out.position()-chunk.dataStart;
+		if (chunk.declaredSize>=0 && size!=chunk.declaredSize) {
+			throw new IOException("Chunk '"+chunk.tag+"' was declared as "+chunk.declaredSize+" bytes, but "+size+" were written");
+		}
+		
+		boolean topLevelRiff = open.isEmpty() && junkOffset>=0;
+		if (chunk.tag.equals("data") && junkOffset>=0 && dataSize<0) dataSize = size;
+		
+		if (topLevelRiff && (size>MAX_SIZE || !oversized.isEmpty())) {
+			convertToRf64(chunk, size);
+		} else if (size>MAX_SIZE) {
+			if (junkOffset<0) throw new IOException("Chunk '"+chunk.tag+"' is too big for a RIFF file ("+size+" bytes)");
+			if (!chunk.tag.equals("data")) {
+				if (oversized.size()>=ds64TableSize && !oversized.containsKey(chunk.tag)) {
+					throw new IOException("No room in the ds64 table for chunk '"+chunk.tag+"'; see setDs64TableSize");
+				}
+				oversized.putIfAbsent(chunk.tag, size);
+			}
+			//The header already holds the placeholder if the size was declared; otherwise it's patched in here
+			writeSize(chunk.headerOffset+4, Ds64Chunk.SIZE_PLACEHOLDER);
+		} else if (chunk.declaredSize<0) {
+			writeSize(chunk.headerOffset+4, size);
+		}
+		
+		if ((size & 1)!=0) out.write(0);
+		if (topLevelRiff) junkOffset = -1L;
+	}
+	
+	/**
+	 * Rewrites a top-level RIFF list as an RF64 list, turning its reserved JUNK chunk into a ds64 chunk.
+	 */
+	private void convertToRf64(OpenChunk riff, long riffSize) throws IOException {
+		ByteBuffer ds64 = ByteBuffer.allocate(8 + DS64_BASE_SIZE + ds64TableSize*DS64_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		ds64.put(tagBytes("ds64"));
+		ds64.putInt(DS64_BASE_SIZE + ds64TableSize*DS64_ENTRY_SIZE);
+		ds64.putLong(riffSize);
+		ds64.putLong(Math.max(dataSize, 0L));
+		ds64.putLong(sampleCount);
+		ds64.putInt(oversized.size());
+		for(Map.Entry<String, Long> entry : oversized.entrySet()) {
+			ds64.put(tagBytes(entry.getKey()));
+			ds64.putLong(entry.getValue());
+		}
+		ds64.clear();
+		out.write(junkOffset, ds64);
+		
+		out.write(riff.headerOffset, tagBytes("RF64"), 0, 4);
+		writeSize(riff.headerOffset+4, Ds64Chunk.SIZE_PLACEHOLDER);
+	}
+	
+	/**
+	 * Writes a complete chunk whose body is the specified array.
+	 */
+	public void writeChunk(String tag, byte[] data) throws IOException {
+		beginChunk(tag, data.length);
+		out.write(data);
+		endChunk();
+	}
+	
+	/**
+	 * Writes a complete chunk whose body is copied from a DataSlice. The whole slice is copied, regardless of its read
+	 * pointer, and the bytes go straight from the slice to the sink without passing through a temporary array where
+	 * the slice allows it.
+	 */
+	public void writeChunk(String tag, DataSlice data) throws IOException {
+		long length = data.length();
+		beginChunk(tag, length);
+		out.transferFrom(data, 0L, length);
+		endChunk();
+	}
+	
+	/**
+	 * Writes bytes into the body of the innermost open chunk.
+	 */
+	public void write(byte[] data, int start, int len) throws IOException {
+		requireOpen();
+		out.write(data, start, len);
+	}
+	
+	public void write(byte[] data) throws IOException {
+		write(data, 0, data.length);
+	}
+	
+	/**
+	 * Copies {@code length} bytes of a DataSlice, starting at {@code offset}, into the body of the innermost open
+	 * chunk.
+	 */
+	public void write(DataSlice data, long offset, long length) throws IOException {
+		requireOpen();
+		out.transferFrom(data, offset, length);
+	}
+	
+	private void requireOpen() {
+		if (open.isEmpty()) throw new IllegalStateException("No chunk is open");
+	}
+	
+	/**
+	 * Gets the number of bytes a chunk takes up in its parent list, including its header and pad byte, given the size
+	 * of its body. This is what to add up when declaring the size of a list up front.
+	 */
+	public static long getChunkSpan(long size) {
+		return 8 + size + (size & 1);
+	}
+	
+	/**
+	 * Ends any chunks and lists which are still open, then closes the sink.
+	 */
+	public void close() throws IOException {
+		try {
+			while(!open.isEmpty()) end();
+			out.flush();
+		} finally {
+			out.close();
+		}
+	}
+	
+	private void writeHeader(String tag, long size) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(8).order(sizeOrder);
+		header.put(tagBytes(tag));
+		header.putInt((int) size);
+		out.write(header.array());
+	}
+	
+	private void writeSize(long offset, long size) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(4).order(sizeOrder).putInt(0, (int) size);
+		out.write(offset, buf.array(), 0, 4);
+	}
+	
+	private void writeTag(String tag) throws IOException {
+		out.write(tagBytes(tag));
+	}
+	
+	/**
+	 * Converts a tag of up to four characters to bytes, padding short tags with spaces.
+	 */
+	private static byte[] tagBytes(String tag) {
+		if (tag.length()>4) throw new IllegalArgumentException("Tag '"+tag+"' is longer than four characters");
+		byte[] result = { ' ', ' ', ' ', ' ' };
+		for(int i=0; i<tag.length(); i++) {
+			char ch = tag.charAt(i);
+			if (ch>0xFF) throw new IllegalArgumentException("Tag '"+tag+"' isn't ASCII");
+			result[i] = (byte) ch;
+		}
+		return result;
+	}
+	
+	protected static class OpenChunk {
+		protected final String tag;
+		protected final boolean list;
+		protected final long headerOffset;
+		protected final long declaredSize;
+		protected long dataStart;
+		
+		protected OpenChunk(String tag, boolean list, long headerOffset, long declaredSize) {
+			this.tag = tag;
+			this.list = list;
+			this.headerOffset = headerOffset;
+			this.declaredSize = declaredSize;
+		}
+	}
+}
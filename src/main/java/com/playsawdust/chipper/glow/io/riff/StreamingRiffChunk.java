@@ -0,0 +1,312 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.riff;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.OptionalLong;
+import java.util.zip.Checksum;
+
+import com.playsawdust.chipper.glow.io.ArrayDataSlice;
+import com.playsawdust.chipper.glow.io.ChecksumAlgorithm;
+import com.playsawdust.chipper.glow.io.DataSlice;
+import com.playsawdust.chipper.glow.io.MappedDataSlice;
+
+/**
+ * A chunk header read from a RiffInputStream, along with a forward-only view of the chunk's body. The body must be
+ * consumed, skipped, or buffered before the next chunk is read; if it isn't, the RiffInputStream skips whatever is
+ * left of it automatically.
+ */
+public class StreamingRiffChunk {
+	/**
+	 * The size reported for a chunk whose header doesn't say how big it is, as happens in RF64 files written by
+	 * programs which couldn't seek back to fill it in. Such a chunk runs to the end of the enclosing stream.
+	 */
+	public static final long UNKNOWN_SIZE = -1L;
+	
+	protected final int fourCC;
+	/** The tag as a String, which is only created once it's asked for */
+	protected String tag;
+	protected final long size;
+	protected final BodyInputStream body;
+	protected final long spillThreshold;
+	protected final ByteOrder sizeOrder;
+	protected final Ds64Chunk ds64;
+	protected ChecksumAlgorithm checksumAlgorithm;
+	protected ChunkVerifier verifier;
+	protected RiffChunkRegistry registry = RiffChunkRegistry.DEFAULT;
+	
+	protected StreamingRiffChunk(String tag, long size, InputStream in, long spillThreshold, ByteOrder sizeOrder, Ds64Chunk ds64) {
+		this(FourCC.of(tag), size, in, spillThreshold, sizeOrder, ds64);
+		this.tag = tag;
+	}
+	
+	protected StreamingRiffChunk(int fourCC, long size, InputStream in, long spillThreshold, ByteOrder sizeOrder, Ds64Chunk ds64) {
+		this.fourCC = fourCC;
+		this.size = size;
+		this.body = new BodyInputStream(in, size);
+		this.spillThreshold = spillThreshold;
+		this.sizeOrder = sizeOrder;
+		this.ds64 = ds64;
+	}
+	
+	public String getChunkType() {
+		if (tag==null) tag = FourCC.toString(fourCC);
+		return tag;
+	}
+	
+	/**
+	 * Gets this chunk's tag packed into an int.
+	 * @see FourCC
+	 */
+	public int getFourCC() {
+		return fourCC;
+	}
+	
+	/**
+	 * Gets the size of this chunk's body in bytes, not counting the header or any pad byte. This is a full 64-bit size
+	 * for RF64 and BW64 files, or UNKNOWN_SIZE if the file doesn't record it.
+	 */
+	public long getChunkSize() {
+		return size;
+	}
+	
+	/**
+	 * Returns true if this chunk's body is a list type followed by child chunks.
+	 */
+	public boolean isList() {
+		return FourCC.isList(fourCC);
+	}
+	
+	/**
+	 * Gets the remaining bytes of this chunk's body as an InputStream. The stream ends at the end of the body, and
+	 * closing it skips whatever is left of the body rather than closing the RiffInputStream.
+	 */
+	public InputStream getBody() {
+		return body;
+	}
+	
+	/**
+	 * Gets the number of body bytes which haven't been read or skipped yet.
+	 */
+	public long getRemaining() {
+		return (size==UNKNOWN_SIZE) ? UNKNOWN_SIZE : body.remaining;
+	}
+	
+	/**
+	 * Starts taking a checksum of this chunk's body, unless it's a list, in which case the setting is passed on to
+	 * {@link #openList()} instead. This must happen before any of the body is read.
+	 */
+	protected void setVerification(ChecksumAlgorithm algorithm, ChunkVerifier verifier) throws IOException {
+		this.checksumAlgorithm = algorithm;
+		this.verifier = verifier;
+		if (algorithm!=null && !isList()) body.startChecksum(getChunkType(), algorithm.create(), verifier);
+	}
+	
+	/**
+	 * Gets the checksum of the body bytes which have gone by so far, or nothing if the RiffInputStream isn't taking
+	 * checksums, or this is a list chunk. Once the body has been fully read or skipped, this is the checksum of the
+	 * whole body.
+	 * @see RiffInputStream#setVerification(ChecksumAlgorithm, ChunkVerifier)
+	 */
+	public OptionalLong getChecksum() {
+		return (body.checksum==null) ? OptionalLong.empty() : OptionalLong.of(body.checksum.getValue());
+	}
+	
+	/**
+	 * Skips over whatever is left of this chunk's body.
+	 */
+	public void skip() throws IOException {
+		body.close();
+	}
+	
+	/**
+	 * Reads this list chunk's list type, and returns a RiffInputStream which reads its children one at a time. Both
+	 * the list type and the children come out of the body, so nothing else may read the body afterwards.
+	 * @throws IOException if this is not a list chunk, or if part of the body has already been read.
+	 */
+	public RiffInputStream openList() throws IOException {
+		if (!isList()) throw new IOException("Chunk '"+getChunkType()+"' is not a list");
+		if (body.consumed!=0) throw new IOException("Chunk body has already been read from");
+		RiffInputStream result = new RiffInputStream(body);
+		result.setSpillThreshold(spillThreshold);
+		result.sizeOrder = sizeOrder;
+		result.ds64 = ds64;
+		result.checksumAlgorithm = checksumAlgorithm;
+		result.verifier = verifier;
+		result.registry = registry;
+		result.listType = RiffInputStream.readTag(body);
+		return result;
+	}
+	
+	/**
+	 * Reads the rest of this chunk into a random-access RiffChunk. Bodies up to the spill threshold are held in memory;
+	 * larger ones are copied out to a temporary file, which is deleted when the returned chunk's data is closed.
+	 * @throws IOException if part of the body has already been read, or if there was a problem reading the data.
+	 */
+	public RiffChunk buffer() throws IOException {
+		if (body.consumed!=0) throw new IOException("Chunk body has already been read from");
+		
+		DataSlice data;
+		if (size!=UNKNOWN_SIZE && size<=spillThreshold && size<=Integer.MAX_VALUE-8) {
+			data = new ArrayDataSlice(body.readNBytes((int) size));
+		} else {
+			data = spill();
+		}
+		if (body.truncated) {
+			data.close();
+			throw new EOFException("Unexpected end of stream inside chunk '"+getChunkType()+"'");
+		}
+		
+		if (isList()) {
+			return new ListRiffChunk(fourCC, data, false, false, sizeOrder, ds64, registry);
+		} else {
+			return registry.create(fourCC, data);
+		}
+	}
+	
+	private DataSlice spill() throws IOException {
+		Path temp = Files.createTempFile("glow-riff", ".chunk");
+		FileChannel channel = FileChannel.open(temp,
+				StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+		try {
+			ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+			while(true) {
+				int read = body.read(buf.array(), 0, buf.capacity());
+				if (read<0) break;
+				buf.clear().limit(read);
+				while(buf.hasRemaining()) channel.write(buf);
+			}
+			return new MappedDataSlice(channel);
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+	
+	/**
+	 * An InputStream over exactly one chunk body. Closing it skips the unread remainder instead of closing the stream
+	 * underneath.
+	 */
+	protected static class BodyInputStream extends InputStream {
+		private final InputStream in;
+		/** True if the body runs to the end of the stream, in which case remaining starts at Long.MAX_VALUE */
+		protected final boolean unknownSize;
+		protected long remaining;
+		protected long consumed = 0L;
+		protected boolean truncated = false;
+		private boolean skippable = true;
+		protected String tag;
+		protected Checksum checksum;
+		protected ChunkVerifier verifier;
+		
+		/**
+		 * @param size the size of the body, or UNKNOWN_SIZE if it runs to the end of the stream
+		 */
+		protected BodyInputStream(InputStream in, long size) {
+			this.in = in;
+			this.unknownSize = (size==UNKNOWN_SIZE);
+			this.remaining = unknownSize ? Long.MAX_VALUE : size;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			if (remaining<=0) return -1;
+			int result = in.read();
+			if (result<0) {
+				endOfStream();
+				return -1;
+			}
+			remaining--;
+			consumed++;
+			if (checksum!=null) {
+				checksum.update(result);
+				if (remaining==0) verify();
+			}
+			return result;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len==0) return 0;
+			if (remaining<=0) return -1;
+			int read = in.read(b, off, (int) Math.min(len, remaining));
+			if (read<0) {
+				endOfStream();
+				return -1;
+			}
+			remaining -= read;
+			consumed += read;
+			if (checksum!=null) {
+				checksum.update(b, off, read);
+				if (remaining==0) verify();
+			}
+			return read;
+		}
+		
+		
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(in.available(), remaining);
+		}
+		
+		@Override
+		public void close() throws IOException {
+			byte[] scratch = null;
+			while(remaining>0) {
+				long skipped = 0;
+				if (skippable && checksum==null) {
+					try {
+						skipped = in.skip(remaining);
+					} catch (IOException ex) {
+						//Pipes throw rather than skip, so read and discard instead
+						skippable = false;
+					}
+				}
+				
+				if (skipped>0) {
+					remaining -= skipped;
+					consumed += skipped;
+				} else {
+					if (scratch==null) scratch = new byte[(int) Math.min(remaining, 64 * 1024)];
+					if (read(scratch, 0, scratch.length)<0 && truncated) throw new EOFException("Unexpected end of stream inside chunk");
+				}
+			}
+		}
+		
+		/**
+		 * Starts taking a checksum of the body. This must happen before any of the body is read.
+		 */
+		protected void startChecksum(String tag, Checksum checksum, ChunkVerifier verifier) throws IOException {
+			this.tag = tag;
+			this.checksum = checksum;
+			this.verifier = verifier;
+			if (remaining==0) verify(); //An empty body is complete already
+		}
+		
+		private void endOfStream() throws IOException {
+			//A chunk of unknown size legitimately ends wherever the stream does
+			truncated = !unknownSize;
+			remaining = 0;
+			if (checksum!=null && !truncated) verify();
+		}
+		
+		private void verify() throws IOException {
+			if (verifier!=null) verifier.verify(tag, consumed, checksum.getValue());
+		}
+	}
+}
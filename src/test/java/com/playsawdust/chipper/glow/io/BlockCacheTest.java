@@ -0,0 +1,103 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class BlockCacheTest {
+	private static final int BLOCK_SIZE = 4096;
+	
+	private static Path createFile(int blocks) throws IOException {
+		Path path = Files.createTempFile("glow-block-cache", ".bin");
+		Files.write(path, new byte[blocks*BLOCK_SIZE]);
+		return path;
+	}
+	
+	@Test
+	public void closingASliceOnlyCancelsItsOwnLoads() throws IOException {
+		Path path = createFile(4);
+		try(RandomAccessFile first = new RandomAccessFile(path.toFile(), "r");
+				RandomAccessFile second = new RandomAccessFile(path.toFile(), "r")) {
+			BlockCache cache = new BlockCache(BLOCK_SIZE, 16*BLOCK_SIZE);
+			List<Runnable> queued = new ArrayList<>();
+			FileDataSlice firstSlice = new FileDataSlice(first, cache);
+			firstSlice.setReadAhead(2, queued::add);
+			FileDataSlice secondSlice = new FileDataSlice(second, cache);
+			secondSlice.setReadAhead(2, queued::add);
+			
+			firstSlice.prefetch(0L, 2*BLOCK_SIZE);
+			secondSlice.prefetch(2*BLOCK_SIZE, 2*BLOCK_SIZE);
+			assertEquals(4L*BLOCK_SIZE, cache.getPendingBytes());
+			
+			firstSlice.close();
+			assertEquals(2L*BLOCK_SIZE, cache.getPendingBytes());
+			for(Runnable task : queued) task.run();
+			assertEquals(0L, cache.getPendingBytes());
+			assertEquals(2L, cache.getPrefetchCount());
+		} finally {
+			Files.delete(path);
+		}
+	}
+	
+	@Test
+	public void runningLoadsHoldTheirBudgetUntilTheyFinish() throws Exception {
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch proceed = new CountDownLatch(1);
+		BlockCache cache = new BlockCache(BLOCK_SIZE, 16*BLOCK_SIZE) {
+			@Override
+			protected Block load(FileChannel channel, long index) throws IOException {
+				loading.countDown();
+				try {
+					proceed.await();
+				} catch (InterruptedException ex) {
+					throw new IOException(ex);
+				}
+				return super.load(channel, index);
+			}
+		};
+		cache.setPrefetchBudget(BLOCK_SIZE);
+		
+		Path path = createFile(2);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try(RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+			FileChannel channel = file.getChannel();
+			assertEquals(1, cache.prefetch(channel, 0L, BLOCK_SIZE, executor));
+			assertTrue(loading.await(30, TimeUnit.SECONDS));
+			
+			//The load is still running, so calling it off mustn't let more loads past the budget
+			cache.cancelPrefetch();
+			assertEquals((long) BLOCK_SIZE, cache.getPendingBytes());
+			assertEquals(0, cache.prefetch(channel, BLOCK_SIZE, BLOCK_SIZE, executor));
+			
+			proceed.countDown();
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+			assertEquals(0L, cache.getPendingBytes());
+		} finally {
+			executor.shutdownNow();
+			Files.delete(path);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.Test;
+
+public class ChecksumAlgorithmTest {
+	
+	/**
+	 * A view which inverts every byte it passes on, and so mustn't be looked through.
+	 */
+	private static class InvertingDataSlice extends LightweightDataSlice {
+		public InvertingDataSlice(DataSlice underlying, long length) {
+			super(underlying, 0L, length);
+		}
+		
+		@Override
+		public boolean isFlattenable() {
+			return false;
+		}
+		
+		@Override
+		public int read(long offset) throws IOException {
+			return ~super.read(offset) & 0xFF;
+		}
+		
+		@Override
+		public void read(long offset, byte[] destination, int start, int len) throws IOException {
+			super.read(offset, destination, start, len);
+			for(int i=start; i<start+len; i++) destination[i] = (byte) ~destination[i];
+		}
+		
+		@Override
+		public Optional<ByteBuffer> tryAsByteBuffer(long offset, long length) {
+			return Optional.empty();
+		}
+	}
+	
+	@Test
+	public void viewsWhichArentFlattenableAreReadThrough() throws IOException {
+		byte[] data = new byte[1000];
+		for(int i=0; i<data.length; i++) data[i] = (byte) (i*31);
+		
+		CRC32 expected = new CRC32();
+		for(byte b : data) expected.update(~b);
+		
+		DataSlice inverted = new InvertingDataSlice(new ArrayDataSlice(data), data.length);
+		assertEquals(expected.getValue(), inverted.checksum(0L, data.length, ChecksumAlgorithm.CRC32));
+		
+		//Views on top of it can still flatten down to it, but no further
+		DataSlice window = new LightweightDataSlice(inverted, 100L, 500L);
+		CRC32 windowExpected = new CRC32();
+		for(int i=100; i<600; i++) windowExpected.update(~data[i]);
+		assertEquals(windowExpected.getValue(), window.checksum(0L, 500L, ChecksumAlgorithm.CRC32));
+	}
+}
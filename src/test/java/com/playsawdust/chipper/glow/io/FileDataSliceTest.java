@@ -0,0 +1,109 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+import com.playsawdust.chipper.glow.io.metrics.InstrumentedDataSlice;
+import com.playsawdust.chipper.glow.io.metrics.IoInstrumentation;
+import com.playsawdust.chipper.glow.io.metrics.IoMetrics;
+
+public class FileDataSliceTest {
+	
+	private static Path createFile(int length) throws IOException {
+		Path path = Files.createTempFile("glow-file-slice", ".bin");
+		byte[] contents = new byte[length];
+		for(int i=0; i<contents.length; i++) contents[i] = (byte) (i*7);
+		Files.write(path, contents);
+		return path;
+	}
+	
+	@Test
+	public void blockLoadsAreCountedAsSyscalls() throws IOException {
+		Path path = createFile(3*4096);
+		try(RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+			byte[] contents = Files.readAllBytes(path);
+			IoInstrumentation instrumentation = new IoInstrumentation();
+			
+			//Three 4KiB blocks, each read once no matter how many bytes come out of it
+			DataSlice slice = instrumentation.instrument(new FileDataSlice(file, new BlockCache(4096, 64 * 1024)), "cached");
+			for(int i=0; i<contents.length; i++) assertEquals(contents[i] & 0xFF, slice.read(i));
+			assertEquals(3L, instrumentation.snapshot("cached").getSyscalls());
+			
+			//Blocks read ahead count too, and aren't counted again when they're used
+			FileDataSlice uninstrumented = new FileDataSlice(file, new BlockCache(4096, 64 * 1024));
+			uninstrumented.setReadAhead(4, Runnable::run);
+			DataSlice readAhead = instrumentation.instrument(uninstrumented, "readAhead");
+			readAhead.prefetch(0L, contents.length);
+			assertEquals(3L, instrumentation.snapshot("readAhead").getSyscalls());
+			byte[] copy = new byte[contents.length];
+			readAhead.read(0L, copy, 0, copy.length);
+			assertEquals(3L, instrumentation.snapshot("readAhead").getSyscalls());
+		} finally {
+			Files.delete(path);
+		}
+	}
+	
+	@Test
+	public void plainReadsAreCountedOnlyWhenInstrumented() throws IOException {
+		Path path = createFile(1000);
+		try(RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+			FileDataSlice original = new FileDataSlice(file);
+			IoInstrumentation instrumentation = new IoInstrumentation();
+			DataSlice slice = instrumentation.instrument(original, "plain");
+			
+			//The original is left as it was, and the instrumented slice reads through a copy of it
+			assertEquals(FileDataSlice.class, original.getClass());
+			assertTrue(((InstrumentedDataSlice) slice).getDelegate()!=original);
+			
+			for(int i=0; i<10; i++) slice.read(i);
+			slice.read(500L);
+			slice.duplicate().read(600L);
+			original.read(700L);
+			IoMetrics metrics = instrumentation.snapshot("plain");
+			assertEquals(2L, metrics.getFileSeeks());
+			assertEquals(14L, metrics.getSyscalls());
+		} finally {
+			Files.delete(path);
+		}
+	}
+	
+	@Test
+	public void concurrentSingleByteReadsShareAWindow() throws IOException {
+		Path path = createFile(3*8192);
+		try(RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+			byte[] contents = Files.readAllBytes(path);
+			IoInstrumentation instrumentation = new IoInstrumentation();
+			DataSlice slice = instrumentation.instrument(new FileDataSlice(file, null, true), "concurrent");
+			for(int i=0; i<contents.length; i++) assertEquals(contents[i] & 0xFF, slice.read());
+			//Three 8KiB windows
+			assertEquals(3L, instrumentation.snapshot("concurrent").getSyscalls());
+			assertEquals(-1, slice.read());
+			
+			for(int i=contents.length-1; i>=0; i-=37) assertEquals(contents[i] & 0xFF, slice.read(i));
+			slice.seek(8190L);
+			assertEquals(((contents[8190] & 0xFF) << 24) | ((contents[8191] & 0xFF) << 16)
+					| ((contents[8192] & 0xFF) << 8) | (contents[8193] & 0xFF), slice.readI32s());
+			
+			DataSlice duplicate = slice.duplicate();
+			assertEquals(contents[12345] & 0xFF, duplicate.read(12345L));
+		} finally {
+			Files.delete(path);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.riff;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.playsawdust.chipper.glow.io.DataSlice;
+import com.playsawdust.chipper.glow.io.MemoryDataSink;
+
+public class ListRiffChunkTest {
+	
+	@Test
+	public void recoveryFindsTagsItHasNotSeenYet() throws IOException {
+		Random random = new Random(1);
+		byte[] audio = new byte[1001];
+		random.nextBytes(audio);
+		
+		MemoryDataSink sink = new MemoryDataSink();
+		RiffOutputStream out = new RiffOutputStream(sink);
+		out.setRf64Enabled(false);
+		out.beginList("RIFF", "WAVE");
+		out.writeChunk("fmt ", new byte[16]);
+		out.writeChunk("data", audio);
+		out.writeChunk("xyz!", new byte[] { 1, 2, 3 });
+		out.writeChunk("data", new byte[8]);
+		out.close();
+		byte[] file = sink.toByteArray();
+		
+		//Damage the size of the first data chunk, which follows the RIFF header, the list type, and the fmt chunk
+		int sizeOffset = 12 + 8+16 + 4;
+		file[sizeOffset] = (byte) 0xFF;
+		file[sizeOffset+1] = (byte) 0xFF;
+		file[sizeOffset+2] = (byte) 0xFF;
+		file[sizeOffset+3] = (byte) 0x7F;
+		
+		assertEquals(List.of("fmt"), tags(ListRiffChunk.parse(DataSlice.of(file), false)));
+		for(boolean lazy : new boolean[] { false, true }) {
+			ListRiffChunk recovered = ListRiffChunk.parse(DataSlice.of(file), lazy, true);
+			assertEquals(List.of("fmt", "xyz!", "data"), tags(recovered));
+			assertEquals(8L+1001+1, recovered.getSkippedBytes());
+			assertEquals(3L, recovered.getChildren().get(1).getChunkData().length());
+		}
+	}
+	
+	@Test
+	public void tagsAreFoundWithOrWithoutTheirPadding() throws IOException {
+		MemoryDataSink sink = new MemoryDataSink();
+		RiffOutputStream out = new RiffOutputStream(sink);
+		out.setRf64Enabled(false);
+		out.beginList("RIFF", "WAVE");
+		out.writeChunk("fmt ", new byte[16]);
+		out.writeChunk("data", new byte[4]);
+		out.writeChunk("fmt ", new byte[2]);
+		out.close();
+		
+		for(boolean lazy : new boolean[] { false, true }) {
+			ListRiffChunk list = ListRiffChunk.parse(sink.toDataSlice(), lazy);
+			for(String tag : new String[] { "fmt ", "fmt" }) {
+				assertEquals(16L, list.findFirst(tag).get().getChunkData().length());
+				List<RiffChunk> all = list.findAll(tag);
+				assertEquals(2, all.size());
+				assertEquals(2L, all.get(1).getChunkData().length());
+			}
+			assertEquals(1, list.findAll(FourCC.DATA).size());
+			assertEquals(0, list.findAll("LIST").size());
+			assertEquals(false, list.findFirst("junk").isPresent());
+		}
+	}
+	
+	private static List<String> tags(ListRiffChunk list) {
+		List<String> result = new ArrayList<>();
+		for(RiffChunk chunk : list) result.add(chunk.getChunkType());
+		return result;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.riff;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.playsawdust.chipper.glow.io.DataSlice;
+import com.playsawdust.chipper.glow.io.MemoryDataSink;
+
+public class ParallelRiffWalkerTest {
+	private final ForkJoinPool pool = new ForkJoinPool(1);
+	
+	@AfterEach
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+	
+	private static DataSlice createFile(int chunks) throws IOException {
+		MemoryDataSink sink = new MemoryDataSink();
+		RiffOutputStream out = new RiffOutputStream(sink);
+		out.setRf64Enabled(false);
+		out.beginList("RIFF", "TEST");
+		for(int i=0; i<chunks; i++) {
+			out.writeChunk((i%2==0) ? "even" : "odd", new byte[] { (byte) i });
+		}
+		out.close();
+		return sink.toDataSlice();
+	}
+	
+	@Test
+	public void walkerCanBeReusedAfterAFailedVisit() throws IOException {
+		DataSlice file = createFile(64);
+		ParallelRiffWalker walker = new ParallelRiffWalker(pool);
+		walker.setMaxInFlightChunks(4);
+		
+		assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+			for(int i=0; i<3; i++) {
+				IOException ex = assertThrows(IOException.class, () -> walker.walk(file, (parent, chunk) -> {
+					throw new IOException("Visit failed");
+				}));
+				assertEquals("Visit failed", ex.getMessage());
+			}
+			
+			List<Integer> results = walker.walk(file, (parent, chunk) -> chunk.getChunkData().read(0L));
+			assertEquals(64, results.size());
+			for(int i=0; i<64; i++) {
+				assertEquals(i, results.get(i));
+			}
+		});
+	}
+	
+	@Test
+	public void visitorsCanReadTheirParentList() throws IOException {
+		DataSlice file = createFile(20000);
+		ForkJoinPool widePool = new ForkJoinPool(8);
+		try {
+			ParallelRiffWalker walker = new ParallelRiffWalker(widePool);
+			List<Integer> results = walker.walk(file, (parent, chunk) -> parent.getChildren().size() + parent.findAll("even").size());
+			assertEquals(20000, results.size());
+			for(int result : results) {
+				assertEquals(30000, result);
+			}
+		} finally {
+			widePool.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.riff;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.playsawdust.chipper.glow.io.MemoryDataSink;
+
+public class RiffIndexTest {
+	
+	@Test
+	public void unusableSidecarsAreRebuilt() throws IOException {
+		Path dir = Files.createTempDirectory("glow-riff-index");
+		Path file = dir.resolve("test.riff");
+		Path sidecar = RiffIndex.getDefaultSidecar(file);
+		try {
+			MemoryDataSink sink = new MemoryDataSink();
+			RiffOutputStream out = new RiffOutputStream(sink);
+			out.setRf64Enabled(false);
+			out.beginList("RIFF", "TEST");
+			out.writeChunk("abcd", new byte[10]);
+			out.beginList("LIST", "sub ");
+			out.writeChunk("efgh", new byte[3]);
+			out.endList();
+			out.close();
+			Files.write(file, sink.toByteArray());
+			
+			assertEquals(4, RiffIndex.loadOrBuild(file).size());
+			byte[] good = Files.readAllBytes(sidecar);
+			
+			byte[] badMagic = good.clone();
+			badMagic[0] ^= 0xFF;
+			byte[] newerVersion = good.clone();
+			newerVersion[7]++;
+			byte[][] sidecars = { Arrays.copyOf(good, good.length-5), Arrays.copyOf(good, 6), badMagic, newerVersion, new byte[0] };
+			for(byte[] bad : sidecars) {
+				Files.write(sidecar, bad);
+				assertTrue(RiffIndex.load(sidecar, file).isEmpty());
+				assertEquals(4, RiffIndex.loadOrBuild(file).size());
+				assertTrue(RiffIndex.load(sidecar, file).isPresent());
+			}
+		} finally {
+			Files.deleteIfExists(sidecar);
+			Files.deleteIfExists(file);
+			Files.delete(dir);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Glow - GL Object Wrapper
+ * Copyright (C) 2020 the Chipper developers
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.playsawdust.chipper.glow.io.riff;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.Test;
+
+import com.playsawdust.chipper.glow.io.ChecksumAlgorithm;
+
+public class StreamingRiffChunkTest {
+	
+	private static void putTag(ByteBuffer buf, String tag) {
+		buf.put(tag.getBytes(StandardCharsets.US_ASCII));
+	}
+	
+	@Test
+	public void bodiesOfUnknownSizeEndCleanly() throws IOException {
+		//An RF64 file whose writer couldn't go back and fill in any sizes, and didn't write a ds64 chunk
+		ByteBuffer file = ByteBuffer.allocate(12 + 8+4).order(ByteOrder.LITTLE_ENDIAN);
+		putTag(file, "RF64");
+		file.putInt(-1);
+		putTag(file, "WAVE");
+		putTag(file, "abcd");
+		file.putInt(4);
+		file.putInt(0x04030201);
+		
+		RiffInputStream in = new RiffInputStream(new ByteArrayInputStream(file.array()));
+		StreamingRiffChunk chunk = in.nextChunk();
+		assertEquals(StreamingRiffChunk.UNKNOWN_SIZE, chunk.getChunkSize());
+		ListRiffChunk list = (ListRiffChunk) chunk.buffer();
+		assertEquals("WAVE", list.getListType());
+		assertEquals(1, list.getChildren().size());
+		assertEquals(4L, list.getChildren().get(0).getChunkData().length());
+		
+		//A chunk whose size is known is still truncated if the stream ends early
+		RiffInputStream truncated = new RiffInputStream(new ByteArrayInputStream(file.array(), 12, 8+2));
+		assertThrows(EOFException.class, () -> truncated.nextChunk().buffer());
+	}
+	
+	@Test
+	public void bodiesOfUnknownSizeAreVerified() throws IOException {
+		//The ds64 chunk has no entry for abcd, so its placeholder size leaves it running to the end of the list
+		byte[] body = { 1, 2, 3, 4, 5, 6, 7 };
+		ByteBuffer file = ByteBuffer.allocate(12 + 8+28 + 8+body.length).order(ByteOrder.LITTLE_ENDIAN);
+		putTag(file, "RF64");
+		file.putInt(-1);
+		putTag(file, "WAVE");
+		putTag(file, "ds64");
+		file.putInt(28);
+		file.putLong(file.capacity()-8);
+		file.putLong(0L);
+		file.putLong(0L);
+		file.putInt(0);
+		putTag(file, "abcd");
+		file.putInt(-1);
+		file.put(body);
+		
+		List<String> verified = new ArrayList<>();
+		RiffInputStream in = new RiffInputStream(new ByteArrayInputStream(file.array()));
+		in.setVerification(ChecksumAlgorithm.CRC32, (tag, size, checksum) -> verified.add(tag+" "+size+" "+checksum));
+		RiffInputStream list = in.nextChunk().openList();
+		list.nextChunk().skip();
+		StreamingRiffChunk chunk = list.nextChunk();
+		assertEquals(StreamingRiffChunk.UNKNOWN_SIZE, chunk.getChunkSize());
+		assertEquals(body.length, chunk.getBody().readAllBytes().length);
+		assertEquals(null, list.nextChunk());
+		
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		assertEquals(2, verified.size());
+		assertEquals("abcd 7 "+crc.getValue(), verified.get(1));
+	}
+}